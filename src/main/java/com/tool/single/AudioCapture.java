@@ -0,0 +1,369 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.avutil.AVChannelLayout;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.ffmpeg.global.swresample;
+import org.bytedeco.ffmpeg.swresample.SwrContext;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.nio.ShortBuffer;
+
+/**
+ * 音频采集与音画同步
+ * 采集在独立线程中进行，只写入无锁环形缓冲；推流线程每帧调用 drainTo 取出已有采样送入同一个录制器，
+ * 任何一方都不会等待对方。音频时间线以推流开始时刻为原点，与视频使用同一个单调时钟：
+ * 每块采样记录采集时刻，输出位置与时钟的偏差通过 swresample 的补偿功能做小幅变速（最多0.5%）逐步消除，
+ * 来源突发积压造成大段超前时临时放宽到5%追回，都不丢弃采样；只有首次对齐时跳过早于原点的采样，
+ * 设备停顿或缓冲溢出造成大段空缺时补静音
+ */
+public class AudioCapture {
+
+    public enum Codec {
+        AAC("AAC", avcodec.AV_CODEC_ID_AAC, 128000),
+        OPUS("Opus", avcodec.AV_CODEC_ID_OPUS, 96000);
+
+        private final String displayName;
+        private final int codecId;
+        private final int bitrate;
+
+        Codec(String displayName, int codecId, int bitrate) {
+            this.displayName = displayName;
+            this.codecId = codecId;
+            this.bitrate = bitrate;
+        }
+
+        public int getCodecId() {
+            return codecId;
+        }
+
+        public int getBitrate() {
+            return bitrate;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    // AAC和Opus都支持的采样率
+    public static final int SAMPLE_RATE = 48000;
+    public static final int CHANNELS = 1;
+
+    private static final int CHUNK_MILLIS = 10;
+    // 环形缓冲可容纳的时长，推流线程停顿超过该时长才会溢出
+    private static final int RING_MILLIS = 2000;
+    // 每次转换的最大帧数
+    private static final int DRAIN_FRAMES = SAMPLE_RATE / 10;
+    // 变速补偿的上限比例
+    private static final double MAX_CORRECTION = 0.005;
+    // 偏差在该范围内不做补偿，避免时间戳抖动引起来回变速
+    private static final long DEADBAND_FRAMES = SAMPLE_RATE * 5 / 1000;
+    // 超过该偏差视为空缺，直接补静音；音频超前超过该值（来源突发积压）时放宽变速上限追赶
+    private static final long GAP_FRAMES = SAMPLE_RATE / 5;
+    // 追赶时的变速上限，约10秒追回0.5秒，偏差回到死区内后恢复 MAX_CORRECTION
+    private static final double CATCHUP_CORRECTION = 0.05;
+    // 偏差估计的平滑系数
+    private static final double SMOOTHING = 0.1;
+
+    private final AudioSource source;
+    private final Codec codec;
+    private final SampleRing ring = new SampleRing(SAMPLE_RATE * CHANNELS * RING_MILLIS / 1000);
+
+    private Thread captureThread;
+    private volatile boolean running;
+    private long clockOrigin;
+
+    private SwrContext resampler;
+    private short[] input;
+    private ShortPointer inputPointer;
+    private ShortPointer outputPointer;
+    private ShortPointer silencePointer;
+    private int outputCapacity;
+    private final PointerPointer<ShortPointer> inputPlanes = new PointerPointer<>(1);
+    private final PointerPointer<ShortPointer> outputPlanes = new PointerPointer<>(1);
+
+    private boolean aligned;
+    private boolean catchingUp;
+    private long outputFrames;
+    private double smoothedError;
+    private volatile double driftFrames;
+    private volatile double correction;
+    private volatile long paddedFrames;
+    private volatile long skippedFrames;
+    private volatile long catchUps;
+    private volatile long readFailures;
+
+    public AudioCapture(AudioSource source, Codec codec) {
+        this.source = source;
+        this.codec = codec;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * 打开音频来源，失败时推流可以只推视频
+     */
+    public void open() throws Exception {
+        source.open(SAMPLE_RATE, CHANNELS);
+    }
+
+    /**
+     * 在录制器 start 之前调用，添加音频流
+     */
+    public void configure(FFmpegFrameRecorder recorder) {
+        recorder.setAudioChannels(CHANNELS);
+        recorder.setSampleRate(SAMPLE_RATE);
+        recorder.setAudioCodec(codec.getCodecId());
+        recorder.setAudioBitrate(codec.getBitrate());
+    }
+
+    /**
+     * 录制器启动后调用，clockOrigin 为视频时间线原点（System.nanoTime）
+     */
+    public void start(long clockOrigin) {
+        this.clockOrigin = clockOrigin;
+        aligned = false;
+        catchingUp = false;
+        outputFrames = 0;
+        smoothedError = 0;
+
+        AVChannelLayout layout = new AVChannelLayout();
+        avutil.av_channel_layout_default(layout, CHANNELS);
+        resampler = new SwrContext(null);
+        int ret = swresample.swr_alloc_set_opts2(resampler,
+                layout, avutil.AV_SAMPLE_FMT_S16, SAMPLE_RATE,
+                layout, avutil.AV_SAMPLE_FMT_S16, SAMPLE_RATE, 0, null);
+        avutil.av_channel_layout_uninit(layout);
+        if (ret < 0 || swresample.swr_init(resampler) < 0) {
+            throw new IllegalStateException("无法创建音频重采样上下文");
+        }
+        // 输入输出采样率相同时 swresample 不会启用重采样器，这里强制启用以便变速补偿
+        swresample.swr_set_compensation(resampler, 0, 0);
+
+        input = new short[DRAIN_FRAMES * CHANNELS];
+        inputPointer = new ShortPointer(input.length);
+        outputCapacity = (int) (DRAIN_FRAMES * (1 + MAX_CORRECTION * 2)) + 256;
+        outputPointer = new ShortPointer((long) outputCapacity * CHANNELS);
+        silencePointer = new ShortPointer((long) DRAIN_FRAMES * CHANNELS);
+        silencePointer.fill(0);
+        inputPlanes.put(0, inputPointer);
+        outputPlanes.put(0, outputPointer);
+
+        running = true;
+        captureThread = new Thread(NativeMemoryMonitor.tracked(this::captureLoop), "audio-capture");
+        captureThread.setDaemon(true);
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread.start();
+    }
+
+    /**
+     * 录制器重建后调用：音频时间线以新的原点重新对齐，采集线程和环形缓冲不受影响
+     */
+    public void restart(long clockOrigin) {
+        this.clockOrigin = clockOrigin;
+        aligned = false;
+        catchingUp = false;
+        outputFrames = 0;
+        smoothedError = 0;
+        // 重新初始化会丢弃重采样器中残留的采样
+        swresample.swr_init(resampler);
+        swresample.swr_set_compensation(resampler, 0, 0);
+    }
+
+    private void captureLoop() {
+        short[] chunk = new short[SAMPLE_RATE * CHUNK_MILLIS / 1000 * CHANNELS];
+        while (running) {
+            int count = source.read(chunk);
+            if (count < 0) {
+                readFailures++;
+                try {
+                    Thread.sleep(CHUNK_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            // 读取返回的时刻即这块最后一个采样的采集时刻
+            ring.write(chunk, count, System.nanoTime());
+        }
+    }
+
+    /**
+     * 推流线程调用：把已采集的采样送入录制器，不会阻塞
+     */
+    public void drainTo(FFmpegFrameRecorder recorder) throws Exception {
+        SampleRing.Stamp stamp = ring.getStamp();
+        long pendingFrames = (stamp.position - ring.getReadPosition()) / CHANNELS;
+        if (resampler == null || pendingFrames <= 0) {
+            return;
+        }
+
+        // 这批采样的最后一个应当落在输出时间线的位置，与按原速转换后的位置之差即偏差
+        long targetFrames = framesSince(clockOrigin, stamp.nanos);
+        long delayFrames = swresample.swr_get_delay(resampler, SAMPLE_RATE);
+        long error = targetFrames - (outputFrames + delayFrames + pendingFrames);
+
+        if (!aligned) {
+            // 首次对齐：音频晚于视频原点时在前面补静音，早于原点的采样跳过
+            aligned = true;
+            if (error > 0) {
+                writeSilence(recorder, error);
+            } else {
+                pendingFrames -= skip(-error, stamp.position);
+            }
+            error = 0;
+        } else if (error > GAP_FRAMES) {
+            writeSilence(recorder, error);
+            error = 0;
+        } else if (error < -GAP_FRAMES && !catchingUp) {
+            // 常规变速每秒只能追回5毫秒，大段超前时临时加快，直到偏差回到死区内
+            catchingUp = true;
+            catchUps++;
+        }
+
+        smoothedError += (error - smoothedError) * SMOOTHING;
+        driftFrames = smoothedError;
+        int delta = 0;
+        if (Math.abs(smoothedError) > DEADBAND_FRAMES) {
+            long limit = (long) (pendingFrames * (catchingUp ? CATCHUP_CORRECTION : MAX_CORRECTION));
+            delta = (int) Math.max(-limit, Math.min(limit, Math.round(smoothedError)));
+        } else {
+            catchingUp = false;
+        }
+        correction = pendingFrames > 0 ? (double) delta / pendingFrames : 0;
+        if (pendingFrames > 0) {
+            swresample.swr_set_compensation(resampler, delta, (int) pendingFrames);
+        }
+
+        int read;
+        while ((read = ring.read(input, stamp.position)) > 0) {
+            inputPointer.put(input, 0, read);
+            int converted = swresample.swr_convert(resampler, outputPlanes, outputCapacity,
+                    inputPlanes, read / CHANNELS);
+            if (converted < 0) {
+                throw new IllegalStateException("音频重采样失败: " + converted);
+            }
+            if (converted > 0) {
+                ShortBuffer buffer = outputPointer.position(0).limit((long) converted * CHANNELS).asBuffer();
+                recorder.recordSamples(SAMPLE_RATE, CHANNELS, buffer);
+                outputFrames += converted;
+            }
+        }
+    }
+
+    /**
+     * 从 originNanos 到 nanos 经过的采样帧数；先拆出整秒再乘采样率，
+     * 直接相乘在推流约53小时后会溢出
+     */
+    static long framesSince(long originNanos, long nanos) {
+        long elapsed = nanos - originNanos;
+        return elapsed / 1000000000L * SAMPLE_RATE + elapsed % 1000000000L * SAMPLE_RATE / 1000000000L;
+    }
+
+    private long skip(long frames, long limit) {
+        long skipped = 0;
+        long remaining = Math.min(frames, (limit - ring.getReadPosition()) / CHANNELS) * CHANNELS;
+        while (remaining > 0) {
+            int read = ring.read(input, ring.getReadPosition() + Math.min(remaining, input.length));
+            if (read <= 0) {
+                break;
+            }
+            remaining -= read;
+            skipped += read / CHANNELS;
+        }
+        skippedFrames += skipped;
+        return skipped;
+    }
+
+    private void writeSilence(FFmpegFrameRecorder recorder, long frames) throws Exception {
+        long remaining = frames;
+        while (remaining > 0) {
+            int count = (int) Math.min(remaining, DRAIN_FRAMES);
+            ShortBuffer buffer = silencePointer.position(0).limit((long) count * CHANNELS).asBuffer();
+            recorder.recordSamples(SAMPLE_RATE, CHANNELS, buffer);
+            remaining -= count;
+        }
+        outputFrames += frames;
+        paddedFrames += frames;
+    }
+
+    /**
+     * 停止采集并释放资源，可在推流线程结束时调用
+     */
+    public void stop() {
+        running = false;
+        if (captureThread != null) {
+            try {
+                captureThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            captureThread = null;
+        }
+        source.close();
+
+        if (resampler != null) {
+            swresample.swr_free(resampler);
+            resampler = null;
+        }
+        if (inputPointer != null) {
+            inputPointer.close();
+            outputPointer.close();
+            silencePointer.close();
+            inputPointer = null;
+        }
+        inputPlanes.close();
+        outputPlanes.close();
+    }
+
+    /**
+     * 平滑后的音频时间线偏差（毫秒），正值表示音频落后于时钟
+     */
+    public double getDriftMillis() {
+        return driftFrames * 1000.0 / SAMPLE_RATE;
+    }
+
+    /**
+     * 当前变速补偿，单位ppm
+     */
+    public double getCorrectionPpm() {
+        return correction * 1000000;
+    }
+
+    public long getPaddedMillis() {
+        return paddedFrames * 1000 / SAMPLE_RATE;
+    }
+
+    /**
+     * 首次对齐时跳过的早于原点的采样时长
+     */
+    public long getSkippedMillis() {
+        return skippedFrames * 1000 / SAMPLE_RATE;
+    }
+
+    /**
+     * 大段超前触发加速追赶的次数
+     */
+    public long getCatchUps() {
+        return catchUps;
+    }
+
+    public long getOverruns() {
+        return ring.getOverruns();
+    }
+
+    public long getReadFailures() {
+        return readFailures;
+    }
+
+    public String describe() {
+        return source.getName() + " " + codec + " " + SAMPLE_RATE + "Hz "
+                + (CHANNELS == 1 ? "单声道" : CHANNELS + "声道") + " " + codec.getBitrate() / 1000 + "kbps";
+    }
+}
@@ -0,0 +1,25 @@
+package com.tool.single;
+
+/**
+ * 推流音频来源（麦克风、测试音等）
+ * 采样格式固定为16位有符号整数，多声道交错排列
+ */
+public interface AudioSource {
+
+    /**
+     * 打开来源，sampleRate/channels 为要求值
+     */
+    void open(int sampleRate, int channels) throws Exception;
+
+    /**
+     * 阻塞读取一块采样到 samples，返回读到的short个数，失败返回-1
+     */
+    int read(short[] samples);
+
+    /**
+     * 日志中显示的名称
+     */
+    String getName();
+
+    void close();
+}
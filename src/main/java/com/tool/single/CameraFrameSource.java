@@ -0,0 +1,155 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.opencv.global.opencv_videoio;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_videoio.VideoCapture;
+
+/**
+ * 基于OpenCV VideoCapture的本地摄像头来源
+ * 原生模式下关闭 CAP_PROP_CONVERT_RGB，直接取摄像头的YUYV/NV12数据；
+ * 摄像头或后端不支持时（例如只输出MJPG）自动退回BGR采集
+ */
+public class CameraFrameSource implements RawFrameSource {
+
+    private final int cameraIndex;
+    private final boolean rawCapture;
+    private VideoCapture capture;
+    private int rawFormat = avutil.AV_PIX_FMT_NONE;
+    private int rawWidth;
+    private int rawHeight;
+
+    public CameraFrameSource(int cameraIndex) {
+        this(cameraIndex, false);
+    }
+
+    public CameraFrameSource(int cameraIndex, boolean rawCapture) {
+        this.cameraIndex = cameraIndex;
+        this.rawCapture = rawCapture;
+    }
+
+    @Override
+    public void open(int width, int height, int fps) throws Exception {
+        capture = new VideoCapture();
+
+        // 尝试使用DirectShow API
+        boolean opened = capture.open(cameraIndex, opencv_videoio.CAP_DSHOW);
+
+        if (!opened || !capture.isOpened()) {
+            capture.release();
+            capture.close();
+            capture = null;
+            throw new Exception("无法打开摄像头");
+        }
+
+        // 等待摄像头初始化
+        Thread.sleep(500);
+
+        // 设置摄像头属性
+        capture.set(opencv_videoio.CAP_PROP_FRAME_WIDTH, width);
+        capture.set(opencv_videoio.CAP_PROP_FRAME_HEIGHT, height);
+        capture.set(opencv_videoio.CAP_PROP_FPS, fps);
+
+        rawFormat = avutil.AV_PIX_FMT_NONE;
+        if (rawCapture) {
+            probeRawCapture();
+        }
+    }
+
+    /**
+     * 关闭RGB转换后试读一帧，数据大小与FOURCC对应的格式吻合才启用原生模式
+     */
+    private void probeRawCapture() {
+        int format = RawFrameSource.fromFourcc((int) capture.get(opencv_videoio.CAP_PROP_FOURCC));
+        int width = (int) capture.get(opencv_videoio.CAP_PROP_FRAME_WIDTH);
+        int height = (int) capture.get(opencv_videoio.CAP_PROP_FRAME_HEIGHT);
+        if (format == avutil.AV_PIX_FMT_NONE || width <= 0 || height <= 0
+                || !capture.set(opencv_videoio.CAP_PROP_CONVERT_RGB, 0)) {
+            return;
+        }
+
+        Mat probe = new Mat();
+        try {
+            if (capture.read(probe) && probe.isContinuous()
+                    && probe.total() * probe.elemSize() == RawFrameSource.frameBytes(format, width, height)) {
+                rawFormat = format;
+                rawWidth = width;
+                rawHeight = height;
+                return;
+            }
+        } finally {
+            probe.release();
+            probe.close();
+        }
+        capture.set(opencv_videoio.CAP_PROP_CONVERT_RGB, 1);
+    }
+
+    @Override
+    public int getRawPixelFormat() {
+        return rawFormat;
+    }
+
+    @Override
+    public int getRawWidth() {
+        return rawWidth;
+    }
+
+    @Override
+    public int getRawHeight() {
+        return rawHeight;
+    }
+
+    @Override
+    public boolean readRaw(Mat raw) {
+        return rawFormat != avutil.AV_PIX_FMT_NONE && capture != null && capture.isOpened()
+                && capture.read(raw) && !raw.empty();
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        if (capture == null || !capture.isOpened()) {
+            return false;
+        }
+        if (rawFormat == avutil.AV_PIX_FMT_NONE) {
+            return capture.read(frame) && !frame.empty();
+        }
+        // 原生模式下按需转换
+        Mat raw = new Mat();
+        try {
+            if (!readRaw(raw)) {
+                return false;
+            }
+            RawFrameSource.toBgr(raw, rawFormat, rawWidth, rawHeight, frame);
+            return true;
+        } finally {
+            raw.release();
+            raw.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "摄像头 " + cameraIndex + (rawFormat != avutil.AV_PIX_FMT_NONE
+                ? " (原生 " + avutil.av_get_pix_fmt_name(rawFormat).getString() + ")" : "");
+    }
+
+    public int getCameraIndex() {
+        return cameraIndex;
+    }
+
+    @Override
+    public boolean sharesDevice(FrameSource other) {
+        return other instanceof CameraFrameSource && ((CameraFrameSource) other).cameraIndex == cameraIndex;
+    }
+
+    @Override
+    public void close() {
+        if (capture != null) {
+            if (capture.isOpened()) {
+                capture.release();
+            }
+            capture.close();
+        }
+        capture = null;
+    }
+}
@@ -1,9 +1,5 @@
 package com.tool.single;
 
-import org.bytedeco.ffmpeg.global.avcodec;
-import org.bytedeco.ffmpeg.global.avutil;
-import org.bytedeco.javacv.*;
-import org.bytedeco.javacv.Frame;
 import org.bytedeco.opencv.global.opencv_videoio;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_videoio.VideoCapture;
@@ -21,10 +17,14 @@ import java.net.URL;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class CameraToRTSPGUI extends JFrame {
 
@@ -33,6 +33,28 @@ public class CameraToRTSPGUI extends JFrame {
     private JTextField rtspUrlField;
     private JComboBox<String> resolutionComboBox;
     private JComboBox<Integer> fpsComboBox;
+    private JComboBox<EncoderProfile> profileComboBox;
+    private JComboBox<FrameScaler.Algorithm> scaleComboBox;
+    private JCheckBox rawCaptureCheckBox;
+    private JCheckBox osdCheckBox;
+    private JTextField osdNameField;
+    private JComboBox<OsdOverlay.Position> osdPositionComboBox;
+    private JTextField maskField;
+    private JComboBox<PrivacyMask.Mode> maskModeComboBox;
+    private JCheckBox audioCheckBox;
+    private JCheckBox adaptiveCheckBox;
+    private JCheckBox adaptiveRestartCheckBox;
+    private JCheckBox mosaicCheckBox;
+    private JTextField mosaicField;
+    private JComboBox<String> outputComboBox;
+    private JTextField udpField;
+    private JCheckBox denoiseCheckBox;
+    private JComboBox<AudioCapture.Codec> audioCodecComboBox;
+    private JComboBox<String> audioSourceComboBox;
+    private JCheckBox httpCheckBox;
+    private JTextField httpPortField;
+    private JCheckBox mjpegCheckBox;
+    private JTextField mjpegPortField;
     private JButton previewButton;
     private JButton closePreviewButton;
     private JButton startButton;
@@ -41,18 +63,46 @@ public class CameraToRTSPGUI extends JFrame {
     private JLabel statusLabel;
     private JLabel previewLabel;
     private JLabel statsLabel;
+    private JLabel memoryLabel;
+    private Timer memoryTimer;
+    private Timer statsTimer;
 
     // 推流控制
-    private StreamController streamController;
-    private PreviewThread previewThread;
+    private volatile StreamController streamController;
+    // 拼接推流时的来源，界面据此显示无画面的格子数
+    private volatile MosaicFrameSource mosaicSource;
+    private volatile PreviewRenderer previewRenderer;
+    // 推流中修改摄像头/分辨率/帧率时合并连续的变更，只切换一次来源
+    private final Timer sourceSwitchTimer = new Timer(300, e -> switchStreamSource());
+    // 预览和推流会话由监管器统一管理，按摄像头序号分键，同一摄像头上的会话串行执行
+    private static final String MOSAIC_SESSION = "mosaic";
+    private final StreamSupervisor supervisor = new StreamSupervisor(
+            (handle, state) -> SwingUtilities.invokeLater(() -> onSessionStateChanged(handle, state)));
+    // 最近一次启动的预览和推流会话
+    private volatile StreamSupervisor.Handle previewHandle;
+    private volatile StreamSupervisor.Handle streamHandle;
+    // 推流正在使用的摄像头序号
+    private volatile List<Integer> streamCameras = Collections.emptyList();
     private List<String> cameraList;
     private Map<Integer, String> cameraResolutions; // 存储摄像头检测到的分辨率
     private JTextArea logArea;
 
+    // 预览和推流共用的最新帧，供HTTP快照读取
+    private final LatestFrame latestFrame = new LatestFrame();
+    private SnapshotServer snapshotServer;
+    private MjpegServer mjpegServer;
+
+    // 远程预览的尺寸和帧率，与推流参数无关
+    private static final int MJPEG_PREVIEW_WIDTH = 640;
+    private static final int MJPEG_PREVIEW_HEIGHT = 360;
+    private static final int MJPEG_PREVIEW_FPS = 10;
+    // 本地预览的帧率上限，与推流帧率无关
+    private static final int PREVIEW_MAX_FPS = 15;
+    // 拼接画面的格子超过该时长没有新画面即在统计栏提示
+    private static final long MOSAIC_STALE_MILLIS = 2000;
+
     // 添加按钮状态控制变量
     private volatile boolean isRefreshing = false;
-    private volatile boolean isPreviewRunning = false;
-    private volatile boolean isStreaming = false;
 
     // 分辨率预设
     private static final String[] RESOLUTIONS = {
@@ -63,6 +113,10 @@ public class CameraToRTSPGUI extends JFrame {
     // 帧率预设
     private static final Integer[] FPS_OPTIONS = {10, 15, 20, 25, 30};
 
+    // 音频来源
+    private static final String[] AUDIO_SOURCES = {"麦克风", "测试音 440Hz"};
+    private static final String[] OUTPUT_MODES = {"仅RTSP", "RTSP + UDP TS", "仅UDP TS"};
+
     public CameraToRTSPGUI() {
         initComponents();
 
@@ -77,16 +131,66 @@ public class CameraToRTSPGUI extends JFrame {
             }
         });
 
-        // 修复：添加窗口初始化后的摄像头检测
-        // 延迟一小段时间开始检测，确保UI完全加载
-        SwingUtilities.invokeLater(() -> {
-            try {
-                Thread.sleep(150); // 给UI一点时间加载
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        startMemoryMonitor();
+        startStatsRefresh();
+        sourceSwitchTimer.setRepeats(false);
+
+        // 窗口初始化后在任务线程中检测摄像头，不阻塞界面
+        detectCameras();
+    }
+
+    /**
+     * 定时刷新原生内存读数，调试模式下每分钟输出一次跨帧存活对象的分配位置
+     */
+    private void startMemoryMonitor() {
+        final long[] lastReport = {System.currentTimeMillis()};
+        memoryTimer = new Timer(2000, e -> {
+            memoryLabel.setText(NativeMemoryMonitor.sample().toString());
+            if (NativeMemoryMonitor.DEBUG && System.currentTimeMillis() - lastReport[0] >= 60000) {
+                lastReport[0] = System.currentTimeMillis();
+                String report = NativeMemoryMonitor.leakReport(10);
+                if (!report.isEmpty()) {
+                    logArea.append("[" + getCurrentTime() + "] " + report + "\n");
+                }
+            }
+        });
+        memoryTimer.start();
+    }
+
+    /**
+     * 每秒从推流统计刷新一次界面，刷新频率与推流帧率无关
+     */
+    private void startStatsRefresh() {
+        statsTimer = new Timer(1000, e -> {
+            StreamController controller = streamController;
+            if (controller == null || !controller.isRunning()) {
+                return;
             }
-            detectCameras();
+            StreamStats stats = controller.getStats();
+            String quality = controller.describeQuality();
+            MosaicFrameSource mosaic = mosaicSource;
+            int stale = mosaic != null ? mosaic.countStale(MOSAIC_STALE_MILLIS) : 0;
+            StreamStats.Window second = stats.window(1);
+            StreamStats.Window recent = stats.window(10);
+            StreamStats.Window minute = stats.window(60);
+            statsLabel.setText(String.format("<html><center>帧数: %d | FPS 1s/10s/60s: %.1f/%.1f/%.1f"
+                            + " | 码率: %.2f Mbps | 丢帧(10s): %d | %s<br>"
+                            + "p50/p99 采集 %.1f/%.1f ms | 处理 %.1f/%.1f ms | 编码 %.1f/%.1f ms"
+                            + " | 发送 %.1f/%.1f ms%s%s</center></html>",
+                    controller.getFrameCount(), second.fps, recent.fps, minute.fps,
+                    recent.bitsPerSecond / 1000000.0, recent.dropped, controller.getProfile().getKey(),
+                    millis(recent.p50(StreamStats.Stage.CAPTURE)), millis(recent.p99(StreamStats.Stage.CAPTURE)),
+                    millis(recent.p50(StreamStats.Stage.PROCESS)), millis(recent.p99(StreamStats.Stage.PROCESS)),
+                    millis(recent.p50(StreamStats.Stage.ENCODE)), millis(recent.p99(StreamStats.Stage.ENCODE)),
+                    millis(recent.p50(StreamStats.Stage.SEND)), millis(recent.p99(StreamStats.Stage.SEND)),
+                    quality != null ? " | 已降级: " + quality : "",
+                    stale > 0 ? " | 拼接 " + stale + " 路无画面" : ""));
         });
+        statsTimer.start();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
     }
 
     /**
@@ -170,7 +274,13 @@ public class CameraToRTSPGUI extends JFrame {
         gbc.gridwidth = 2;
         cameraComboBox = new JComboBox<>();
         cameraComboBox.setPreferredSize(new Dimension(250, 30));
-        cameraComboBox.addActionListener(e -> onCameraSelectionChanged());
+        cameraComboBox.addActionListener(e -> {
+            onCameraSelectionChanged();
+            if (isStreaming() && !isRefreshing) {
+                // 推流中直接切换摄像头，不断开RTSP会话
+                sourceSwitchTimer.restart();
+            }
+        });
         panel.add(cameraComboBox, gbc);
 
         gbc.gridwidth = 1;
@@ -210,10 +320,13 @@ public class CameraToRTSPGUI extends JFrame {
         resolutionComboBox = new JComboBox<>(RESOLUTIONS);
         resolutionComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
         resolutionComboBox.addActionListener(e -> {
-            if (isPreviewRunning) {
+            if (isPreviewRunning()) {
                 // 如果预览中，重启预览以应用新分辨率
                 restartPreviewWithNewSettings();
             }
+            if (isStreaming()) {
+                sourceSwitchTimer.restart();
+            }
         });
         panel.add(resolutionComboBox, gbc);
 
@@ -223,15 +336,201 @@ public class CameraToRTSPGUI extends JFrame {
         fpsComboBox.setSelectedItem(30);
         fpsComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
         fpsComboBox.addActionListener(e -> {
-            if (isPreviewRunning) {
+            if (isPreviewRunning()) {
                 // 如果预览中，重启预览以应用新帧率
                 restartPreviewWithNewSettings();
             }
+            if (isStreaming()) {
+                sourceSwitchTimer.restart();
+            }
         });
         panel.add(fpsComboBox, gbc);
 
-        // 操作按钮面板
+        // 编码配置
         gbc.gridx = 0; gbc.gridy = 5;
+        gbc.gridwidth = 1;
+        panel.add(createLabel("编码配置:"), gbc);
+
+        gbc.gridx = 2; gbc.gridy = 5;
+        gbc.gridwidth = 1;
+        scaleComboBox = new JComboBox<>(FrameScaler.Algorithm.values());
+        scaleComboBox.setSelectedItem(FrameScaler.Algorithm.AREA);
+        scaleComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        scaleComboBox.setToolTipText("摄像头实际分辨率与推流分辨率不一致时使用的缩放算法");
+        panel.add(scaleComboBox, gbc);
+
+        gbc.gridx = 3; gbc.gridy = 5;
+        gbc.gridwidth = 1;
+        rawCaptureCheckBox = new JCheckBox("原生YUV采集");
+        rawCaptureCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        rawCaptureCheckBox.setBackground(Color.WHITE);
+        rawCaptureCheckBox.setToolTipText("直接采集摄像头的YUYV/NV12数据，省去BGR往返转换；摄像头不支持时自动退回");
+        panel.add(rawCaptureCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 5;
+        gbc.gridwidth = 1;
+        profileComboBox = new JComboBox<>(EncoderProfile.values());
+        profileComboBox.setSelectedItem(EncoderProfile.LOWEST_LATENCY);
+        profileComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        profileComboBox.setToolTipText("最低延迟 / 均衡 / 省带宽，对下一次推流生效");
+        panel.add(profileComboBox, gbc);
+
+        // 画面水印
+        gbc.gridx = 0; gbc.gridy = 6;
+        gbc.gridwidth = 1;
+        osdCheckBox = new JCheckBox("画面水印");
+        osdCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        osdCheckBox.setBackground(Color.WHITE);
+        osdCheckBox.setToolTipText("在推流画面上叠加名称和时间");
+        panel.add(osdCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 6;
+        gbc.gridwidth = 2;
+        osdNameField = new JTextField("Camera", 12);
+        osdNameField.setFont(new Font("宋体", Font.PLAIN, 12));
+        osdNameField.setToolTipText("水印中显示的摄像头名称");
+        panel.add(osdNameField, gbc);
+
+        gbc.gridx = 3; gbc.gridy = 6;
+        gbc.gridwidth = 1;
+        osdPositionComboBox = new JComboBox<>(OsdOverlay.Position.values());
+        osdPositionComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        panel.add(osdPositionComboBox, gbc);
+
+        // 隐私遮挡
+        gbc.gridx = 0; gbc.gridy = 7;
+        gbc.gridwidth = 1;
+        panel.add(createLabel("隐私遮挡:"), gbc);
+
+        gbc.gridx = 1; gbc.gridy = 7;
+        gbc.gridwidth = 2;
+        maskField = new JTextField("", 12);
+        maskField.setFont(new Font("宋体", Font.PLAIN, 12));
+        maskField.setToolTipText("按画面比例(0~1)填写，多个区域用分号分隔，如 rect:0.1,0.1,0.2,0.2; poly:0.5,0.5,0.8,0.5,0.7,0.9");
+        panel.add(maskField, gbc);
+
+        gbc.gridx = 3; gbc.gridy = 7;
+        gbc.gridwidth = 1;
+        maskModeComboBox = new JComboBox<>(PrivacyMask.Mode.values());
+        maskModeComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        panel.add(maskModeComboBox, gbc);
+
+        // HTTP快照服务
+        gbc.gridx = 0; gbc.gridy = 8;
+        gbc.gridwidth = 1;
+        httpCheckBox = new JCheckBox("HTTP快照");
+        httpCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        httpCheckBox.setBackground(Color.WHITE);
+        httpCheckBox.setToolTipText("开启后可通过 http://本机:端口" + SnapshotServer.PATH + " 获取最新画面");
+        httpCheckBox.addActionListener(e -> toggleHttpServer());
+        panel.add(httpCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 8;
+        gbc.gridwidth = 1;
+        httpPortField = new JTextField("8090", 6);
+        httpPortField.setFont(new Font("宋体", Font.PLAIN, 12));
+        httpPortField.setToolTipText("HTTP服务端口");
+        panel.add(httpPortField, gbc);
+
+        // MJPEG远程预览
+        gbc.gridx = 2; gbc.gridy = 8;
+        gbc.gridwidth = 1;
+        mjpegCheckBox = new JCheckBox("MJPEG预览");
+        mjpegCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        mjpegCheckBox.setBackground(Color.WHITE);
+        mjpegCheckBox.setToolTipText("开启后可在浏览器打开 http://本机:端口" + MjpegServer.PATH + " 远程观看");
+        mjpegCheckBox.addActionListener(e -> toggleMjpegServer());
+        panel.add(mjpegCheckBox, gbc);
+
+        gbc.gridx = 3; gbc.gridy = 8;
+        gbc.gridwidth = 1;
+        mjpegPortField = new JTextField("8091", 6);
+        mjpegPortField.setFont(new Font("宋体", Font.PLAIN, 12));
+        mjpegPortField.setToolTipText("MJPEG服务端口");
+        panel.add(mjpegPortField, gbc);
+
+        // 音频
+        gbc.gridx = 0; gbc.gridy = 9;
+        gbc.gridwidth = 1;
+        audioCheckBox = new JCheckBox("推送音频");
+        audioCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        audioCheckBox.setBackground(Color.WHITE);
+        audioCheckBox.setToolTipText("与视频一起推送，音画按同一时钟同步，对下一次推流生效");
+        panel.add(audioCheckBox, gbc);
+
+        gbc.gridx = 1; gbc.gridy = 9;
+        gbc.gridwidth = 1;
+        audioCodecComboBox = new JComboBox<>(AudioCapture.Codec.values());
+        audioCodecComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        panel.add(audioCodecComboBox, gbc);
+
+        gbc.gridx = 2; gbc.gridy = 9;
+        gbc.gridwidth = 2;
+        audioSourceComboBox = new JComboBox<>(AUDIO_SOURCES);
+        audioSourceComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        panel.add(audioSourceComboBox, gbc);
+
+        // 过载降级
+        gbc.gridx = 0; gbc.gridy = 10;
+        gbc.gridwidth = 1;
+        adaptiveCheckBox = new JCheckBox("过载自动降帧率", true);
+        adaptiveCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        adaptiveCheckBox.setBackground(Color.WHITE);
+        adaptiveCheckBox.setToolTipText("处理跟不上帧率时降低帧率，有余量时自动恢复，观看端不断开，对下一次推流生效");
+        panel.add(adaptiveCheckBox, gbc);
+
+        // 改预设和分辨率会重建编码器、断开所有观看端，需要显式开启
+        gbc.gridx = 1; gbc.gridy = 10;
+        gbc.gridwidth = 1;
+        adaptiveRestartCheckBox = new JCheckBox("允许降分辨率", false);
+        adaptiveRestartCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        adaptiveRestartCheckBox.setBackground(Color.WHITE);
+        adaptiveRestartCheckBox.setToolTipText("降帧率仍跟不上时继续降低编码预设和分辨率；每次切换都会重建编码器，所有观看端断开重连");
+        adaptiveCheckBox.addActionListener(e -> adaptiveRestartCheckBox.setEnabled(adaptiveCheckBox.isSelected()));
+        panel.add(adaptiveRestartCheckBox, gbc);
+
+        // 多路拼接
+        gbc.gridx = 2; gbc.gridy = 10;
+        gbc.gridwidth = 1;
+        mosaicCheckBox = new JCheckBox("多路拼接");
+        mosaicCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        mosaicCheckBox.setBackground(Color.WHITE);
+        mosaicCheckBox.setToolTipText("把多个摄像头拼成一路网格画面推流，只编码一次，对下一次推流生效");
+        panel.add(mosaicCheckBox, gbc);
+
+        gbc.gridx = 3; gbc.gridy = 10;
+        gbc.gridwidth = 1;
+        mosaicField = new JTextField("0,1,2,3", 8);
+        mosaicField.setFont(new Font("宋体", Font.PLAIN, 12));
+        mosaicField.setToolTipText("参与拼接的摄像头序号，用逗号分隔；4路以内为2x2，9路以内为3x3");
+        panel.add(mosaicField, gbc);
+
+        // 输出方式：RTSP之外可以用UDP单播/组播发送MPEG-TS，局域网内任意多个接收端共享一路
+        gbc.gridx = 0; gbc.gridy = 11;
+        gbc.gridwidth = 2;
+        outputComboBox = new JComboBox<>(OUTPUT_MODES);
+        outputComboBox.setFont(new Font("宋体", Font.PLAIN, 12));
+        outputComboBox.setToolTipText("对下一次推流生效");
+        panel.add(outputComboBox, gbc);
+
+        gbc.gridx = 2; gbc.gridy = 11;
+        gbc.gridwidth = 2;
+        udpField = new JTextField("udp://239.255.0.1:5000", 16);
+        udpField.setFont(new Font("宋体", Font.PLAIN, 12));
+        udpField.setToolTipText("UDP TS地址，组播或单播；可加参数 ?pkt_size=1316&bitrate=限速&ttl=16，限速默认为视频码率的1.5倍");
+        panel.add(udpField, gbc);
+
+        // 画面处理
+        gbc.gridx = 0; gbc.gridy = 12;
+        gbc.gridwidth = 4;
+        denoiseCheckBox = new JCheckBox("降噪（多线程并行）");
+        denoiseCheckBox.setFont(new Font("微软雅黑", Font.BOLD, 12));
+        denoiseCheckBox.setBackground(Color.WHITE);
+        denoiseCheckBox.setToolTipText("编码前做双边滤波降噪，多帧并行处理、按采集顺序编码，会增加几帧延迟，对下一次推流生效");
+        panel.add(denoiseCheckBox, gbc);
+
+        // 操作按钮面板
+        gbc.gridx = 0; gbc.gridy = 13;
         gbc.gridwidth = 4;
         gbc.insets = new Insets(15, 8, 8, 8);
         JPanel buttonPanel = new JPanel(new GridLayout(2, 2, 10, 10));
@@ -240,7 +539,7 @@ public class CameraToRTSPGUI extends JFrame {
         previewButton = createStyledButton("🔍 打开预览", new Color(30, 144, 255));
         previewButton.addActionListener(e -> {
             // 防止重复点击
-            if (!isPreviewRunning) {
+            if (!isPreviewRunning()) {
                 startPreview();
             }
         });
@@ -257,7 +556,7 @@ public class CameraToRTSPGUI extends JFrame {
         startButton = createStyledButton("▶ 开始推流", new Color(0, 150, 0));
         startButton.addActionListener(e -> {
             // 防止重复点击
-            if (!isStreaming) {
+            if (!isStreaming()) {
                 startStreaming();
             }
         });
@@ -274,7 +573,7 @@ public class CameraToRTSPGUI extends JFrame {
         panel.add(buttonPanel, gbc);
 
         // 状态显示
-        gbc.gridx = 0; gbc.gridy = 6;
+        gbc.gridx = 0; gbc.gridy = 14;
         gbc.gridwidth = 4;
         gbc.insets = new Insets(15, 8, 8, 8);
         statusLabel = new JLabel("状态: 就绪", SwingConstants.CENTER);
@@ -283,12 +582,20 @@ public class CameraToRTSPGUI extends JFrame {
         panel.add(statusLabel, gbc);
 
         // 统计信息
-        gbc.gridx = 0; gbc.gridy = 7;
+        gbc.gridx = 0; gbc.gridy = 15;
         statsLabel = new JLabel("帧数: 0 | 时长: 0s | FPS: 0.0", SwingConstants.CENTER);
         statsLabel.setFont(new Font("宋体", Font.BOLD, 12));
         statsLabel.setForeground(Color.DARK_GRAY);
         panel.add(statsLabel, gbc);
 
+        // 原生内存
+        gbc.gridx = 0; gbc.gridy = 16;
+        gbc.insets = new Insets(2, 8, 8, 8);
+        memoryLabel = new JLabel("原生内存: -", SwingConstants.CENTER);
+        memoryLabel.setFont(new Font("宋体", Font.PLAIN, 11));
+        memoryLabel.setForeground(Color.GRAY);
+        panel.add(memoryLabel, gbc);
+
         return panel;
     }
 
@@ -391,6 +698,15 @@ public class CameraToRTSPGUI extends JFrame {
         previewLabel.setFont(new Font("微软雅黑", Font.BOLD, 16));
         previewLabel.setHorizontalAlignment(SwingConstants.CENTER);
         previewLabel.setVerticalAlignment(SwingConstants.CENTER);
+        previewLabel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                PreviewRenderer renderer = previewRenderer;
+                if (renderer != null) {
+                    renderer.setTargetSize(previewLabel.getWidth(), previewLabel.getHeight());
+                }
+            }
+        });
 
         panel.add(previewLabel, BorderLayout.CENTER);
 
@@ -417,27 +733,21 @@ public class CameraToRTSPGUI extends JFrame {
 
         logArea.append("[" + getCurrentTime() + "] 刷新摄像头列表...\n");
 
-        // 关闭当前预览
-        closePreview();
-
-        // 开始检测摄像头 - 在后台线程中执行
-        new Thread(() -> {
-            try {
-                detectCameras();
-            } finally {
-                SwingUtilities.invokeLater(() -> {
+        // 等预览真正释放摄像头后再检测
+        closePreview()
+                .thenCompose(v -> detectCameras())
+                .whenComplete((v, e) -> SwingUtilities.invokeLater(() -> {
                     isRefreshing = false;
                     refreshButton.setEnabled(true);
-                });
-            }
-        }).start();
+                    updateButtonStates();
+                }));
     }
 
-    private void detectCameras() {
+    private CompletableFuture<Void> detectCameras() {
         logArea.append("[" + getCurrentTime() + "] 正在检测摄像头...\n");
 
-        // 在后台线程中执行摄像头检测
-        new Thread(() -> {
+        // 在监管器的任务线程中串行检测
+        return supervisor.runTask(() -> {
             List<String> newCameraList = new ArrayList<>();
             Map<Integer, String> newCameraResolutions = new HashMap<>();
 
@@ -446,39 +756,44 @@ public class CameraToRTSPGUI extends JFrame {
                     logArea.append("[" + getCurrentTime() + "] 检测索引 " + i + "...\n");
 
                     VideoCapture capture = new VideoCapture();
+                    Mat frame = new Mat();
 
-                    // 尝试使用DirectShow API
-                    boolean opened = capture.open(i, opencv_videoio.CAP_DSHOW);
+                    try {
+                        // 尝试使用DirectShow API
+                        boolean opened = capture.open(i, opencv_videoio.CAP_DSHOW);
 
-                    if (opened && capture.isOpened()) {
-                        Thread.sleep(300);
+                        if (opened && capture.isOpened()) {
+                            Thread.sleep(300);
 
-                        Mat frame = new Mat();
-                        int retryCount = 0;
-                        boolean readSuccess = false;
-
-                        while (retryCount < 3 && !readSuccess) {
-                            readSuccess = capture.read(frame);
-                            if (!readSuccess) {
-                                Thread.sleep(100);
-                                retryCount++;
+                            int retryCount = 0;
+                            boolean readSuccess = false;
+
+                            while (retryCount < 3 && !readSuccess) {
+                                readSuccess = capture.read(frame);
+                                if (!readSuccess) {
+                                    Thread.sleep(100);
+                                    retryCount++;
+                                }
                             }
-                        }
 
-                        if (readSuccess && !frame.empty()) {
-                            int width = frame.cols();
-                            int height = frame.rows();
-                            String resolution = width + "x" + height;
-                            String info = String.format("摄像头 %d (%dx%d)", i, width, height);
-                            newCameraList.add(info);
-                            newCameraResolutions.put(i, resolution);
-                            logArea.append("[" + getCurrentTime() + "] ✓ 找到: " + info + "\n");
+                            if (readSuccess && !frame.empty()) {
+                                int width = frame.cols();
+                                int height = frame.rows();
+                                String resolution = width + "x" + height;
+                                String info = String.format("摄像头 %d (%dx%d)", i, width, height);
+                                newCameraList.add(info);
+                                newCameraResolutions.put(i, resolution);
+                                logArea.append("[" + getCurrentTime() + "] ✓ 找到: " + info + "\n");
+                            }
                         }
-
+                    } finally {
+                        // 检测中途出错也要释放帧和摄像头
                         frame.release();
+                        frame.close();
+                        capture.release();
+                        capture.close();
                     }
 
-                    capture.release();
                     Thread.sleep(150);
 
                 } catch (Exception e) {
@@ -515,7 +830,7 @@ public class CameraToRTSPGUI extends JFrame {
                     logArea.append("[" + getCurrentTime() + "] ⚠ 未检测到摄像头\n");
                 }
             });
-        }).start();
+        });
     }
 
     private void onCameraSelectionChanged() {
@@ -544,59 +859,8 @@ public class CameraToRTSPGUI extends JFrame {
         }
     }
 
-    // ==================== 颜色修复的核心方法 ====================
-
-    /**
-     * 修复OpenCV BGR到Java RGB的颜色转换
-     */
-    private BufferedImage matToBufferedImage(Mat mat) {
-        if (mat == null || mat.empty()) return null;
-
-        int width = mat.cols();
-        int height = mat.rows();
-        int channels = mat.channels();
-
-        if (channels == 3) {
-            // 创建RGB格式的BufferedImage
-            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-            // 获取Mat数据
-            byte[] data = new byte[width * height * 3];
-            mat.data().get(data);
-
-            // 直接进行BGR->RGB转换（修复颜色）
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int index = (y * width + x) * 3;
-
-                    // OpenCV BGR顺序
-                    int b = data[index] & 0xFF;     // 蓝色
-                    int g = data[index + 1] & 0xFF; // 绿色
-                    int r = data[index + 2] & 0xFF; // 红色
-
-                    // 转换为RGB：r << 16 | g << 8 | b
-                    int rgb = (r << 16) | (g << 8) | b;
-                    image.setRGB(x, y, rgb);
-                }
-            }
-
-            return image;
-        } else {
-            // 灰度图或其他格式
-            int type = (channels == 1) ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_4BYTE_ABGR;
-
-            byte[] data = new byte[channels * width * height];
-            mat.data().get(data);
-
-            BufferedImage image = new BufferedImage(width, height, type);
-            image.getRaster().setDataElements(0, 0, width, height, data);
-
-            return image;
-        }
-    }
-
     private void startPreview() {
-        if (isPreviewRunning) {
+        if (isPreviewRunning()) {
             return;
         }
 
@@ -611,134 +875,287 @@ public class CameraToRTSPGUI extends JFrame {
         int height = Integer.parseInt(resolution[1]);
         int fps = (Integer) fpsComboBox.getSelectedItem();
 
+        // 推流会话占着这个摄像头的键时，同键启动预览会把推流停掉
+        StreamSupervisor.Handle stream = streamHandle;
+        if (stream != null && stream.isActive()
+                && (cameraKey(cameraIndex).equals(stream.getKey()) || streamCameras.contains(cameraIndex))) {
+            logArea.append("[" + getCurrentTime() + "] 摄像头 " + cameraIndex + " 正在推流，无法同时预览\n");
+            return;
+        }
+
         logArea.append("[" + getCurrentTime() + "] 开始预览...\n");
         logArea.append("[" + getCurrentTime() + "] 摄像头索引: " + cameraIndex + "\n");
         logArea.append("[" + getCurrentTime() + "] 分辨率: " + width + "x" + height + "\n");
         logArea.append("[" + getCurrentTime() + "] 帧率: " + fps + "fps\n");
         logArea.append("[" + getCurrentTime() + "] 颜色修复: 启用\n");
 
-        // 停止现有的预览
-        closePreview();
-
-        // 创建预览线程
-        previewThread = new PreviewThread(cameraIndex, width, height, fps);
-        previewThread.start();
-
-        isPreviewRunning = true;
+        // 同一摄像头已有会话时监管器会先停止旧会话，等摄像头释放后再启动
+        previewHandle = supervisor.start(cameraKey(cameraIndex),
+                new PreviewSession(cameraIndex, width, height, fps, createPrivacyMask()));
         updateButtonStates();
+    }
 
-        statusLabel.setText("状态: 预览中...");
-        statusLabel.setForeground(new Color(30, 144, 255));
+    /**
+     * 摄像头对应的会话键
+     */
+    private static String cameraKey(int cameraIndex) {
+        return "camera-" + cameraIndex;
     }
 
-    private void closePreview() {
-        if (!isPreviewRunning) {
-            return;
+    private CompletableFuture<Void> closePreview() {
+        StreamSupervisor.Handle handle = previewHandle;
+        if (handle == null) {
+            return CompletableFuture.completedFuture(null);
         }
 
-        logArea.append("[" + getCurrentTime() + "] 关闭预览...\n");
-
-        if (previewThread != null) {
-            previewThread.stopPreview();
-            try {
-                // 等待预览线程结束
-                previewThread.join(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            previewThread = null;
+        if (handle.isActive()) {
+            logArea.append("[" + getCurrentTime() + "] 关闭预览...\n");
         }
+        return handle.stop();
+    }
 
-        isPreviewRunning = false;
-        updateButtonStates();
-
-        SwingUtilities.invokeLater(() -> {
-            previewLabel.setIcon(null);
-            previewLabel.setText("预览已关闭");
-            previewLabel.setForeground(Color.WHITE);
-        });
-
-        logArea.append("[" + getCurrentTime() + "] 预览已关闭\n");
+    /**
+     * 预览正在使用列表中的摄像头时关闭预览，返回摄像头释放后完成的 future
+     */
+    private CompletableFuture<Void> closePreviewOn(List<Integer> cameras) {
+        StreamSupervisor.Handle handle = previewHandle;
+        if (handle == null || !cameras.contains(((PreviewSession) handle.getSession()).cameraIndex)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return closePreview();
     }
 
     private void restartPreviewWithNewSettings() {
-        if (isPreviewRunning) {
+        StreamSupervisor.Handle handle = previewHandle;
+        if (handle != null && handle.isActive()) {
             logArea.append("[" + getCurrentTime() + "] 应用新设置，重启预览...\n");
-            closePreview();
-
-            // 短暂延迟后重新开始预览
-            new Thread(() -> {
-                try {
-                    Thread.sleep(300);
-                    SwingUtilities.invokeLater(() -> {
-                        if (!isPreviewRunning) {
-                            startPreview();
-                        }
-                    });
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }).start();
+            // 同一摄像头的会话串行执行，新预览会在旧预览释放摄像头后启动
+            handle.stop();
+            startPreview();
         }
     }
 
     private void startStreaming() {
-        if (isStreaming) {
+        if (isStreaming()) {
             return;
         }
 
         try {
             int cameraIndex = getSelectedCameraIndex();
-            if (cameraIndex < 0) {
+            List<Integer> mosaicCameras = mosaicCheckBox.isSelected() ? parseCameraList(mosaicField.getText()) : null;
+            if (mosaicCameras != null && mosaicCameras.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "请填写参与拼接的摄像头序号", "错误", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (cameraIndex < 0 && mosaicCameras == null) {
                 JOptionPane.showMessageDialog(this, "请先选择摄像头", "错误", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
+            int outputMode = outputComboBox.getSelectedIndex();
             String rtspUrl = rtspUrlField.getText().trim();
-            if (rtspUrl.isEmpty()) {
+            if (rtspUrl.isEmpty() && outputMode != 2) {
                 JOptionPane.showMessageDialog(this, "请输入RTSP地址", "错误", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            UdpTsOutput udpOutput = null;
+            if (outputMode != 0) {
+                try {
+                    udpOutput = UdpTsOutput.parse(udpField.getText());
+                } catch (IllegalArgumentException e) {
+                    JOptionPane.showMessageDialog(this, "UDP地址无效: " + e.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
 
             String[] resolution = ((String) resolutionComboBox.getSelectedItem()).split("x");
             int width = Integer.parseInt(resolution[0]);
             int height = Integer.parseInt(resolution[1]);
             int fps = (Integer) fpsComboBox.getSelectedItem();
+            EncoderProfile profile = (EncoderProfile) profileComboBox.getSelectedItem();
+            FrameScaler.Algorithm scaleAlgorithm = (FrameScaler.Algorithm) scaleComboBox.getSelectedItem();
 
             logArea.append("[" + getCurrentTime() + "] 开始推流...\n");
-            logArea.append("[" + getCurrentTime() + "] RTSP地址: " + rtspUrl + "\n");
+            if (outputMode != 2) {
+                logArea.append("[" + getCurrentTime() + "] RTSP地址: " + rtspUrl + "\n");
+            }
             logArea.append("[" + getCurrentTime() + "] 分辨率: " + width + "x" + height + "\n");
             logArea.append("[" + getCurrentTime() + "] 帧率: " + fps + "fps\n");
-            logArea.append("[" + getCurrentTime() + "] 颜色修复: 启用\n");
+            logArea.append("[" + getCurrentTime() + "] 编码配置: " + profile.describe(StreamController.BASE_BITRATE) + "\n");
+            logArea.append("[" + getCurrentTime() + "] 缩放算法: " + scaleAlgorithm + "（缩放与YUV420P转换一次完成）\n");
+            if (mosaicCameras != null) {
+                logArea.append("[" + getCurrentTime() + "] 多路拼接: 摄像头 " + mosaicCameras + "\n");
+            }
 
-            // 停止现有的流
-            stopStreaming();
+            AtomicReference<Runnable> startedHook = new AtomicReference<>();
+            StreamController controller = new StreamController(new StreamController.Listener() {
+                @Override
+                public void onLog(String message) {
+                    logArea.append("[" + getCurrentTime() + "] " + message + "\n");
+                }
 
-            streamController = new StreamController();
+                @Override
+                public void onStarted() {
+                    Runnable started = startedHook.get();
+                    if (started != null) {
+                        started.run();
+                    }
+                }
 
-            new Thread(() -> {
-                try {
-                    streamController.startStreaming(cameraIndex, rtspUrl, width, height, fps);
-                } catch (Exception e) {
-                    SwingUtilities.invokeLater(() -> {
-                        statusLabel.setText("状态: 推流失败");
-                        isStreaming = false;
-                        updateButtonStates();
-                    });
+                @Override
+                public void onStopped() {
+                    // 状态由监管器统一更新
                 }
-            }).start();
+            });
 
-            isStreaming = true;
-            updateButtonStates();
+            controller.setLatestFrame(latestFrame);
+            controller.setScaling(scaleAlgorithm, true);
+            controller.setRawCapture(rawCaptureCheckBox.isSelected());
+            controller.setAdaptiveQuality(adaptiveCheckBox.isSelected());
+            controller.setAdaptiveRestart(adaptiveRestartCheckBox.isSelected());
+            controller.setUdpOutput(udpOutput, outputMode != 2);
+
+            PrivacyMask privacyMask = createPrivacyMask();
+            if (privacyMask != null) {
+                controller.setPrivacyMask(privacyMask);
+                logArea.append("[" + getCurrentTime() + "] 隐私遮挡: " + maskModeComboBox.getSelectedItem() + "\n");
+            }
 
-            statusLabel.setText("状态: 推流中...");
-            statusLabel.setForeground(new Color(0, 150, 0));
+            if (audioCheckBox.isSelected()) {
+                AudioSource audioSource = audioSourceComboBox.getSelectedIndex() == 0
+                        ? new MicrophoneAudioSource() : new ToneAudioSource();
+                controller.setAudio(new AudioCapture(audioSource, (AudioCapture.Codec) audioCodecComboBox.getSelectedItem()));
+            }
+
+            if (denoiseCheckBox.isSelected()) {
+                List<FrameProcessor> chain = new ArrayList<>();
+                chain.add(new DenoiseProcessor());
+                controller.setProcessors(new FrameProcessorChain(chain, FrameProcessorChain.defaultWorkers()));
+            }
+
+            if (osdCheckBox.isSelected()) {
+                OsdOverlay.Position position = (OsdOverlay.Position) osdPositionComboBox.getSelectedItem();
+                controller.setOverlay(new OsdOverlay(osdNameField.getText().trim(),
+                        OsdOverlay.DEFAULT_TIME_FORMAT, position, Math.max(0.5, height / 720.0)));
+                logArea.append("[" + getCurrentTime() + "] 画面水印: " + position + "\n");
+            }
+
+            // 单个摄像头推流与该摄像头的预览同键，监管器会先停止预览，等摄像头释放后再启动；
+            // 拼接推流占用多个摄像头、上一次推流可能用的是别的摄像头，由会话自己等它们释放
+            List<Integer> cameras = mosaicCameras != null ? mosaicCameras : Collections.singletonList(cameraIndex);
+            StreamSupervisor.Handle previous = streamHandle;
+            CompletableFuture<Void> released = CompletableFuture.allOf(closePreviewOn(cameras),
+                    previous != null ? previous.whenStopped() : CompletableFuture.completedFuture(null));
+            streamCameras = cameras;
+            streamHandle = supervisor.start(mosaicCameras != null ? MOSAIC_SESSION : cameraKey(cameraIndex),
+                    new StreamSupervisor.Session() {
+                @Override
+                public void run(Runnable started) throws Exception {
+                    startedHook.set(started);
+                    streamController = controller;
+                    mosaicSource = null;
+                    try {
+                        try {
+                            released.get(5, TimeUnit.SECONDS);
+                        } catch (TimeoutException e) {
+                            throw new IllegalStateException("上一个会话未能及时释放摄像头");
+                        }
+                        if (mosaicCameras != null) {
+                            List<FrameSource> sources = new ArrayList<>();
+                            for (int index : mosaicCameras) {
+                                sources.add(new CameraFrameSource(index));
+                            }
+                            MosaicFrameSource mosaic = new MosaicFrameSource(sources,
+                                    message -> logArea.append("[" + getCurrentTime() + "] " + message + "\n"));
+                            mosaicSource = mosaic;
+                            controller.startStreaming(mosaic, rtspUrl, width, height, fps, profile);
+                        } else {
+                            controller.startStreaming(cameraIndex, rtspUrl, width, height, fps, profile);
+                        }
+                    } finally {
+                        if (streamController == controller) {
+                            streamController = null;
+                            mosaicSource = null;
+                        }
+                    }
+                }
+
+                @Override
+                public void requestStop() {
+                    controller.stopStreaming();
+                }
+            });
+            updateButtonStates();
 
         } catch (Exception e) {
             logArea.append("[" + getCurrentTime() + "] 启动错误: " + e.getMessage() + "\n");
         }
     }
 
+    /**
+     * 推流中按当前选择切换摄像头来源，编码分辨率和帧率保持推流开始时的设置
+     */
+    private void switchStreamSource() {
+        StreamController controller = streamController;
+        int cameraIndex = getSelectedCameraIndex();
+        if (controller == null || !isStreaming() || cameraIndex < 0 || mosaicSource != null) {
+            // 拼接推流的来源固定，不随摄像头选择切换
+            return;
+        }
+
+        String[] resolution = ((String) resolutionComboBox.getSelectedItem()).split("x");
+        int width = Integer.parseInt(resolution[0]);
+        int height = Integer.parseInt(resolution[1]);
+        int fps = (Integer) fpsComboBox.getSelectedItem();
+        boolean rawCapture = rawCaptureCheckBox.isSelected();
+
+        logArea.append("[" + getCurrentTime() + "] 切换推流来源: 摄像头 " + cameraIndex
+                + " " + width + "x" + height + " " + fps + "fps\n");
+        // 先关闭占用新摄像头的预览，再把推流会话改登记到新摄像头的键下；
+        // 切换期间新旧摄像头都算推流占用，不允许在上面启动预览
+        StreamSupervisor.Handle handle = streamHandle;
+        List<Integer> previous = streamCameras;
+        List<Integer> cameras = Collections.singletonList(cameraIndex);
+        List<Integer> switching = new ArrayList<>(previous);
+        switching.add(cameraIndex);
+        streamCameras = switching;
+        closePreviewOn(cameras).thenRun(() -> supervisor.runTask(() -> {
+            String previousKey = handle.getKey();
+            if (!supervisor.rekey(handle, cameraKey(cameraIndex))) {
+                streamCameras = previous;
+                logArea.append("[" + getCurrentTime() + "] 切换来源失败: 摄像头 " + cameraIndex + " 正被占用\n");
+                return;
+            }
+            try {
+                controller.switchSource(new CameraFrameSource(cameraIndex, rawCapture), width, height, fps);
+                streamCameras = cameras;
+            } catch (Exception e) {
+                // 仍在使用原摄像头
+                supervisor.rekey(handle, previousKey);
+                streamCameras = previous;
+                logArea.append("[" + getCurrentTime() + "] 切换来源失败: " + e.getMessage() + "\n");
+            }
+        }));
+    }
+
+    /**
+     * 按界面配置创建隐私遮挡，未配置返回null
+     * 推流和预览各自创建实例
+     */
+    private PrivacyMask createPrivacyMask() {
+        String spec = maskField.getText().trim();
+        if (spec.isEmpty()) {
+            return null;
+        }
+        try {
+            PrivacyMask privacyMask = PrivacyMask.parse(spec, (PrivacyMask.Mode) maskModeComboBox.getSelectedItem());
+            return privacyMask.isEmpty() ? null : privacyMask;
+        } catch (Exception e) {
+            logArea.append("[" + getCurrentTime() + "] 隐私遮挡配置无效: " + e.getMessage() + "\n");
+            return null;
+        }
+    }
+
     private int getSelectedCameraIndex() {
         String selected = (String) cameraComboBox.getSelectedItem();
         if (selected == null) {
@@ -761,42 +1178,78 @@ public class CameraToRTSPGUI extends JFrame {
         return -1;
     }
 
-    private void stopStreaming() {
-        if (!isStreaming) {
-            return;
+    private CompletableFuture<Void> stopStreaming() {
+        StreamSupervisor.Handle handle = streamHandle;
+        if (handle == null) {
+            return CompletableFuture.completedFuture(null);
         }
 
-        logArea.append("[" + getCurrentTime() + "] 停止推流...\n");
+        if (handle.isActive()) {
+            logArea.append("[" + getCurrentTime() + "] 停止推流...\n");
+        }
+        return handle.stop();
+    }
 
-        if (streamController != null) {
-            streamController.stopStreaming();
-            try {
-                // 等待流控制器停止
-                Thread.sleep(300);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    /**
+     * 会话状态变化（在事件线程中执行）
+     */
+    private void onSessionStateChanged(StreamSupervisor.Handle handle, StreamSupervisor.State state) {
+        // 旧会话的迟到事件不覆盖新会话的状态
+        boolean stream = !(handle.getSession() instanceof PreviewSession);
+        boolean latest = handle == (stream ? streamHandle : previewHandle);
+
+        if (state == StreamSupervisor.State.STOPPED) {
+            Throwable failure = handle.getFailure();
+            if (failure != null) {
+                logArea.append("[" + getCurrentTime() + "] " + (stream ? "推流" : "预览") + "异常结束: "
+                        + failure.getMessage() + "\n");
+            } else if (handle.getTeardownMillis() >= 0) {
+                logArea.append("[" + getCurrentTime() + "] " + (stream ? "推流" : "预览") + "已停止（释放耗时 "
+                        + handle.getTeardownMillis() + " ms）\n");
             }
-            streamController = null;
         }
 
-        isStreaming = false;
+        if (latest) {
+            if (stream) {
+                if (state == StreamSupervisor.State.RUNNING) {
+                    statusLabel.setText("状态: 推流中...");
+                    statusLabel.setForeground(new Color(0, 150, 0));
+                } else if (state == StreamSupervisor.State.STOPPED) {
+                    statusLabel.setText(handle.getFailure() != null ? "状态: 推流失败" : "状态: 已停止");
+                    statusLabel.setForeground(handle.getFailure() != null ? Color.RED : Color.BLUE);
+                    statsLabel.setText("帧数: 0 | 时长: 0s | FPS: 0.0");
+                } else {
+                    statusLabel.setText("状态: 推流" + state + "...");
+                    statusLabel.setForeground(Color.ORANGE);
+                }
+            } else if (state == StreamSupervisor.State.STOPPED && handle.getTeardownMillis() >= 0) {
+                // 预览失败时保留失败提示
+                previewLabel.setIcon(null);
+                previewLabel.setText("预览已关闭");
+                previewLabel.setForeground(Color.WHITE);
+            }
+        }
         updateButtonStates();
+    }
 
-        statusLabel.setText("状态: 已停止");
-        statusLabel.setForeground(Color.BLUE);
-        statsLabel.setText("帧数: 0 | 时长: 0s | FPS: 0.0");
+    private boolean isPreviewRunning() {
+        StreamSupervisor.Handle handle = previewHandle;
+        return handle != null && handle.isActive();
+    }
 
-        logArea.append("[" + getCurrentTime() + "] 推流已停止\n");
+    private boolean isStreaming() {
+        StreamSupervisor.Handle handle = streamHandle;
+        return handle != null && handle.isActive();
     }
 
     // 更新按钮状态的方法
     private void updateButtonStates() {
         SwingUtilities.invokeLater(() -> {
             // 防止重复调用导致的竞争条件
-            previewButton.setEnabled(!isPreviewRunning && !isRefreshing);
-            closePreviewButton.setEnabled(isPreviewRunning && !isRefreshing);
-            startButton.setEnabled(!isStreaming && !isRefreshing);
-            stopButton.setEnabled(isStreaming && !isRefreshing);
+            previewButton.setEnabled(!isPreviewRunning() && !isRefreshing);
+            closePreviewButton.setEnabled(isPreviewRunning() && !isRefreshing);
+            startButton.setEnabled(!isStreaming() && !isRefreshing);
+            stopButton.setEnabled(isStreaming() && !isRefreshing);
 
             // 重新绘制按钮确保显示正确
             previewButton.repaint();
@@ -806,43 +1259,130 @@ public class CameraToRTSPGUI extends JFrame {
             refreshButton.repaint();
 
             // 确保焦点可以正常工作
-            if (!isPreviewRunning && !isStreaming && !isRefreshing) {
+            if (!isPreviewRunning() && !isStreaming() && !isRefreshing) {
                 cameraComboBox.requestFocusInWindow();
             }
         });
     }
 
+    private void toggleHttpServer() {
+        if (httpCheckBox.isSelected()) {
+            try {
+                int port = Integer.parseInt(httpPortField.getText().trim());
+                snapshotServer = new SnapshotServer(latestFrame, port);
+                snapshotServer.start();
+                httpPortField.setEnabled(false);
+                logArea.append("[" + getCurrentTime() + "] HTTP快照已开启: http://localhost:" + port + SnapshotServer.PATH + "\n");
+            } catch (Exception e) {
+                snapshotServer = null;
+                httpCheckBox.setSelected(false);
+                logArea.append("[" + getCurrentTime() + "] HTTP快照开启失败: " + e.getMessage() + "\n");
+            }
+        } else {
+            stopHttpServer();
+        }
+    }
+
+    private void stopHttpServer() {
+        if (snapshotServer != null) {
+            snapshotServer.stop();
+            snapshotServer = null;
+            httpPortField.setEnabled(true);
+            logArea.append("[" + getCurrentTime() + "] HTTP快照已关闭\n");
+        }
+    }
+
+    private void toggleMjpegServer() {
+        if (mjpegCheckBox.isSelected()) {
+            try {
+                int port = Integer.parseInt(mjpegPortField.getText().trim());
+                mjpegServer = new MjpegServer(latestFrame, port,
+                        MJPEG_PREVIEW_WIDTH, MJPEG_PREVIEW_HEIGHT, MJPEG_PREVIEW_FPS);
+                mjpegServer.start();
+                mjpegPortField.setEnabled(false);
+                logArea.append("[" + getCurrentTime() + "] MJPEG预览已开启: http://localhost:" + port + MjpegServer.PATH + "\n");
+            } catch (Exception e) {
+                mjpegServer = null;
+                mjpegCheckBox.setSelected(false);
+                logArea.append("[" + getCurrentTime() + "] MJPEG预览开启失败: " + e.getMessage() + "\n");
+            }
+        } else {
+            stopMjpegServer();
+        }
+    }
+
+    private void stopMjpegServer() {
+        if (mjpegServer != null) {
+            mjpegServer.stop();
+            mjpegServer = null;
+            mjpegPortField.setEnabled(true);
+            logArea.append("[" + getCurrentTime() + "] MJPEG预览已关闭\n");
+        }
+    }
+
     private void stopAllStreaming() {
-        closePreview();
-        stopStreaming();
+        // 等待预览和推流释放摄像头、录制器，最多3秒
+        if (!supervisor.shutdown(3000)) {
+            System.err.println("部分会话未在3秒内停止");
+        }
+        sourceSwitchTimer.stop();
+        stopHttpServer();
+        stopMjpegServer();
+        if (memoryTimer != null) {
+            memoryTimer.stop();
+        }
+        if (statsTimer != null) {
+            statsTimer.stop();
+        }
         logArea.append("[" + getCurrentTime() + "] 程序关闭\n");
     }
 
+    /**
+     * 解析逗号分隔的摄像头序号，忽略无效项和重复项
+     */
+    private static List<Integer> parseCameraList(String text) {
+        List<Integer> cameras = new ArrayList<>();
+        for (String part : text.split("[,，\\s]+")) {
+            try {
+                int index = Integer.parseInt(part.trim());
+                if (index >= 0 && !cameras.contains(index)) {
+                    cameras.add(index);
+                }
+            } catch (NumberFormatException e) {
+                // 忽略
+            }
+        }
+        return cameras;
+    }
+
     private String getCurrentTime() {
         return LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
     }
 
-    // ==================== 预览线程类 ====================
+    // ==================== 预览会话类 ====================
 
-    class PreviewThread extends Thread {
-        private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    class PreviewSession implements StreamSupervisor.Session {
+        private volatile boolean running = true;
         private VideoCapture capture;
+        private PreviewRenderer renderer;
         private final int cameraIndex;
         private int width;
         private int height;
         private int fps;
+        private final PrivacyMask privacyMask;
 
-        public PreviewThread(int cameraIndex, int width, int height, int fps) {
+        public PreviewSession(int cameraIndex, int width, int height, int fps, PrivacyMask privacyMask) {
             this.cameraIndex = cameraIndex;
             this.width = width;
             this.height = height;
             this.fps = fps;
+            this.privacyMask = privacyMask;
         }
 
+        // 每帧的作用域只需在结束时关闭，正文不引用
         @Override
-        public void run() {
-            isRunning.set(true);
-
+        @SuppressWarnings("try")
+        public void run(Runnable started) {
             try {
                 logArea.append("[" + getCurrentTime() + "] 预览初始化...\n");
 
@@ -867,80 +1407,66 @@ public class CameraToRTSPGUI extends JFrame {
                     logArea.append("[" + getCurrentTime() + "] 使用默认摄像头设置\n");
                 }
 
-                // 测试读取帧
+                // 测试读取帧，读取失败抛出异常时也要释放
                 Mat testFrame = new Mat();
-                int retryCount = 0;
-                boolean readSuccess = false;
-
-                while (retryCount < 10 && !readSuccess && isRunning.get()) {
-                    readSuccess = capture.read(testFrame);
-                    if (!readSuccess) {
-                        retryCount++;
-                        Thread.sleep(200);
+                try {
+                    int retryCount = 0;
+                    boolean readSuccess = false;
+
+                    while (retryCount < 10 && !readSuccess && running) {
+                        readSuccess = capture.read(testFrame);
+                        if (!readSuccess) {
+                            retryCount++;
+                            Thread.sleep(200);
+                        }
                     }
-                }
 
-                if (!readSuccess || testFrame.empty()) {
-                    throw new Exception("摄像头可打开但无法读取帧");
-                }
+                    if (!readSuccess || testFrame.empty()) {
+                        throw new Exception("摄像头可打开但无法读取帧");
+                    }
 
-                logArea.append("[" + getCurrentTime() + "] ✓ 预览初始化成功\n");
-                logArea.append("[" + getCurrentTime() + "]   实际分辨率: " + testFrame.cols() + "x" + testFrame.rows() + "\n");
+                    logArea.append("[" + getCurrentTime() + "] ✓ 预览初始化成功\n");
+                    logArea.append("[" + getCurrentTime() + "]   实际分辨率: " + testFrame.cols() + "x" + testFrame.rows() + "\n");
+                } finally {
+                    testFrame.release();
+                    testFrame.close();
+                }
 
+                started.run();
                 SwingUtilities.invokeLater(() -> {
                     previewLabel.setText("摄像头连接成功");
                     previewLabel.setForeground(Color.GREEN);
                 });
 
-                testFrame.release();
+                renderer = new PreviewRenderer(PREVIEW_MAX_FPS);
+                renderer.setTargetSize(previewLabel.getWidth(), previewLabel.getHeight());
+                previewRenderer = renderer;
 
                 // 主预览循环
                 long frameCount = 0;
                 long lastLogTime = System.currentTimeMillis();
 
-                while (isRunning.get()) {
-                    try {
+                while (running) {
+                    // 每帧一个原生分配作用域，异常时帧数据同样会被释放
+                    try (NativeMemoryMonitor.FrameScope scope = NativeMemoryMonitor.openFrameScope()) {
                         Mat frame = new Mat();
                         boolean frameRead = capture.read(frame);
 
                         if (frameRead && !frame.empty()) {
-                            // 转换为BufferedImage（自动修复颜色）
-                            BufferedImage image = matToBufferedImage(frame);
+                            // 预览与推流使用相同的遮挡区域
+                            if (privacyMask != null) {
+                                privacyMask.apply(frame);
+                            }
+                            latestFrame.publish(frame);
+
+                            // 按预览帧率在原生Mat上缩放到控件大小，再拷贝进Java堆
+                            BufferedImage image = renderer.isDue(System.nanoTime()) ? renderer.render(frame) : null;
 
                             if (image != null) {
-                                // 显示图像
-                                int labelWidth = previewLabel.getWidth();
-                                int labelHeight = previewLabel.getHeight();
-
-                                if (labelWidth > 10 && labelHeight > 10) {
-                                    // 保持宽高比缩放
-                                    double widthRatio = (double) labelWidth / image.getWidth();
-                                    double heightRatio = (double) labelHeight / image.getHeight();
-                                    double ratio = Math.min(widthRatio, heightRatio);
-
-                                    int scaledWidth = (int) (image.getWidth() * ratio);
-                                    int scaledHeight = (int) (image.getHeight() * ratio);
-
-                                    // 居中显示
-                                    BufferedImage centeredImage = new BufferedImage(
-                                            labelWidth, labelHeight, BufferedImage.TYPE_INT_RGB
-                                    );
-                                    Graphics2D g2d = centeredImage.createGraphics();
-                                    g2d.setColor(Color.BLACK);
-                                    g2d.fillRect(0, 0, labelWidth, labelHeight);
-
-                                    int x = (labelWidth - scaledWidth) / 2;
-                                    int y = (labelHeight - scaledHeight) / 2;
-
-                                    Image scaledImage = image.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
-                                    g2d.drawImage(scaledImage, x, y, null);
-                                    g2d.dispose();
-
-                                    SwingUtilities.invokeLater(() -> {
-                                        previewLabel.setIcon(new ImageIcon(centeredImage));
-                                        previewLabel.setText("");
-                                    });
-                                }
+                                SwingUtilities.invokeLater(() -> {
+                                    previewLabel.setIcon(new ImageIcon(image));
+                                    previewLabel.setText("");
+                                });
 
                                 frameCount++;
 
@@ -955,13 +1481,11 @@ public class CameraToRTSPGUI extends JFrame {
                             }
                         }
 
-                        frame.release();
-
                         // 控制帧率
                         Thread.sleep(Math.max(1, 1000 / fps));
 
                     } catch (Exception e) {
-                        if (isRunning.get()) {
+                        if (running) {
                             Thread.sleep(100);
                         }
                     }
@@ -976,160 +1500,27 @@ public class CameraToRTSPGUI extends JFrame {
                 });
 
             } finally {
-                if (capture != null && capture.isOpened()) {
-                    capture.release();
-                }
-
-                // 更新主界面状态
-                isPreviewRunning = false;
-                updateButtonStates();
-            }
-        }
-
-        public void stopPreview() {
-            isRunning.set(false);
-        }
-    }
-
-    // ==================== 推流控制器类 ====================
-
-    class StreamController {
-        private final AtomicBoolean isRunning = new AtomicBoolean(false);
-        private FFmpegFrameRecorder recorder;
-        private VideoCapture capture;
-        private long frameCount = 0;
-        private long startTime = 0;
-
-        public void startStreaming(int cameraIndex, String rtspUrl,
-                                   int width, int height, int fps) throws Exception {
-
-            if (isRunning.get()) {
-                throw new IllegalStateException("推流已在运行中");
-            }
-
-            isRunning.set(true);
-            frameCount = 0;
-            startTime = System.currentTimeMillis();
-
-            logArea.append("[" + getCurrentTime() + "] 初始化推流...\n");
-
-            try {
-                // 使用VideoCapture模式
-                capture = new VideoCapture();
-                boolean opened = capture.open(cameraIndex, opencv_videoio.CAP_DSHOW);
-
-                if (!opened || !capture.isOpened()) {
-                    throw new Exception("无法打开摄像头");
-                }
-
-                Thread.sleep(500);
-
-                // 设置摄像头属性
-                capture.set(opencv_videoio.CAP_PROP_FRAME_WIDTH, width);
-                capture.set(opencv_videoio.CAP_PROP_FRAME_HEIGHT, height);
-                capture.set(opencv_videoio.CAP_PROP_FPS, fps);
-
-                logArea.append("[" + getCurrentTime() + "] 推流摄像头打开成功\n");
-
-                // 创建RTSP录制器
-                recorder = new FFmpegFrameRecorder(rtspUrl, width, height);
-                recorder.setFormat("rtsp");
-                recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-                recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
-                recorder.setFrameRate(fps);
-                recorder.setVideoBitrate(2000000);
-                recorder.setVideoQuality(23);
-                recorder.setGopSize(fps * 2);
-                recorder.setOption("rtsp_transport", "tcp");
-                recorder.setOption("tune", "zerolatency");
-                recorder.setOption("preset", "ultrafast");
-
-                recorder.start();
-                logArea.append("[" + getCurrentTime() + "] RTSP推流已启动\n");
-
-                Java2DFrameConverter converter = new Java2DFrameConverter();
-
-                // 推流循环
-                while (isRunning.get()) {
-                    try {
-                        Frame frame = null;
-
-                        if (capture != null && capture.isOpened()) {
-                            Mat mat = new Mat();
-                            if (capture.read(mat) && !mat.empty()) {
-                                // 转换为BufferedImage（自动修复颜色）
-                                BufferedImage image = matToBufferedImage(mat);
-
-                                if (image != null) {
-                                    frame = converter.convert(image);
-                                }
-                                mat.release();
-                            }
-                        }
-
-                        if (frame != null) {
-                            frame.timestamp = 1000000L * (System.currentTimeMillis() - startTime);
-                            recorder.record(frame);
-                            frameCount++;
-
-                            if (frameCount % 30 == 0) {
-                                long elapsed = (System.currentTimeMillis() - startTime) / 1000;
-                                double actualFps = frameCount / (elapsed > 0 ? elapsed : 1);
-
-                                SwingUtilities.invokeLater(() -> {
-                                    statsLabel.setText(String.format("帧数: %d | 时长: %ds | FPS: %.1f",
-                                            frameCount, elapsed, actualFps));
-                                });
-                            }
-                        }
-
-                        Thread.sleep(Math.max(1, 1000 / fps));
-
-                    } catch (Exception e) {
-                        if (isRunning.get()) {
-                            String msg = e.getMessage();
-                            if (msg == null || !msg.contains("timestamp")) {
-                                logArea.append("[" + getCurrentTime() + "] 推流帧错误: " + msg + "\n");
-                            }
-                            Thread.sleep(50);
-                        }
+                if (capture != null) {
+                    if (capture.isOpened()) {
+                        capture.release();
                     }
+                    capture.close();
                 }
-
-            } finally {
-                stopInternal();
-            }
-        }
-
-        private void stopInternal() {
-            isRunning.set(false);
-
-            try {
-                if (recorder != null) {
-                    recorder.stop();
-                    recorder.release();
-                    logArea.append("[" + getCurrentTime() + "] RTSP录制器已停止\n");
+                if (renderer != null) {
+                    if (previewRenderer == renderer) {
+                        previewRenderer = null;
+                    }
+                    renderer.release();
                 }
-            } catch (Exception e) {
-                // 忽略
-            }
-
-            try {
-                if (capture != null && capture.isOpened()) {
-                    capture.release();
-                    logArea.append("[" + getCurrentTime() + "] 推流摄像头已关闭\n");
+                if (privacyMask != null) {
+                    privacyMask.release();
                 }
-            } catch (Exception e) {
-                // 忽略
             }
-
-            // 更新主界面状态
-            isStreaming = false;
-            updateButtonStates();
         }
 
-        public void stopStreaming() {
-            isRunning.set(false);
+        @Override
+        public void requestStop() {
+            running = false;
         }
     }
 
@@ -1167,6 +1558,7 @@ public class CameraToRTSPGUI extends JFrame {
         }
 
         SwingUtilities.invokeLater(() -> {
+            NativeMemoryMonitor.trackCurrentThread();
             new CameraToRTSPGUI();
         });
     }
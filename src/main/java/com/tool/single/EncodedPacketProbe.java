@@ -0,0 +1,78 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.lang.reflect.Field;
+
+/**
+ * 视频编码输出探针
+ * 录制器不公开编码后的包大小，包写出后即被释放；这里替换视频编码上下文的 get_encode_buffer 回调，
+ * 在编码器申请输出缓冲时记下包大小和时刻，用于统计输出码率并区分编码和发送耗时。
+ * 只对使用 ff_get_encode_buffer 的编码器有效（openh264、x264等），否则 isActive 保持false
+ */
+public class EncodedPacketProbe extends AVCodecContext.Get_encode_buffer_AVCodecContext_AVPacket_int {
+
+    private final StreamStats stats;
+    private AVCodecContext context;
+    private volatile long lastPacketNanos;
+    private volatile boolean active;
+
+    public EncodedPacketProbe(StreamStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * 录制器 start 之后调用，失败返回false（不影响推流）
+     */
+    public boolean attach(FFmpegFrameRecorder recorder) {
+        try {
+            Field field = FFmpegFrameRecorder.class.getDeclaredField("video_c");
+            field.setAccessible(true);
+            context = (AVCodecContext) field.get(recorder);
+        } catch (Exception e) {
+            context = null;
+        }
+        if (context == null || context.isNull()) {
+            context = null;
+            return false;
+        }
+        context.get_encode_buffer(this);
+        return true;
+    }
+
+    @Override
+    public int call(AVCodecContext codecContext, AVPacket packet, int flags) {
+        int ret = avcodec.avcodec_default_get_encode_buffer(codecContext, packet, flags);
+        if (ret >= 0) {
+            lastPacketNanos = System.nanoTime();
+            active = true;
+            stats.bytesSent(packet.size());
+        }
+        return ret;
+    }
+
+    /**
+     * 最近一个输出包的申请时刻（System.nanoTime），即编码完成、开始发送的时刻
+     */
+    public long getLastPacketNanos() {
+        return lastPacketNanos;
+    }
+
+    /**
+     * 是否已经收到过回调
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 录制器释放之后调用
+     */
+    public void release() {
+        context = null;
+        close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.tool.single;
+
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+/**
+ * 推流编码配置预设
+ * 所有预设都使用周期性帧内刷新(intra-refresh)代替整帧IDR，避免关键帧码率尖峰
+ * 注意：intra-refresh/VBV/前瞻等参数只有在使用libx264(GPL版FFmpeg)时完全生效
+ */
+public enum EncoderProfile {
+
+    // 最低延迟：CBR + 单帧VBV缓冲，无前瞻，切片多线程
+    LOWEST_LATENCY("lowest-latency", "最低延迟", "ultrafast", "zerolatency",
+            true, -1, 1.0, 1, 0, true, 0, 1),
+
+    // 均衡：CRF 23，码率上限为基准码率，半秒VBV缓冲
+    BALANCED("balanced", "均衡", "superfast", "zerolatency",
+            false, 23, 1.0, 500, 0, true, 0, 2),
+
+    // 省带宽：CRF 28，码率上限为基准码率的60%，开启少量前瞻和帧级多线程
+    BANDWIDTH_SAVER("bandwidth-saver", "省带宽", "veryfast", null,
+            false, 28, 0.6, 1000, 10, false, 2, 4);
+
+    private final String key;
+    private final String displayName;
+    private final String preset;
+    private final String tune;
+    private final boolean cbr;
+    private final int crf;
+    private final double bitrateFactor;
+    private final int vbvBuffer;        // VBV缓冲：CBR时为帧数，CRF时为毫秒
+    private final int lookahead;
+    private final boolean slicedThreads;
+    private final int threads;          // 0表示由x264自动决定
+    private final int refreshSeconds;   // 帧内刷新周期
+
+    EncoderProfile(String key, String displayName, String preset, String tune,
+                   boolean cbr, int crf, double bitrateFactor, int vbvBuffer,
+                   int lookahead, boolean slicedThreads, int threads, int refreshSeconds) {
+        this.key = key;
+        this.displayName = displayName;
+        this.preset = preset;
+        this.tune = tune;
+        this.cbr = cbr;
+        this.crf = crf;
+        this.bitrateFactor = bitrateFactor;
+        this.vbvBuffer = vbvBuffer;
+        this.lookahead = lookahead;
+        this.slicedThreads = slicedThreads;
+        this.threads = threads;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getPreset() {
+        return preset;
+    }
+
+    /**
+     * 视频码率（CRF预设为上限）
+     */
+    public int getBitrate(int baseBitrate) {
+        return (int) (baseBitrate * bitrateFactor);
+    }
+
+    /**
+     * 将预设应用到录制器，必须在 recorder.start() 之前调用
+     */
+    public void apply(FFmpegFrameRecorder recorder, int fps, int baseBitrate) {
+        int bitrate = getBitrate(baseBitrate);
+        // CBR按帧数计算缓冲，避免单帧突发超过一帧的传输时间
+        int vbvBits = cbr
+                ? bitrate / Math.max(1, fps) * vbvBuffer
+                : (int) ((long) bitrate * vbvBuffer / 1000);
+
+        recorder.setGopSize(fps * refreshSeconds);
+        recorder.setVideoBitrate(bitrate);
+        // 编码器参数需要走videoOption，普通option只会传给封装格式
+        recorder.setVideoOption("preset", preset);
+        if (tune != null) {
+            recorder.setVideoOption("tune", tune);
+        }
+        recorder.setVideoOption("intra-refresh", "1");
+        recorder.setVideoOption("forced-idr", "1");
+        recorder.setVideoOption("rc-lookahead", String.valueOf(lookahead));
+        recorder.setVideoOption("threads", String.valueOf(threads));
+        recorder.setVideoOption("maxrate", String.valueOf(bitrate));
+        recorder.setVideoOption("bufsize", String.valueOf(vbvBits));
+
+        // 码控完全由预设决定，不再使用录制器默认的全局质量参数
+        recorder.setVideoQuality(-1);
+        String x264Params = "bframes=0:sync-lookahead=0:sliced-threads=" + (slicedThreads ? 1 : 0);
+        if (cbr) {
+            recorder.setVideoOption("minrate", String.valueOf(bitrate));
+            x264Params += ":nal-hrd=cbr";
+        } else {
+            recorder.setVideoOption("crf", String.valueOf(crf));
+        }
+        recorder.setVideoOption("x264-params", x264Params);
+
+        // 默认的非GPL版FFmpeg使用OpenH264，x264私有参数会被忽略，这里给出等价的码控与切片设置
+        recorder.setVideoOption("rc_mode", cbr ? "bitrate" : "quality");
+        if (slicedThreads) {
+            recorder.setVideoOption("slices", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        }
+    }
+
+    /**
+     * 统计栏中显示的简要描述
+     */
+    public String describe(int baseBitrate) {
+        int kbps = (int) (baseBitrate * bitrateFactor / 1000);
+        return key + (cbr ? " CBR " + kbps + "k" : " CRF" + crf + " ≤" + kbps + "k");
+    }
+
+    public static EncoderProfile fromKey(String key) {
+        for (EncoderProfile profile : values()) {
+            if (profile.key.equalsIgnoreCase(key)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("未知的编码配置: " + key);
+    }
+
+    @Override
+    public String toString() {
+        return displayName + " (" + key + ")";
+    }
+}
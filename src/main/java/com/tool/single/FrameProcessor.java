@@ -0,0 +1,35 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * 编码前的画面处理插件，直接在原生BGR画面上原地修改
+ * 由 FrameProcessorChain 按添加顺序调用，位于采集之后、遮挡和水印之前。
+ * 无状态的处理器（每帧的结果只取决于这一帧）可能在多个线程上同时处理不同的帧；
+ * 有状态的处理器严格按采集顺序逐帧调用，但不保证每次都在同一个线程上
+ */
+public interface FrameProcessor {
+
+    /**
+     * 处理一帧，sequence为从0开始的采集序号；返回false丢弃这一帧，后续处理器和编码都会跳过它
+     * 帧内分配的临时Mat等对象由调用方的帧作用域释放
+     */
+    boolean process(Mat frame, long sequence);
+
+    /**
+     * 是否与前后帧无关，可以多帧并行处理
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * 推流结束后释放处理器持有的原生资源
+     */
+    default void release() {
+    }
+}
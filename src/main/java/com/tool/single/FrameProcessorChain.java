@@ -0,0 +1,296 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一路推流的画面处理链，按添加顺序调用各个 FrameProcessor
+ * 全部是有状态处理器时直接在推流线程上逐帧处理，不增加延迟；
+ * 含无状态处理器时每帧拷贝到链自己的缓冲中交给工作线程池，最多 depth 帧同时在处理，
+ * 在途队列按提交顺序取回（即重排缓冲），先处理完的帧等待前面的帧，编码顺序与采集顺序一致，
+ * 代价是最多 depth 帧的延迟。此时有状态处理器也在工作线程上执行，按采集序号依次放行。
+ * submit/recycle 只在推流线程中调用
+ */
+public class FrameProcessorChain {
+
+    // 等待在途帧时检查停止请求的间隔
+    private static final long POLL_MILLIS = 200;
+
+    private final List<FrameProcessor> processors;
+    // 与processors一一对应，无状态处理器为null
+    private final Sequencer[] sequencers;
+    private final int workers;
+    private final int depth;
+    private final boolean parallel;
+
+    private ExecutorService executor;
+    private final ArrayDeque<Mat> free = new ArrayDeque<>();
+    private final Set<Mat> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+    private long sequence;
+    private long dropped;
+    private boolean deferred;
+    private volatile boolean running;
+
+    /**
+     * 有状态处理器的放行顺序：序号为n的帧等序号n-1的帧处理完才进入
+     */
+    private static final class Sequencer {
+        private long next;
+
+        synchronized void await(long sequence) throws InterruptedException {
+            while (next != sequence) {
+                wait();
+            }
+        }
+
+        synchronized void advance() {
+            next++;
+            notifyAll();
+        }
+    }
+
+    private static final class InFlight {
+        final Mat frame;
+        final Future<Boolean> result;
+
+        InFlight(Mat frame, Future<Boolean> result) {
+            this.frame = frame;
+            this.result = result;
+        }
+    }
+
+    /**
+     * workers为工作线程数，小于1或没有无状态处理器时不使用线程池
+     */
+    public FrameProcessorChain(List<FrameProcessor> processors, int workers) {
+        this.processors = new ArrayList<>(processors);
+        boolean anyStateless = false;
+        for (FrameProcessor processor : this.processors) {
+            anyStateless |= processor.isStateless();
+        }
+        this.parallel = anyStateless && workers > 0;
+        this.workers = parallel ? workers : 0;
+        this.depth = this.workers + 1;
+        this.sequencers = new Sequencer[this.processors.size()];
+        if (parallel) {
+            for (int i = 0; i < sequencers.length; i++) {
+                if (!this.processors.get(i).isStateless()) {
+                    sequencers[i] = new Sequencer();
+                }
+            }
+        }
+    }
+
+    /**
+     * 默认工作线程数，给推流线程和编码器留出一个核
+     */
+    public static int defaultWorkers() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * 推流开始前在帧作用域之外调用，分配帧缓冲和线程池
+     */
+    public void start() {
+        running = true;
+        if (!parallel) {
+            return;
+        }
+        // 缓冲的像素由OpenCV在拷贝时按需分配，Mat本身不挂到任何帧作用域上
+        for (int i = 0; i <= depth; i++) {
+            Mat buffer = new Mat();
+            free.add(buffer);
+            buffers.add(buffer);
+        }
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(NativeMemoryMonitor.tracked(r), "frame-processor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交一帧BGR画面，返回下一帧按采集顺序处理完成的画面（并行时是更早提交的帧，位于链的缓冲中）；
+     * 没有可输出的帧时返回null，用 isDeferred 区分是仍在处理还是被处理器丢弃。
+     * 返回的画面用完后交给 recycle
+     */
+    public Mat submit(Mat frame) throws Exception {
+        deferred = false;
+        long number = sequence++;
+        if (!parallel) {
+            boolean keep = false;
+            try {
+                keep = runAll(frame, number);
+            } finally {
+                if (!keep) {
+                    dropped++;
+                }
+            }
+            return keep ? frame : null;
+        }
+
+        Mat buffer = free.poll();
+        frame.copyTo(buffer);
+        inFlight.add(new InFlight(buffer, executor.submit(() -> runScoped(buffer, number))));
+
+        // 在途帧未满且最早的帧还没处理完时先不等待，满了才阻塞推流线程
+        if (inFlight.size() < depth && !inFlight.peek().result.isDone()) {
+            deferred = true;
+            return null;
+        }
+        InFlight head = inFlight.peek();
+        Boolean keep = null;
+        try {
+            // 处理器卡住时不无限等待，收到停止请求后放弃，交给 release 判断能否释放
+            while (keep == null) {
+                try {
+                    keep = head.result.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (!running) {
+                        deferred = true;
+                        return null;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            inFlight.poll();
+            free.add(head.frame);
+            dropped++;
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        inFlight.poll();
+        if (!keep) {
+            free.add(head.frame);
+            dropped++;
+            return null;
+        }
+        return head.frame;
+    }
+
+    /**
+     * 请求停止，可在任意线程调用；正在等待在途帧的 submit 会在一个检查间隔内返回null
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 上一次 submit 返回null是因为帧仍在处理中（稍后输出），而不是被丢弃
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * 归还 submit 返回的画面，不是链的缓冲时忽略
+     */
+    public void recycle(Mat frame) {
+        if (frame != null && buffers.contains(frame)) {
+            free.add(frame);
+        }
+    }
+
+    // 作用域只需在结束时关闭，正文不引用
+    @SuppressWarnings("try")
+    private boolean runScoped(Mat frame, long number) throws InterruptedException {
+        // 工作线程上同样每帧一个作用域，处理器的临时分配在这里释放
+        try (NativeMemoryMonitor.FrameScope scope = NativeMemoryMonitor.openFrameScope()) {
+            return runAll(frame, number);
+        }
+    }
+
+    private boolean runAll(Mat frame, long number) throws InterruptedException {
+        boolean keep = true;
+        RuntimeException error = null;
+        for (int i = 0; i < processors.size(); i++) {
+            Sequencer sequencer = sequencers[i];
+            if (sequencer != null) {
+                sequencer.await(number);
+            }
+            try {
+                // 已丢弃或出错的帧也要经过有状态处理器的放行，后面的帧才不会一直等待
+                if (keep && error == null) {
+                    keep = processors.get(i).process(frame, number);
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                if (sequencer != null) {
+                    sequencer.advance();
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return keep;
+    }
+
+    /**
+     * 被处理器丢弃或处理出错的帧数
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public String describe() {
+        StringBuilder names = new StringBuilder();
+        for (FrameProcessor processor : processors) {
+            if (names.length() > 0) {
+                names.append(" → ");
+            }
+            names.append(processor.getName()).append(processor.isStateless() ? "" : "(有状态)");
+        }
+        return parallel
+                ? names + "，" + workers + "个工作线程，最多" + depth + "帧并行（延迟最多增加" + depth + "帧）"
+                : names + "，在推流线程上处理";
+    }
+
+    /**
+     * 停止线程池并释放缓冲和处理器；工作线程未能及时结束时返回false，此时不释放，避免释放正在使用的内存
+     */
+    public boolean release() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            executor = null;
+        }
+        inFlight.clear();
+        free.clear();
+        for (Mat buffer : buffers) {
+            buffer.release();
+            buffer.close();
+        }
+        buffers.clear();
+        for (FrameProcessor processor : processors) {
+            processor.release();
+        }
+        return true;
+    }
+}
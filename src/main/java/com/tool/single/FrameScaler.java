@@ -0,0 +1,261 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.ffmpeg.global.swscale;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.nio.ByteBuffer;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * 编码前的显式缩放，保证送入编码器的画面始终是配置的分辨率
+ * 摄像头经常不理会设置的宽高，这里用swscale在原生缓冲区上一次完成缩放；
+ * 融合模式下同一趟swscale同时完成 BGR→YUV420P 转换，编码器直接使用结果，不再做隐式转换；
+ * 原生YUV输入始终直接缩放/转换为YUV420P，格式和尺寸已一致时原样交给编码器。
+ * 目标缓冲区只在构造时分配一次，非线程安全
+ */
+public class FrameScaler {
+
+    public enum Algorithm {
+        AREA("区域", swscale.SWS_AREA),
+        BILINEAR("双线性", swscale.SWS_BILINEAR),
+        FAST_BILINEAR("快速双线性", swscale.SWS_FAST_BILINEAR);
+
+        private final String displayName;
+        private final int flags;
+
+        Algorithm(String displayName, int flags) {
+            this.displayName = displayName;
+            this.flags = flags;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Algorithm algorithm;
+    private final boolean fused;
+    private final int outputFormat;
+
+    private SwsContext context;
+    private final PointerPointer<BytePointer> sourceData = new PointerPointer<>(4);
+    private final IntPointer sourceStride = new IntPointer(4);
+    private final PointerPointer<BytePointer> yuvData = new PointerPointer<>(4);
+    private final IntPointer yuvStride = new IntPointer(4);
+    private final PointerPointer<BytePointer> bgrData = new PointerPointer<>(4);
+    private final IntPointer bgrStride = new IntPointer(4);
+
+    // 连续的YUV420P输出缓冲（融合模式和原生输入使用），非融合模式另有目标尺寸的BGR Mat
+    private final BytePointer yuv;
+    private final ByteBuffer yuvBuffer;
+    private final Mat bgr;
+
+    // 最近一次的输出，可能直接是输入帧；held与输入帧共享像素（OpenCV引用计数），
+    // 输入帧的Mat随帧作用域释放后像素仍然有效，切换来源时 hold 才能拷贝最后一帧
+    private final Mat held = new Mat();
+    private Mat passThrough;
+    private boolean outputYuv;
+    private int lastSourceWidth = -1;
+    private int lastSourceHeight = -1;
+
+    public FrameScaler(int width, int height, Algorithm algorithm, boolean fused) {
+        this.width = width;
+        this.height = height;
+        this.algorithm = algorithm;
+        this.fused = fused;
+        this.outputFormat = fused ? avutil.AV_PIX_FMT_YUV420P : avutil.AV_PIX_FMT_BGR24;
+
+        // 按1字节对齐紧密排列，与录制器解析单缓冲YUV420P的方式一致
+        int size = avutil.av_image_get_buffer_size(avutil.AV_PIX_FMT_YUV420P, width, height, 1);
+        yuv = new BytePointer(size);
+        yuvBuffer = yuv.asByteBuffer();
+        avutil.av_image_fill_arrays(yuvData, yuvStride, yuv, avutil.AV_PIX_FMT_YUV420P, width, height, 1);
+
+        if (fused) {
+            bgr = null;
+        } else {
+            bgr = new Mat(height, width, CV_8UC3);
+            bgrData.put(0, bgr.data());
+            bgrStride.put(0, (int) bgr.step());
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public boolean isFused() {
+        return fused;
+    }
+
+    /**
+     * 输入尺寸是否与目标分辨率不同（以最近一帧为准）
+     */
+    public boolean isResizing() {
+        return lastSourceWidth != width || lastSourceHeight != height;
+    }
+
+    /**
+     * 是否已有可以交给录制器的输出
+     */
+    public boolean hasOutput() {
+        return lastSourceWidth >= 0;
+    }
+
+    public String describe() {
+        return (fused ? "融合缩放+YUV420P" : "缩放") + " " + algorithm + " → " + width + "x" + height;
+    }
+
+    /**
+     * 处理一帧BGR画面，返回false表示输入无效
+     */
+    public boolean scale(Mat frame) {
+        if (frame == null || frame.empty() || frame.type() != CV_8UC3) {
+            return false;
+        }
+        lastSourceWidth = frame.cols();
+        lastSourceHeight = frame.rows();
+        outputYuv = fused;
+
+        // 非融合模式下尺寸一致时无需处理，编码器自行转换颜色
+        if (!fused && !isResizing()) {
+            passThrough = held.put(frame);
+            return true;
+        }
+        dropPassThrough();
+
+        sourceData.put(0, frame.data());
+        sourceStride.put(0, (int) frame.step());
+        convert(avutil.AV_PIX_FMT_BGR24, frame.cols(), frame.rows(), outputFormat,
+                fused ? yuvData : bgrData, fused ? yuvStride : bgrStride);
+        return true;
+    }
+
+    /**
+     * 处理一帧原生YUV数据（紧密排列），输出始终为YUV420P
+     */
+    public boolean scaleRaw(Mat raw, int pixelFormat, int rawWidth, int rawHeight) {
+        if (raw == null || raw.empty()
+                || raw.total() * raw.elemSize() < RawFrameSource.frameBytes(pixelFormat, rawWidth, rawHeight)) {
+            return false;
+        }
+        lastSourceWidth = rawWidth;
+        lastSourceHeight = rawHeight;
+
+        // 已经是编码器的格式和尺寸，零转换
+        if (pixelFormat == avutil.AV_PIX_FMT_YUV420P && !isResizing()) {
+            passThrough = held.put(raw);
+            outputYuv = true;
+            return true;
+        }
+        dropPassThrough();
+        outputYuv = true;
+
+        avutil.av_image_fill_arrays(sourceData, sourceStride, raw.data(), pixelFormat, rawWidth, rawHeight, 1);
+        convert(pixelFormat, rawWidth, rawHeight, avutil.AV_PIX_FMT_YUV420P, yuvData, yuvStride);
+        return true;
+    }
+
+    private void convert(int sourceFormat, int sourceWidth, int sourceHeight, int targetFormat,
+                         PointerPointer<BytePointer> targetData, IntPointer targetStride) {
+        context = swscale.sws_getCachedContext(context,
+                sourceWidth, sourceHeight, sourceFormat,
+                width, height, targetFormat,
+                algorithm.getFlags(), null, null, (DoublePointer) null);
+        if (context == null) {
+            throw new IllegalStateException("无法创建缩放上下文");
+        }
+        swscale.sws_scale(context, sourceData, sourceStride, 0, sourceHeight, targetData, targetStride);
+    }
+
+    /**
+     * 把最近一次 scale 的结果交给录制器，像素格式和尺寸与编码器一致时录制器不会再做转换
+     */
+    public void record(FFmpegFrameRecorder recorder) throws Exception {
+        if (passThrough != null && outputYuv) {
+            ByteBuffer buffer = passThrough.data().capacity(passThrough.total() * passThrough.elemSize()).asByteBuffer();
+            recorder.recordImage(width, height, Frame.DEPTH_UBYTE, 1, width,
+                    avutil.AV_PIX_FMT_YUV420P, buffer);
+        } else if (passThrough != null) {
+            recordBgr(recorder, passThrough);
+        } else if (outputYuv) {
+            recorder.recordImage(width, height, Frame.DEPTH_UBYTE, 1, width,
+                    avutil.AV_PIX_FMT_YUV420P, yuvBuffer);
+        } else {
+            recordBgr(recorder, bgr);
+        }
+    }
+
+    /**
+     * 把直接引用输入帧的输出复制到自有缓冲区，之后输入帧释放了也能重复 record
+     * 切换来源期间用来重复发送最后一帧
+     */
+    public void hold() {
+        if (passThrough == null) {
+            return;
+        }
+        if (outputYuv) {
+            yuv.put(passThrough.data().capacity(yuv.capacity()));
+        } else {
+            passThrough.copyTo(bgr);
+        }
+        dropPassThrough();
+    }
+
+    private void dropPassThrough() {
+        if (passThrough != null) {
+            held.release();
+            passThrough = null;
+        }
+    }
+
+    private static void recordBgr(FFmpegFrameRecorder recorder, Mat mat) throws Exception {
+        ByteBuffer buffer = mat.data().capacity(mat.step() * mat.rows()).asByteBuffer();
+        recorder.recordImage(mat.cols(), mat.rows(), Frame.DEPTH_UBYTE, 3, (int) mat.step(),
+                avutil.AV_PIX_FMT_BGR24, buffer);
+    }
+
+    public void release() {
+        if (context != null) {
+            swscale.sws_freeContext(context);
+            context = null;
+        }
+        sourceData.close();
+        sourceStride.close();
+        yuvData.close();
+        yuvStride.close();
+        bgrData.close();
+        bgrStride.close();
+        yuv.close();
+        if (bgr != null) {
+            bgr.release();
+            bgr.close();
+        }
+        dropPassThrough();
+        held.close();
+    }
+}
@@ -0,0 +1,34 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * 推流帧来源（本地摄像头、合成测试画面等）
+ * read 返回BGR格式的Mat，调用方负责复用和释放目标Mat
+ */
+public interface FrameSource {
+
+    /**
+     * 打开来源，width/height/fps 为期望值，来源可以不完全遵守
+     */
+    void open(int width, int height, int fps) throws Exception;
+
+    /**
+     * 读取一帧到 frame，失败返回false
+     */
+    boolean read(Mat frame);
+
+    /**
+     * 日志中显示的名称
+     */
+    String getName();
+
+    /**
+     * 与另一个来源是否占用同一设备（同一设备不能同时打开两次）
+     */
+    default boolean sharesDevice(FrameSource other) {
+        return false;
+    }
+
+    void close();
+}
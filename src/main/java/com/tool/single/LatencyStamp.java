@@ -0,0 +1,103 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+/**
+ * 帧内时间戳条码：左上角两行共64个黑白方块
+ * 位布局：16位帧序号 + 40位微秒时间戳 + 8位校验
+ * 方块边长按画面宽度的1/40计算，推流端缩放后接收端仍可按比例解码
+ */
+public final class LatencyStamp {
+
+    private static final int COLUMNS = 32;
+    private static final int ROWS = 2;
+    private static final int BITS = COLUMNS * ROWS;
+    private static final long TIME_MASK = (1L << 40) - 1;
+    // 类首次加载发生在推流循环的帧作用域内，需保留引用，否则第一帧结束时颜色就被释放
+    private static final Scalar WHITE = new Scalar(255, 255, 255, 0).retainReference();
+    private static final Scalar BLACK = new Scalar(0, 0, 0, 0).retainReference();
+
+    private LatencyStamp() {
+    }
+
+    /**
+     * 同一进程内收发双方共用的单调时钟（微秒）
+     */
+    public static long nowMicros() {
+        return System.nanoTime() / 1000;
+    }
+
+    public static int cellSize(int frameWidth) {
+        return Math.max(4, frameWidth / 40);
+    }
+
+    /**
+     * 在BGR帧上写入条码
+     */
+    public static void stamp(Mat frame, long sequence, long micros) {
+        long payload = ((sequence & 0xFFFF) << 48) | ((micros & TIME_MASK) << 8);
+        payload |= checksum(payload);
+
+        int cell = cellSize(frame.cols());
+        if (cell * COLUMNS > frame.cols() || cell * ROWS > frame.rows()) {
+            return;
+        }
+        for (int i = 0; i < BITS; i++) {
+            boolean bit = ((payload >>> (BITS - 1 - i)) & 1) != 0;
+            Rect cellRect = new Rect((i % COLUMNS) * cell, (i / COLUMNS) * cell, cell, cell);
+            opencv_imgproc.rectangle(frame, cellRect, bit ? WHITE : BLACK,
+                    opencv_imgproc.FILLED, opencv_imgproc.LINE_8, 0);
+        }
+    }
+
+    /**
+     * 从BGR帧中解码条码，返回 {序号, 微秒时间戳}，校验失败返回null
+     */
+    public static long[] decode(Mat frame) {
+        int cell = cellSize(frame.cols());
+        if (cell * COLUMNS > frame.cols() || cell * ROWS > frame.rows()) {
+            return null;
+        }
+
+        // 只采样方块中心区域，避开编码产生的边缘振铃
+        int margin = cell / 4;
+        long payload = 0;
+        for (int i = 0; i < BITS; i++) {
+            Rect sample = new Rect((i % COLUMNS) * cell + margin, (i / COLUMNS) * cell + margin,
+                    cell - 2 * margin, cell - 2 * margin);
+            Mat roi = new Mat(frame, sample);
+            double luma = opencv_core.mean(roi).get(1);
+            roi.release();
+            payload = (payload << 1) | (luma > 128 ? 1 : 0);
+        }
+
+        if ((payload & 0xFF) != checksum(payload & ~0xFFL)) {
+            return null;
+        }
+        return new long[]{payload >>> 48, (payload >>> 8) & TIME_MASK};
+    }
+
+    /**
+     * 将解码出的40位时间戳还原为完整时间，用于计算延迟
+     */
+    public static long unwrapMicros(long stampMicros, long nowMicros) {
+        long high = nowMicros & ~TIME_MASK;
+        long full = high | stampMicros;
+        if (full > nowMicros) {
+            full -= (1L << 40);
+        }
+        return full;
+    }
+
+    private static long checksum(long payload) {
+        long sum = 0x5A;
+        for (int shift = 8; shift < 64; shift += 8) {
+            sum = sum * 31 + ((payload >>> shift) & 0xFF);
+        }
+        return sum & 0xFF;
+    }
+}
@@ -0,0 +1,222 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 端到端延迟测试：合成画面写入时间戳条码 -> StreamController编码推流 ->
+ * 本机FFmpegFrameGrabber以RTSP监听模式充当服务器接收 -> 解码条码统计延迟与丢帧
+ *
+ * 用法: java -cp ... com.tool.single.LatencyTest [秒数] [分辨率] [帧率] [编码配置] [端口]
+ * 例如: LatencyTest 30 1280x720 30 lowest-latency 18554
+ */
+public class LatencyTest {
+
+    // 接收端启动后的预热时间，期间的样本包含探测缓冲，不计入统计
+    private static final long WARMUP_MILLIS = 2000;
+
+    private final int seconds;
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final EncoderProfile profile;
+    private final String url;
+
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final BitSet receivedSequences = new BitSet();
+    private volatile long firstSequence = -1;
+    private volatile long lastSequence = -1;
+    private volatile int undecodedFrames = 0;
+    private volatile boolean receiving = true;
+
+    public LatencyTest(int seconds, int width, int height, int fps, EncoderProfile profile, int port) {
+        this.seconds = seconds;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.profile = profile;
+        this.url = "rtsp://127.0.0.1:" + port + "/latency";
+    }
+
+    public void run() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(url);
+        grabber.setFormat("rtsp");
+        grabber.setOption("rtsp_flags", "listen");
+        grabber.setOption("fflags", "nobuffer");
+        grabber.setOption("flags", "low_delay");
+
+        // 推流端始终连不上时监听会一直阻塞，设为守护线程避免进程无法退出
+        Thread receiver = new Thread(NativeMemoryMonitor.tracked(() -> receive(grabber)), "latency-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        // 等待监听端口就绪
+        Thread.sleep(500);
+
+        StreamController controller = new StreamController(new StreamController.Listener() {
+            @Override
+            public void onLog(String message) {
+                log("[发送] " + message);
+            }
+
+            @Override
+            public void onStopped() {
+            }
+        });
+        controller.setLatencyStamp(true);
+
+        Thread sender = new Thread(() -> {
+            try {
+                controller.startStreaming(new SyntheticFrameSource(), url, width, height, fps, profile);
+            } catch (Exception e) {
+                log("[发送] 推流失败: " + e.getMessage());
+            }
+        }, "latency-sender");
+        sender.start();
+
+        Thread.sleep(seconds * 1000L);
+
+        controller.stopStreaming();
+        sender.join(5000);
+        receiving = false;
+        receiver.join(5000);
+
+        report(controller.getFrameCount());
+    }
+
+    private void receive(FFmpegFrameGrabber grabber) {
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        try {
+            // start() 会持有JavaCV的全局锁，监听期间会阻塞同进程内录制器的启动
+            grabber.startUnsafe();
+            log("[接收] 推流端已连接: " + grabber.getImageWidth() + "x" + grabber.getImageHeight());
+            long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+
+            while (receiving) {
+                Frame frame = grabber.grabImage();
+                if (frame == null) {
+                    break;
+                }
+                long now = LatencyStamp.nowMicros();
+                Mat mat = converter.convert(frame);
+                long[] stamp = mat == null ? null : LatencyStamp.decode(mat);
+                if (stamp == null) {
+                    undecodedFrames++;
+                    continue;
+                }
+                if (System.currentTimeMillis() < warmupEnd) {
+                    continue;
+                }
+
+                long sequence = unwrapSequence(stamp[0]);
+                synchronized (receivedSequences) {
+                    receivedSequences.set((int) sequence);
+                }
+                if (firstSequence < 0) {
+                    firstSequence = sequence;
+                }
+                lastSequence = Math.max(lastSequence, sequence);
+                latencies.add(now - LatencyStamp.unwrapMicros(stamp[1], now));
+            }
+        } catch (Exception e) {
+            if (receiving) {
+                log("[接收] 接收失败: " + e.getMessage());
+            }
+        } finally {
+            try {
+                grabber.stop();
+                grabber.release();
+            } catch (Exception e) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 条码中只有16位序号，按最近一次序号展开
+     */
+    private long unwrapSequence(long sequence16) {
+        if (lastSequence < 0) {
+            return sequence16;
+        }
+        long candidate = (lastSequence & ~0xFFFFL) | sequence16;
+        if (candidate < lastSequence - 0x8000) {
+            candidate += 0x10000;
+        }
+        return candidate;
+    }
+
+    private void report(long sentFrames) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        Collections.sort(sorted);
+
+        long expected = firstSequence < 0 ? 0 : lastSequence - firstSequence + 1;
+        int received;
+        synchronized (receivedSequences) {
+            received = receivedSequences.cardinality();
+        }
+        long lost = Math.max(0, expected - received);
+        double lossPercent = expected > 0 ? lost * 100.0 / expected : 0;
+
+        log("========== 延迟测试结果 ==========");
+        log(String.format("配置: %dx%d@%dfps %s", width, height, fps, profile.describe(StreamController.BASE_BITRATE)));
+        log(String.format("发送帧: %d | 统计窗口内应收: %d | 实收: %d | 丢帧: %d (%.2f%%) | 条码无法识别: %d",
+                sentFrames, expected, received, lost, lossPercent, undecodedFrames));
+        if (sorted.isEmpty()) {
+            log("没有有效的延迟样本");
+        } else {
+            log(String.format("延迟(ms): p50=%.1f p95=%.1f p99=%.1f max=%.1f",
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                    sorted.get(sorted.size() - 1) / 1000.0));
+        }
+
+        // 机器可读的单行结果
+        System.out.println(String.format(Locale.ROOT,
+                "{\"width\":%d,\"height\":%d,\"fps\":%d,\"profile\":\"%s\",\"sent\":%d,\"expected\":%d,"
+                        + "\"received\":%d,\"lost\":%d,\"samples\":%d,\"p50Ms\":%.2f,\"p95Ms\":%.2f,\"p99Ms\":%.2f}",
+                width, height, fps, profile.getKey(), sentFrames, expected, received, lost, sorted.size(),
+                percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99)));
+    }
+
+    /**
+     * 已排序的微秒样本的百分位数，单位毫秒；没有样本时为0
+     */
+    static double percentile(List<Long> sorted, int percent) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1000.0;
+    }
+
+    private static void log(String message) {
+        System.out.println(message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        NativeMemoryMonitor.trackCurrentThread();
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String[] resolution = (args.length > 1 ? args[1] : "1280x720").split("x");
+        int fps = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        EncoderProfile profile = args.length > 3 ? EncoderProfile.fromKey(args[3]) : EncoderProfile.LOWEST_LATENCY;
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 18554;
+
+        new LatencyTest(seconds, Integer.parseInt(resolution[0]), Integer.parseInt(resolution[1]),
+                fps, profile, port).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * 采集循环的最新一帧，供快照等旁路消费者读取
+ * 只有最近有人读取时才会拷贝帧数据，无人使用时采集循环几乎没有额外开销
+ */
+public class LatestFrame {
+
+    // 最后一次读取后继续拷贝帧数据的时长
+    private static final long DEMAND_WINDOW_NANOS = 5000000000L;
+    // 超过该时长未更新的帧视为过期
+    private static final long STALE_NANOS = 1000000000L;
+
+    private final Object lock = new Object();
+    private final Mat frame = new Mat();
+    private long generation = 0;
+    private long publishedAt = 0;
+    private volatile long demandUntil = 0;
+
+    /**
+     * 采集循环调用，发布一帧BGR画面
+     */
+    public void publish(Mat source) {
+        if (!isWanted()) {
+            return;
+        }
+        synchronized (lock) {
+            source.copyTo(frame);
+            generation++;
+            publishedAt = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 最近是否有消费者，没有时采集端可以跳过为发布而做的格式转换
+     */
+    public boolean isWanted() {
+        return System.nanoTime() - demandUntil <= 0;
+    }
+
+    /**
+     * 当前帧代数，每发布一帧加一
+     */
+    public long getGeneration() {
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * 标记有消费者，并在帧过期时等待下一帧
+     * 返回可用帧的代数，超时仍无可用帧返回-1
+     */
+    public long awaitFresh(long timeoutMillis) throws InterruptedException {
+        demandUntil = System.nanoTime() + DEMAND_WINDOW_NANOS;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (generation == 0 || System.nanoTime() - publishedAt > STALE_NANOS) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return -1;
+                }
+                lock.wait(wait);
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * 拷贝当前帧，返回其代数
+     */
+    public long copyTo(Mat target) {
+        synchronized (lock) {
+            if (generation > 0) {
+                frame.copyTo(target);
+            }
+            return generation;
+        }
+    }
+
+    public void release() {
+        synchronized (lock) {
+            frame.release();
+            generation = 0;
+        }
+    }
+}
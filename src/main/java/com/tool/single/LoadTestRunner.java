@@ -0,0 +1,365 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 容量压测：逐级增加合成画面推流路数，测量每一级的帧率稳定性、处理耗时、CPU和内存，
+ * 找出本机能稳定承载的最大路数。不需要摄像头和RTSP服务器，可在普通Linux服务器上无人值守运行。
+ * 接收端可选：udp 为本机回环UDP（无人接收，相当于空输出，只计推流端开销），
+ * rtsp 为每路一个本机RTSP监听接收端（接收端的开销也算在本机上），推流端在画面上写入时间戳条码，
+ * 接收端解码后统计每一级的端到端延迟 p50/p99（同 LatencyTest）。
+ * 合成画面默认叠加传感器噪声，编码开销接近真实摄像头。
+ *
+ * 用法: java -cp ... com.tool.single.LoadTestRunner [分辨率] [帧率] [最大路数] [每级秒数] [编码配置] [接收端] [每级增加路数] [噪声]
+ * 例如: LoadTestRunner 1280x720 30 32 20 lowest-latency udp 1 4
+ * 最后一行输出JSON汇总，maxStreams 为帧率仍达标的最大路数
+ */
+public class LoadTestRunner {
+
+    // 平均帧率不低于目标的95%，且任意一秒不低于目标的80%，才算稳定承载
+    private static final double MEAN_FPS_RATIO = 0.95;
+    private static final double MIN_FPS_RATIO = 0.8;
+    // 新增路数后等待编码器和码控稳定，期间不计入统计
+    private static final long WARMUP_MILLIS = 3000;
+    private static final long START_TIMEOUT_SECONDS = 15;
+    private static final int BASE_PORT = 19000;
+
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final int maxStreams;
+    private final int seconds;
+    private final EncoderProfile profile;
+    private final boolean rtspSink;
+    private final int step;
+    private final int noise;
+
+    private final List<Pipeline> pipelines = new ArrayList<>();
+    private final List<String> levels = new ArrayList<>();
+
+    /**
+     * 一路推流及其接收端
+     */
+    private final class Pipeline {
+        final int index;
+        final StreamController controller;
+        final CountDownLatch started = new CountDownLatch(1);
+        final List<Double> samples = new ArrayList<>();
+        // 端到端延迟样本（微秒），仅rtsp接收端有
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        Thread sender;
+        Thread receiver;
+        volatile boolean stopped;
+
+        Pipeline(int index) {
+            this.index = index;
+            this.controller = new StreamController(new StreamController.Listener() {
+                @Override
+                public void onLog(String message) {
+                    // 启动过程的日志每路都一样，只输出启动之后的异常信息
+                    if (started.getCount() == 0 && !stopped) {
+                        log("[第" + index + "路] " + message);
+                    }
+                }
+
+                @Override
+                public void onStarted() {
+                    started.countDown();
+                }
+
+                @Override
+                public void onStopped() {
+                    stopped = true;
+                    started.countDown();
+                }
+            });
+        }
+
+        void start() throws InterruptedException {
+            String url = "rtsp://127.0.0.1:" + (BASE_PORT + index) + "/load";
+            if (rtspSink) {
+                controller.setLatencyStamp(true);
+                receiver = new Thread(NativeMemoryMonitor.tracked(() -> receive(url)), "load-receiver-" + index);
+                receiver.setDaemon(true);
+                receiver.start();
+                // 等待监听端口就绪
+                Thread.sleep(300);
+            } else {
+                controller.setUdpOutput(new UdpTsOutput("127.0.0.1", BASE_PORT + index), false);
+            }
+            sender = new Thread(() -> {
+                try {
+                    controller.startStreaming(new SyntheticFrameSource("压测" + index, false, noise),
+                            url, width, height, fps, profile);
+                } catch (Exception e) {
+                    log("[第" + index + "路] 推流失败: " + e.getMessage());
+                } finally {
+                    stopped = true;
+                    started.countDown();
+                }
+            }, "load-sender-" + index);
+            sender.start();
+        }
+
+        void receive(String url) {
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(url);
+            grabber.setFormat("rtsp");
+            grabber.setOption("rtsp_flags", "listen");
+            grabber.setOption("fflags", "nobuffer");
+            grabber.setOption("flags", "low_delay");
+            OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+            try {
+                // start() 会持有JavaCV的全局锁，监听期间会阻塞同进程内录制器的启动
+                grabber.startUnsafe();
+                Frame frame;
+                while ((frame = grabber.grabImage()) != null) {
+                    long now = LatencyStamp.nowMicros();
+                    Mat mat = converter.convert(frame);
+                    long[] stamp = mat == null ? null : LatencyStamp.decode(mat);
+                    if (stamp != null) {
+                        latencies.add(now - LatencyStamp.unwrapMicros(stamp[1], now));
+                    }
+                }
+            } catch (Exception e) {
+                if (!stopped) {
+                    log("[第" + index + "路] 接收失败: " + e.getMessage());
+                }
+            } finally {
+                try {
+                    grabber.stop();
+                    grabber.release();
+                } catch (Exception e) {
+                    // 忽略
+                }
+                converter.close();
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            controller.stopStreaming();
+        }
+    }
+
+    public LoadTestRunner(int width, int height, int fps, int maxStreams, int seconds,
+                          EncoderProfile profile, boolean rtspSink, int step, int noise) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.maxStreams = maxStreams;
+        this.seconds = seconds;
+        this.profile = profile;
+        this.rtspSink = rtspSink;
+        this.step = Math.max(1, step);
+        this.noise = noise;
+    }
+
+    public void run() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+        log(String.format("容量压测: %dx%d@%dfps %s，接收端 %s，每级 %d 秒，最多 %d 路",
+                width, height, fps, profile.describe(StreamController.BASE_BITRATE),
+                rtspSink ? "rtsp" : "udp", seconds, maxStreams));
+
+        int sustained = 0;
+        Integer saturatedAt = null;
+        try {
+            while (pipelines.size() < maxStreams) {
+                int target = Math.min(maxStreams, pipelines.size() + step);
+                while (pipelines.size() < target) {
+                    Pipeline pipeline = new Pipeline(pipelines.size() + 1);
+                    pipelines.add(pipeline);
+                    pipeline.start();
+                }
+                for (Pipeline pipeline : pipelines) {
+                    pipeline.started.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                Thread.sleep(WARMUP_MILLIS);
+
+                if (measure()) {
+                    sustained = pipelines.size();
+                } else {
+                    saturatedAt = pipelines.size();
+                    break;
+                }
+            }
+        } finally {
+            for (Pipeline pipeline : pipelines) {
+                pipeline.stop();
+            }
+            for (Pipeline pipeline : pipelines) {
+                if (pipeline.sender != null) {
+                    pipeline.sender.join(5000);
+                }
+            }
+        }
+
+        log("========== 容量压测结果 ==========");
+        log(saturatedAt == null
+                ? "达到最大路数 " + sustained + " 仍未饱和"
+                : "最多稳定承载 " + sustained + " 路，" + saturatedAt + " 路时帧率不达标");
+        // 机器可读的单行结果
+        System.out.println(String.format(Locale.ROOT,
+                "{\"width\":%d,\"height\":%d,\"fps\":%d,\"profile\":\"%s\",\"sink\":\"%s\",\"noise\":%d,"
+                        + "\"cores\":%d,\"maxStreams\":%d,\"saturatedAt\":%s,\"levels\":[%s]}",
+                width, height, fps, profile.getKey(), rtspSink ? "rtsp" : "udp", noise,
+                Runtime.getRuntime().availableProcessors(), sustained,
+                saturatedAt == null ? "null" : saturatedAt.toString(), String.join(",", levels)));
+    }
+
+    /**
+     * 以当前路数运行 seconds 秒，每秒采样各路帧率；返回这一级是否稳定承载
+     */
+    private boolean measure() throws InterruptedException {
+        for (Pipeline pipeline : pipelines) {
+            pipeline.samples.clear();
+            pipeline.latencies.clear();
+        }
+        long cpuStart = processCpuNanos();
+        long wallStart = System.nanoTime();
+        for (int i = 0; i < seconds; i++) {
+            Thread.sleep(1000);
+            for (Pipeline pipeline : pipelines) {
+                pipeline.samples.add(pipeline.controller.getStats().window(1).fps);
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        long cpuNanos = processCpuNanos() - cpuStart;
+
+        double meanFps = 0;
+        double worstMeanFps = Double.MAX_VALUE;
+        double minFps = Double.MAX_VALUE;
+        double maxDeviation = 0;
+        // 各阶段耗时p99取各路中最大的
+        StreamStats.Stage[] stages = StreamStats.Stage.values();
+        long[] stageP99 = new long[stages.length];
+        long dropped = 0;
+        int failed = 0;
+        List<List<Long>> latencies = new ArrayList<>();
+        for (Pipeline pipeline : pipelines) {
+            if (pipeline.stopped) {
+                failed++;
+            }
+            double sum = 0;
+            for (double sample : pipeline.samples) {
+                sum += sample;
+                minFps = Math.min(minFps, sample);
+            }
+            double mean = pipeline.samples.isEmpty() ? 0 : sum / pipeline.samples.size();
+            double variance = 0;
+            for (double sample : pipeline.samples) {
+                variance += (sample - mean) * (sample - mean);
+            }
+            meanFps += mean;
+            worstMeanFps = Math.min(worstMeanFps, mean);
+            maxDeviation = Math.max(maxDeviation, Math.sqrt(variance / Math.max(1, pipeline.samples.size())));
+
+            StreamStats.Window window = pipeline.controller.getStats().window(Math.min(seconds, 60));
+            for (StreamStats.Stage stage : stages) {
+                stageP99[stage.ordinal()] = Math.max(stageP99[stage.ordinal()], window.p99(stage));
+            }
+            dropped += window.dropped;
+            synchronized (pipeline.latencies) {
+                latencies.add(new ArrayList<>(pipeline.latencies));
+            }
+        }
+        double[] latency = rtspSink ? summarizeLatency(latencies) : null;
+        int streams = pipelines.size();
+        meanFps /= streams;
+        boolean ok = failed == 0
+                && worstMeanFps >= fps * MEAN_FPS_RATIO
+                && minFps >= fps * MIN_FPS_RATIO;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double cpuPercent = cpuNanos < 0 ? -1 : cpuNanos * 100.0 / wallNanos / cores;
+        Runtime runtime = Runtime.getRuntime();
+        long heapBytes = runtime.totalMemory() - runtime.freeMemory();
+
+        log(String.format("%d路: 平均 %.1f fps，最差一路 %.1f fps，最低 %.1f fps，波动 %.2f，编码p99 %.1f ms，%sCPU %.0f%%，"
+                        + "堆 %s，原生 %s，物理 %s%s",
+                streams, meanFps, worstMeanFps, minFps, maxDeviation,
+                stageP99[StreamStats.Stage.ENCODE.ordinal()] / 1000.0,
+                latency == null ? "" : String.format("端到端延迟 p50 %.1f ms p99 %.1f ms（最差一路p99 %.1f ms），",
+                        latency[0], latency[1], latency[2]),
+                cpuPercent,
+                Pointer.formatBytes(heapBytes), Pointer.formatBytes(Pointer.totalBytes()),
+                Pointer.formatBytes(Pointer.physicalBytes()),
+                ok ? "" : " -- 不达标" + (failed > 0 ? "（" + failed + "路已停止）" : "")));
+        StringBuilder stageJson = new StringBuilder();
+        for (StreamStats.Stage stage : stages) {
+            stageJson.append(String.format(Locale.ROOT, "\"%sP99Ms\":%.2f,",
+                    stage.name().toLowerCase(Locale.ROOT), stageP99[stage.ordinal()] / 1000.0));
+        }
+        String latencyJson = latency == null ? ""
+                : String.format(Locale.ROOT, "\"latencyP50Ms\":%.2f,\"latencyP99Ms\":%.2f,\"worstLatencyP99Ms\":%.2f,"
+                        + "\"latencySamples\":%d,", latency[0], latency[1], latency[2], (long) latency[3]);
+        levels.add(String.format(Locale.ROOT,
+                "{\"streams\":%d,\"sustained\":%s,\"meanFps\":%.2f,\"worstMeanFps\":%.2f,\"minFps\":%.2f,"
+                        + "\"fpsStdDev\":%.3f,%s%s"
+                        + "\"dropped\":%d,\"failed\":%d,\"cpuPercent\":%.1f,\"heapBytes\":%d,\"nativeBytes\":%d,"
+                        + "\"physicalBytes\":%d}",
+                streams, ok, meanFps, worstMeanFps, minFps, maxDeviation, stageJson, latencyJson,
+                dropped, failed, cpuPercent, heapBytes, Pointer.totalBytes(), Pointer.physicalBytes()));
+        return ok;
+    }
+
+    /**
+     * 汇总各路的端到端延迟样本（微秒）：返回 {全部样本p50, 全部样本p99, 最差一路的p99, 样本数}，单位毫秒
+     */
+    static double[] summarizeLatency(List<List<Long>> perStream) {
+        List<Long> all = new ArrayList<>();
+        double worstP99 = 0;
+        for (List<Long> samples : perStream) {
+            List<Long> sorted = new ArrayList<>(samples);
+            Collections.sort(sorted);
+            worstP99 = Math.max(worstP99, LatencyTest.percentile(sorted, 99));
+            all.addAll(sorted);
+        }
+        Collections.sort(all);
+        return new double[]{LatencyTest.percentile(all, 50), LatencyTest.percentile(all, 99), worstP99, all.size()};
+    }
+
+    /**
+     * 进程累计CPU时间，JVM不支持时返回-1
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static void log(String message) {
+        System.out.println(message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        NativeMemoryMonitor.trackCurrentThread();
+        String[] resolution = (args.length > 0 ? args[0] : "1280x720").split("x");
+        int fps = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int maxStreams = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        EncoderProfile profile = args.length > 4 ? EncoderProfile.fromKey(args[4]) : EncoderProfile.LOWEST_LATENCY;
+        boolean rtspSink = args.length > 5 && "rtsp".equalsIgnoreCase(args[5]);
+        int step = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        int noise = args.length > 7 ? Integer.parseInt(args[7]) : 4;
+
+        new LoadTestRunner(Integer.parseInt(resolution[0]), Integer.parseInt(resolution[1]), fps,
+                maxStreams, seconds, profile, rtspSink, step, noise).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,69 @@
+package com.tool.single;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * 基于Java Sound的系统默认麦克风
+ * 设备缓冲设为两块读取量，尽量减少采集延迟
+ */
+public class MicrophoneAudioSource implements AudioSource {
+
+    // 每次读取的时长
+    private static final int CHUNK_MILLIS = 10;
+
+    private TargetDataLine line;
+    private byte[] bytes;
+    private int channels;
+
+    @Override
+    public void open(int sampleRate, int channels) throws Exception {
+        this.channels = channels;
+        AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        if (!AudioSystem.isLineSupported(info)) {
+            throw new LineUnavailableException("没有可用的麦克风");
+        }
+
+        int chunkBytes = sampleRate * CHUNK_MILLIS / 1000 * channels * 2;
+        line = (TargetDataLine) AudioSystem.getLine(info);
+        line.open(format, chunkBytes * 2);
+        line.start();
+        bytes = new byte[chunkBytes];
+    }
+
+    @Override
+    public int read(short[] samples) {
+        if (line == null) {
+            return -1;
+        }
+        int length = Math.min(bytes.length, samples.length * 2);
+        length -= length % (channels * 2);
+        int read = line.read(bytes, 0, length);
+        if (read <= 0) {
+            return -1;
+        }
+        int count = read / 2;
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+        }
+        return count;
+    }
+
+    @Override
+    public String getName() {
+        return "麦克风";
+    }
+
+    @Override
+    public void close() {
+        if (line != null) {
+            line.stop();
+            line.close();
+            line = null;
+        }
+    }
+}
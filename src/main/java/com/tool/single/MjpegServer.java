@@ -0,0 +1,403 @@
+package com.tool.single;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * MJPEG远程预览：GET /stream.mjpg 以 multipart/x-mixed-replace 持续推送画面
+ * 编码线程按预览尺寸和帧率每帧只缩放编码一次，所有观看者共享同一份数据；
+ * 单个NIO线程非阻塞写出，观看者跟不上时直接跳到最新帧，不为其堆积缓存
+ */
+public class MjpegServer {
+
+    public static final String PATH = "/stream.mjpg";
+
+    private static final String BOUNDARY = "mjpegframe";
+    private static final int JPEG_QUALITY = 70;
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final long FRAME_WAIT_MILLIS = 1000;
+
+    /**
+     * 单个连接的状态，只在IO线程中访问
+     */
+    private static class Client {
+        final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        boolean streaming;
+        // 正在写出的数据，null表示空闲
+        ByteBuffer pending;
+        boolean closeAfterWrite;
+        long sentSequence;
+    }
+
+    private final LatestFrame latestFrame;
+    private final int port;
+    private final int previewWidth;
+    private final int previewHeight;
+    private final int fps;
+
+    private volatile boolean running = false;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread ioThread;
+    private Thread encodeThread;
+
+    // 最新编码好的一帧（含multipart分段头），只读共享
+    private volatile ByteBuffer latestPart;
+    private volatile long latestSequence = 0;
+    private volatile int clientCount = 0;
+    private volatile long encodeCount = 0;
+    private volatile long skippedFrames = 0;
+
+    public MjpegServer(LatestFrame latestFrame, int port, int previewWidth, int previewHeight, int fps) {
+        this.latestFrame = latestFrame;
+        this.port = port;
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.fps = Math.max(1, fps);
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+
+        ioThread = new Thread(NativeMemoryMonitor.tracked(this::ioLoop), "mjpeg-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+
+        encodeThread = new Thread(NativeMemoryMonitor.tracked(this::encodeLoop), "mjpeg-encode");
+        encodeThread.setDaemon(true);
+        encodeThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            if (ioThread != null) {
+                ioThread.join(2000);
+            }
+            if (encodeThread != null) {
+                encodeThread.interrupt();
+                encodeThread.join(2000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        latestPart = null;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * 累计编码帧数，与观看者数量无关
+     */
+    public long getEncodeCount() {
+        return encodeCount;
+    }
+
+    /**
+     * 因观看者来不及接收而跳过的帧数（所有观看者合计）
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    private void encodeLoop() {
+        Mat frame = new Mat();
+        Mat scaled = new Mat();
+        IntPointer params = new IntPointer(opencv_imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+        long interval = 1000000000L / fps;
+        long nextFrame = System.nanoTime();
+        long lastGeneration = 0;
+
+        try {
+            while (running) {
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+                nextFrame = Math.max(nextFrame + interval, System.nanoTime() - interval);
+
+                // 没有观看者时不读取也不编码，同时不标记取帧需求
+                if (clientCount == 0) {
+                    continue;
+                }
+                long generation = latestFrame.awaitFresh(FRAME_WAIT_MILLIS);
+                if (generation < 0 || generation == lastGeneration) {
+                    continue;
+                }
+                lastGeneration = latestFrame.copyTo(frame);
+                if (frame.empty()) {
+                    continue;
+                }
+
+                Mat source = frame;
+                Size target = fit(frame.cols(), frame.rows());
+                if (target.width() != frame.cols() || target.height() != frame.rows()) {
+                    opencv_imgproc.resize(frame, scaled, target, 0, 0, opencv_imgproc.INTER_AREA);
+                    source = scaled;
+                }
+                target.close();
+
+                BytePointer jpeg = new BytePointer();
+                try {
+                    if (opencv_imgcodecs.imencode(".jpg", source, jpeg, params)) {
+                        publishPart(jpeg);
+                    }
+                } finally {
+                    jpeg.deallocate();
+                }
+            }
+        } catch (InterruptedException e) {
+            // 停止
+        } finally {
+            frame.release();
+            scaled.release();
+            params.deallocate();
+        }
+    }
+
+    /**
+     * 按比例缩放到预览尺寸以内，不放大
+     */
+    private Size fit(int width, int height) {
+        double scale = Math.min(1.0, Math.min((double) previewWidth / width, (double) previewHeight / height));
+        // 偶数尺寸，避免部分浏览器解码异常
+        int w = Math.max(2, (int) (width * scale) & ~1);
+        int h = Math.max(2, (int) (height * scale) & ~1);
+        return new Size(w, h);
+    }
+
+    /**
+     * 把JPEG连同分段头拼成一块只读缓冲，交给IO线程分发
+     */
+    private void publishPart(BytePointer jpeg) {
+        int length = (int) jpeg.limit();
+        byte[] header = ("--" + BOUNDARY + "\r\n"
+                + "Content-Type: image/jpeg\r\n"
+                + "Content-Length: " + length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] part = new byte[header.length + length + 2];
+        System.arraycopy(header, 0, part, 0, header.length);
+        jpeg.get(part, header.length, length);
+        part[part.length - 2] = '\r';
+        part[part.length - 1] = '\n';
+
+        latestPart = ByteBuffer.wrap(part).asReadOnlyBuffer();
+        latestSequence++;
+        encodeCount++;
+        selector.wakeup();
+    }
+
+    private void ioLoop() {
+        long dispatchedSequence = 0;
+        try {
+            while (running) {
+                selector.select();
+                if (!running) {
+                    break;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        close(key);
+                    }
+                }
+
+                // 有新帧时唤醒所有空闲的观看者
+                long sequence = latestSequence;
+                if (sequence != dispatchedSequence) {
+                    dispatchedSequence = sequence;
+                    for (SelectionKey key : selector.keys()) {
+                        Object attachment = key.attachment();
+                        if (key.isValid() && attachment instanceof Client) {
+                            Client client = (Client) attachment;
+                            if (client.streaming && client.pending == null) {
+                                try {
+                                    write(key);
+                                } catch (IOException e) {
+                                    close(key);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 选择器异常，直接退出
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            clientCount = 0;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Client());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+
+        if (client.streaming) {
+            // 推流后客户端不会再发送数据，读到EOF说明已断开
+            ByteBuffer discard = ByteBuffer.allocate(256);
+            if (channel.read(discard) < 0) {
+                close(key);
+            }
+            return;
+        }
+
+        if (channel.read(client.request) < 0) {
+            close(key);
+            return;
+        }
+        String request = new String(client.request.array(), 0, client.request.position(), StandardCharsets.US_ASCII);
+        if (!request.contains("\r\n\r\n")) {
+            if (!client.request.hasRemaining()) {
+                respond(key, client, "431 Request Header Fields Too Large");
+            }
+            return;
+        }
+
+        String[] requestLine = request.substring(0, request.indexOf("\r\n")).split(" ");
+        String path = requestLine.length > 1 ? requestLine[1] : "";
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (!"GET".equals(requestLine[0])) {
+            respond(key, client, "405 Method Not Allowed");
+            return;
+        }
+        if (!PATH.equals(path)) {
+            respond(key, client, "404 Not Found");
+            return;
+        }
+
+        String header = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+                + "Cache-Control: no-cache, no-store\r\n"
+                + "Pragma: no-cache\r\n"
+                + "Connection: close\r\n\r\n";
+        client.streaming = true;
+        // 从下一帧开始推送，避免发出过期画面
+        client.sentSequence = latestSequence;
+        client.pending = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+        clientCount++;
+        write(key);
+    }
+
+    private void respond(SelectionKey key, Client client, String status) throws IOException {
+        String response = "HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+        client.pending = ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII));
+        client.closeAfterWrite = true;
+        write(key);
+    }
+
+    /**
+     * 尽量写出当前数据；写完后若已有更新的帧则直接取最新一帧，中间的帧全部跳过
+     */
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+
+        while (true) {
+            if (client.pending == null) {
+                ByteBuffer part = latestPart;
+                long sequence = latestSequence;
+                if (!client.streaming || part == null || sequence == client.sentSequence) {
+                    break;
+                }
+                if (client.sentSequence > 0 && sequence - client.sentSequence > 1) {
+                    skippedFrames += sequence - client.sentSequence - 1;
+                }
+                client.sentSequence = sequence;
+                client.pending = part.duplicate();
+            }
+
+            channel.write(client.pending);
+            if (client.pending.hasRemaining()) {
+                // 发送缓冲区已满，等可写时继续，期间产生的新帧会被跳过
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            client.pending = null;
+            if (client.closeAfterWrite) {
+                close(key);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Client && ((Client) attachment).streaming) {
+            ((Client) attachment).streaming = false;
+            clientCount--;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+}
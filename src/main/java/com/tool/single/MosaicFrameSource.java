@@ -0,0 +1,312 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.ffmpeg.global.swscale;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * 多路画面拼接来源：把多个来源按网格（2x2、3x3等）拼成一路画面，只编码一次
+ * 每个来源在自己的线程中按自己的帧率读取，用swscale按比例缩放到格子大小的私有缓冲（双缓冲），
+ * 拼接时只拷贝有更新的格子到预先分配的画布；某一路卡住或断开时保留其最后一帧，不影响其他格子，
+ * 断开的来源在后台重新打开。read 不等待任何来源，输出帧率由推流循环决定
+ */
+public class MosaicFrameSource implements FrameSource {
+
+    /**
+     * 格子打开失败、断开重连等事件，在格子的采集线程中调用
+     */
+    public interface Listener {
+        void onLog(String message);
+    }
+
+    // 连续读取失败这么多次视为断开，关闭后重新打开
+    private static final int MAX_READ_FAILURES = 50;
+    private static final long REOPEN_DELAY_MS = 2000;
+    private static final Scalar BLACK = new Scalar(0, 0, 0, 0);
+
+    private final List<FrameSource> sources;
+    private final Listener listener;
+    private final int columns;
+    private final int rows;
+    private final List<Tile> tiles = new ArrayList<>();
+    private Mat canvas;
+    private int width;
+    private int height;
+    private int fps;
+    private volatile boolean running;
+
+    /**
+     * 一个格子：采集线程写后台缓冲，交换后由 read 拷贝到画布
+     */
+    private final class Tile implements Runnable {
+        final FrameSource source;
+        final int index;
+        final Rect area;
+        final Object lock = new Object();
+        Mat front;
+        Mat back;
+        boolean dirty;
+        volatile long lastUpdate;
+        Thread thread;
+
+        private SwsContext context;
+        private final PointerPointer<BytePointer> sourceData = new PointerPointer<>(4);
+        private final IntPointer sourceStride = new IntPointer(4);
+        private final PointerPointer<BytePointer> targetData = new PointerPointer<>(4);
+        private final IntPointer targetStride = new IntPointer(4);
+
+        Tile(FrameSource source, int index, Rect area) {
+            this.source = source;
+            this.index = index;
+            this.area = area;
+            front = new Mat(area.height(), area.width(), CV_8UC3, BLACK);
+            back = new Mat(area.height(), area.width(), CV_8UC3, BLACK);
+        }
+
+        // 每帧的作用域只需在结束时关闭，正文不引用
+        @Override
+        @SuppressWarnings("try")
+        public void run() {
+            Mat frame = new Mat();
+            try {
+                while (running) {
+                    if (!openSource()) {
+                        sleep(REOPEN_DELAY_MS);
+                        continue;
+                    }
+                    int failures = 0;
+                    while (running && failures < MAX_READ_FAILURES) {
+                        boolean updated;
+                        // 与推流循环一样，每帧内分配的JavaCPP对象在帧结束时释放
+                        try (NativeMemoryMonitor.FrameScope scope = NativeMemoryMonitor.openFrameScope()) {
+                            updated = source.read(frame) && scale(frame);
+                        }
+                        if (updated) {
+                            failures = 0;
+                            synchronized (lock) {
+                                Mat swap = front;
+                                front = back;
+                                back = swap;
+                                dirty = true;
+                            }
+                            lastUpdate = System.nanoTime();
+                        } else {
+                            failures++;
+                            sleep(10);
+                        }
+                    }
+                    source.close();
+                    if (running) {
+                        listener.onLog("拼接画面第" + (index + 1) + "路读取失败，" + REOPEN_DELAY_MS + " ms后重新打开");
+                        sleep(REOPEN_DELAY_MS);
+                    }
+                }
+            } finally {
+                frame.release();
+                release();
+            }
+        }
+
+        private boolean openSource() {
+            try {
+                source.open(area.width(), area.height(), fps);
+                return true;
+            } catch (Exception e) {
+                listener.onLog("拼接画面第" + (index + 1) + "路打开失败: " + e.getMessage());
+                source.close();
+                return false;
+            }
+        }
+
+        /**
+         * 保持宽高比缩放到后台缓冲中居中的区域，其余部分为黑边
+         */
+        private boolean scale(Mat frame) {
+            if (frame.empty() || frame.type() != CV_8UC3) {
+                return false;
+            }
+            int tileWidth = area.width();
+            int tileHeight = area.height();
+            double ratio = Math.min((double) tileWidth / frame.cols(), (double) tileHeight / frame.rows());
+            int fitWidth = Math.max(2, (int) (frame.cols() * ratio) & ~1);
+            int fitHeight = Math.max(2, (int) (frame.rows() * ratio) & ~1);
+            int x = (tileWidth - fitWidth) / 2;
+            int y = (tileHeight - fitHeight) / 2;
+            if (fitWidth != tileWidth || fitHeight != tileHeight) {
+                back.put(BLACK);
+            }
+
+            context = swscale.sws_getCachedContext(context,
+                    frame.cols(), frame.rows(), avutil.AV_PIX_FMT_BGR24,
+                    fitWidth, fitHeight, avutil.AV_PIX_FMT_BGR24,
+                    swscale.SWS_AREA, null, null, (DoublePointer) null);
+            if (context == null) {
+                return false;
+            }
+            sourceData.put(0, frame.data());
+            sourceStride.put(0, (int) frame.step());
+            // 直接写入后台缓冲的目标区域，不经过中间Mat
+            targetData.put(0, back.data().position(y * back.step() + x * 3L));
+            targetStride.put(0, (int) back.step());
+            swscale.sws_scale(context, sourceData, sourceStride, 0, frame.rows(), targetData, targetStride);
+            return true;
+        }
+
+        /**
+         * 把有更新的前台缓冲拷贝到画布，返回是否有更新
+         */
+        boolean compose() {
+            synchronized (lock) {
+                if (!dirty) {
+                    return false;
+                }
+                Mat target = new Mat(canvas, area);
+                front.copyTo(target);
+                target.close();
+                dirty = false;
+                return true;
+            }
+        }
+
+        private void release() {
+            if (context != null) {
+                swscale.sws_freeContext(context);
+                context = null;
+            }
+            sourceData.close();
+            sourceStride.close();
+            targetData.close();
+            targetStride.close();
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * 按来源数量自动选择列数（2路、4路为2列，9路以内为3列）
+     */
+    public MosaicFrameSource(List<FrameSource> sources, Listener listener) {
+        this(sources, (int) Math.ceil(Math.sqrt(sources.size())), listener);
+    }
+
+    public MosaicFrameSource(List<FrameSource> sources, int columns, Listener listener) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("拼接画面至少需要一路来源");
+        }
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.listener = listener;
+        this.columns = Math.max(1, columns);
+        this.rows = (sources.size() + this.columns - 1) / this.columns;
+    }
+
+    @Override
+    public void open(int width, int height, int fps) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        canvas = new Mat(height, width, CV_8UC3, BLACK);
+
+        // 格子宽高取偶数，除不尽的余量留在右侧和底部
+        int tileWidth = (width / columns) & ~1;
+        int tileHeight = (height / rows) & ~1;
+        running = true;
+        for (int i = 0; i < sources.size(); i++) {
+            Rect area = new Rect((i % columns) * tileWidth, (i / columns) * tileHeight, tileWidth, tileHeight);
+            Tile tile = new Tile(sources.get(i), i, area);
+            tile.thread = new Thread(NativeMemoryMonitor.tracked(tile), "mosaic-tile-" + (i + 1));
+            tile.thread.setDaemon(true);
+            tiles.add(tile);
+        }
+        // 来源在各自线程中打开，某一路打开慢不会拖住其他格子
+        for (Tile tile : tiles) {
+            tile.thread.start();
+        }
+    }
+
+    /**
+     * 画布只更新有新画面的格子，输出时整幅拷贝一次（1080p约6MB）：
+     * 之后的画面处理、遮挡和水印直接在这一帧上修改，共享画布会把它们留在没有更新的格子上
+     */
+    @Override
+    public boolean read(Mat frame) {
+        if (canvas == null) {
+            return false;
+        }
+        for (Tile tile : tiles) {
+            tile.compose();
+        }
+        canvas.copyTo(frame);
+        return true;
+    }
+
+    /**
+     * 超过 staleMillis 没有新画面的格子数，包括还没有出过画面的格子
+     */
+    public int countStale(long staleMillis) {
+        long now = System.nanoTime();
+        int stale = 0;
+        for (Tile tile : tiles) {
+            if (now - tile.lastUpdate > staleMillis * 1000000L) {
+                stale++;
+            }
+        }
+        return stale;
+    }
+
+    @Override
+    public boolean sharesDevice(FrameSource other) {
+        for (FrameSource source : sources) {
+            if (source.sharesDevice(other) || other.sharesDevice(source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return "拼接画面 " + columns + "x" + rows + " (" + sources.size() + "路) " + width + "x" + height;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Tile tile : tiles) {
+            try {
+                tile.thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (tile.thread.isAlive()) {
+                listener.onLog("拼接画面第" + (tile.index + 1) + "路未能及时停止");
+                continue;
+            }
+            tile.front.release();
+            tile.back.release();
+        }
+        tiles.clear();
+        if (canvas != null) {
+            canvas.release();
+            canvas = null;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.ffmpeg.global.swscale;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.global.opencv_videoio;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原生内存统计与泄漏排查
+ * 采集循环每帧打开一个 FrameScope，帧内分配的JavaCPP对象在帧结束时统一释放，异常路径也不会漏掉；
+ * 帧结束后仍存活的对象（缓存、显式 retainReference 的对象）会被登记，按类型统计存活数量。
+ * 调试模式（-Dvideostream.native.debug=true）下每个线程的作用域栈最外层另有一个登记作用域，
+ * 帧作用域之外的分配（录制器、抓取器、常驻缓冲等）同样按类型和分配位置登记，
+ * 长时间未关闭且持续增长的位置即为泄漏点。线程由 tracked 包装或调用 trackCurrentThread 后才会登记
+ */
+public class NativeMemoryMonitor {
+
+    public static final boolean DEBUG = Boolean.getBoolean("videostream.native.debug");
+
+    // 存活超过该时长的对象才计入泄漏报告，排除刚建立的缓存
+    private static final long LEAK_AGE_MILLIS = 30000;
+    // 分配位置保留的调用栈深度
+    private static final int SITE_DEPTH = 6;
+    // 每登记这么多个对象清理一次已释放的登记项，不依赖界面定时采样
+    private static final int PRUNE_INTERVAL = 1024;
+
+    private static final ConcurrentLinkedQueue<Tracked> survivors = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong registered = new AtomicLong();
+    private static final AtomicLong scopeCount = new AtomicLong();
+    private static final AtomicLong allocationCount = new AtomicLong();
+    private static final ThreadLocal<Boolean> threadTracked = new ThreadLocal<>();
+    // 登记作用域拒绝接管对象时抛出，JavaCPP捕获后交给外层作用域；共用一个实例，不产生调用栈开销
+    private static final IllegalArgumentException DECLINED = new IllegalArgumentException("只登记不接管");
+
+    static {
+        // 先完成原生类的静态初始化，避免其中的常量对象被第一个帧作用域当作帧内对象释放
+        Loader.load(opencv_core.class);
+        Loader.load(opencv_imgproc.class);
+        Loader.load(opencv_imgcodecs.class);
+        Loader.load(opencv_videoio.class);
+        Loader.load(avutil.class);
+        Loader.load(avcodec.class);
+        Loader.load(swscale.class);
+    }
+
+    /**
+     * 帧结束后仍存活的对象，调试模式下还有帧作用域之外分配的对象
+     */
+    private static class Tracked {
+        final WeakReference<Pointer> pointer;
+        final String type;
+        final Throwable site;
+        final long since = System.currentTimeMillis();
+
+        Tracked(Pointer pointer, Throwable site) {
+            this.pointer = new WeakReference<>(pointer);
+            this.type = pointer.getClass().getSimpleName();
+            this.site = site;
+        }
+    }
+
+    /**
+     * 调试模式下的登记作用域，位于线程作用域栈的最外层，只有不在任何帧作用域内的分配才会到这里；
+     * 登记后拒绝接管，对象不挂到任何作用域上，生命周期与不登记时一样
+     */
+    private static class TrackingScope extends PointerScope {
+        @Override
+        public PointerScope attach(Pointer pointer) {
+            register(pointer, new Throwable());
+            throw DECLINED;
+        }
+
+        @Override
+        public void close() {
+            // 随线程存在，不关闭
+        }
+    }
+
+    /**
+     * 单帧的原生分配作用域，用 try-with-resources 包住一帧的处理
+     */
+    public static class FrameScope extends PointerScope {
+        private final List<Pointer> attached = new ArrayList<>();
+        private final List<Throwable> sites = DEBUG ? new ArrayList<>() : null;
+
+        private FrameScope() {
+        }
+
+        @Override
+        public PointerScope attach(Pointer pointer) {
+            attached.add(pointer);
+            if (sites != null) {
+                sites.add(new Throwable());
+            }
+            return super.attach(pointer);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            scopeCount.incrementAndGet();
+            allocationCount.addAndGet(attached.size());
+            for (int i = 0; i < attached.size(); i++) {
+                Pointer pointer = attached.get(i);
+                if (!pointer.isNull()) {
+                    register(pointer, sites != null ? sites.get(i) : null);
+                }
+            }
+            attached.clear();
+            if (sites != null) {
+                sites.clear();
+            }
+        }
+    }
+
+    /**
+     * 某一时刻的原生内存读数
+     */
+    public static class Snapshot {
+        public final long totalBytes;
+        public final long physicalBytes;
+        public final long totalCount;
+        public final double allocationsPerFrame;
+        public final Map<String, Integer> liveByType;
+
+        Snapshot(long totalBytes, long physicalBytes, long totalCount,
+                 double allocationsPerFrame, Map<String, Integer> liveByType) {
+            this.totalBytes = totalBytes;
+            this.physicalBytes = physicalBytes;
+            this.totalCount = totalCount;
+            this.allocationsPerFrame = allocationsPerFrame;
+            this.liveByType = liveByType;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder types = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : liveByType.entrySet()) {
+                types.append(' ').append(entry.getKey()).append('×').append(entry.getValue());
+            }
+            return String.format("原生内存: %s | 物理内存: %s | 指针: %d | 帧内分配: %.1f/帧 | " + (DEBUG ? "存活对象" : "跨帧存活") + ":%s",
+                    Pointer.formatBytes(totalBytes), Pointer.formatBytes(physicalBytes), totalCount,
+                    allocationsPerFrame, types.length() == 0 ? " 无" : types.toString());
+        }
+    }
+
+    public static FrameScope openFrameScope() {
+        // 登记作用域要在帧作用域之外，先装好
+        trackCurrentThread();
+        return new FrameScope();
+    }
+
+    /**
+     * 调试模式下为当前线程装上登记作用域，之后在帧作用域之外的分配也会被登记；非调试模式下不做任何事
+     * 应在线程开始时、分配任何长期对象之前调用
+     */
+    public static void trackCurrentThread() {
+        if (DEBUG && threadTracked.get() == null) {
+            threadTracked.set(Boolean.TRUE);
+            new TrackingScope();
+        }
+    }
+
+    /**
+     * 包装线程的任务，调试模式下线程开始时先装上登记作用域
+     */
+    public static Runnable tracked(Runnable task) {
+        if (!DEBUG) {
+            return task;
+        }
+        return () -> {
+            trackCurrentThread();
+            task.run();
+        };
+    }
+
+    private static void register(Pointer pointer, Throwable site) {
+        survivors.add(new Tracked(pointer, site));
+        if (registered.incrementAndGet() % PRUNE_INTERVAL == 0) {
+            prune();
+        }
+    }
+
+    /**
+     * 清理已释放或已被回收的登记项
+     */
+    private static void prune() {
+        for (Iterator<Tracked> it = survivors.iterator(); it.hasNext(); ) {
+            Pointer pointer = it.next().pointer.get();
+            if (pointer == null || pointer.isNull()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 读取当前原生内存和存活对象数量，同时清理已释放的登记项
+     */
+    public static Snapshot sample() {
+        prune();
+        Map<String, Integer> liveByType = new TreeMap<>();
+        for (Tracked tracked : survivors) {
+            Pointer pointer = tracked.pointer.get();
+            if (pointer != null && !pointer.isNull()) {
+                liveByType.merge(tracked.type, 1, Integer::sum);
+            }
+        }
+        long scopes = scopeCount.get();
+        double perFrame = scopes > 0 ? (double) allocationCount.get() / scopes : 0;
+        return new Snapshot(Pointer.totalBytes(), Pointer.physicalBytes(), Pointer.totalCount(),
+                perFrame, liveByType);
+    }
+
+    /**
+     * 调试模式下按分配位置汇总长时间存活的对象，数量持续增长的位置即为泄漏点
+     * 非调试模式或没有可疑对象时返回空字符串
+     */
+    public static String leakReport(int limit) {
+        if (!DEBUG) {
+            return "";
+        }
+        long cutoff = System.currentTimeMillis() - LEAK_AGE_MILLIS;
+        Map<String, Integer> bySite = new HashMap<>();
+        for (Tracked tracked : survivors) {
+            Pointer pointer = tracked.pointer.get();
+            if (pointer == null || pointer.isNull() || tracked.since > cutoff) {
+                continue;
+            }
+            bySite.merge(tracked.type + " @ " + describeSite(tracked.site), 1, Integer::sum);
+        }
+        if (bySite.isEmpty()) {
+            return "";
+        }
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(bySite.entrySet());
+        entries.sort((a, b) -> b.getValue() - a.getValue());
+        StringBuilder report = new StringBuilder("长时间存活的原生对象（按分配位置）:");
+        for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+            report.append("\n  ").append(entries.get(i).getValue()).append(" × ").append(entries.get(i).getKey());
+        }
+        return report.toString();
+    }
+
+    /**
+     * 跳过JavaCPP/JavaCV和作用域自身的调用帧，保留业务代码的前几层
+     */
+    private static String describeSite(Throwable site) {
+        if (site == null) {
+            return "未知";
+        }
+        StringBuilder builder = new StringBuilder();
+        int depth = 0;
+        for (StackTraceElement element : site.getStackTrace()) {
+            String className = element.getClassName();
+            if (element.isNativeMethod() || className.startsWith("org.bytedeco.")
+                    || className.startsWith(NativeMemoryMonitor.class.getName())) {
+                continue;
+            }
+            if (depth > 0) {
+                builder.append(" <- ");
+            }
+            builder.append(element.getClassName().substring(element.getClassName().lastIndexOf('.') + 1))
+                    .append('.').append(element.getMethodName())
+                    .append(':').append(element.getLineNumber());
+            if (++depth >= SITE_DEPTH) {
+                break;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,247 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+
+/**
+ * 画面水印（摄像头名称 + 时间），在编码前直接绘制到原生Mat上
+ * 名称和时间字符只在构造时用Java2D渲染一次成字形图集，之后只在文字变化时拼接图集，
+ * 每帧只对水印所在的小区域做一次原生alpha混合
+ */
+public class OsdOverlay {
+
+    public enum Position {
+        TOP_LEFT("左上"), TOP_RIGHT("右上"), BOTTOM_LEFT("左下"), BOTTOM_RIGHT("右下");
+
+        private final String displayName;
+
+        Position(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    public static final String DEFAULT_TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private static final int MARGIN = 10;
+    private static final int PADDING = 4;
+    // 文字背后半透明底色的不透明度
+    private static final double BACKGROUND_ALPHA = 0.45;
+    private static final Scalar ZERO = new Scalar(0);
+
+    private final Position position;
+    private final DateTimeFormatter formatter;
+    private final boolean subSecond;
+
+    // 字形图集：所有时间字符等宽排成一行
+    private final Mat atlas;
+    private final Map<Character, Integer> glyphIndex = new HashMap<>();
+    private final int glyphWidth;
+    private final int stripHeight;
+    private final int timeOffset;
+    private final int stripWidth;
+
+    // 拼接好的水印条：文字alpha，以及预乘后的颜色层和背景保留系数（均为8位三通道）
+    private final Mat textMask;
+    private final Mat weights = new Mat();
+    private final Mat premultiplied = new Mat();
+    private final Mat inverse = new Mat();
+    private final Mat scratch = new Mat();
+
+    private long lastSecond = Long.MIN_VALUE;
+    private String lastText = "";
+
+    public OsdOverlay(String cameraName) {
+        this(cameraName, DEFAULT_TIME_FORMAT, Position.TOP_LEFT, 1.0);
+    }
+
+    public OsdOverlay(String cameraName, String timeFormat, Position position, double fontScale) {
+        this.position = position;
+        this.formatter = DateTimeFormatter.ofPattern(timeFormat);
+        this.subSecond = timeFormat.contains("S");
+
+        int fontSize = Math.max(8, (int) Math.round(24 * fontScale));
+        Font timeFont = new Font(Font.MONOSPACED, Font.BOLD, fontSize);
+        Font nameFont = new Font("微软雅黑", Font.BOLD, fontSize);
+
+        // 图集字符：数字 + 时间格式中出现的其它字符
+        StringBuilder chars = new StringBuilder("0123456789");
+        for (char c : formatter.format(LocalDateTime.now()).toCharArray()) {
+            if (chars.indexOf(String.valueOf(c)) < 0) {
+                chars.append(c);
+            }
+        }
+
+        FontMetrics timeMetrics = metrics(timeFont);
+        FontMetrics nameMetrics = metrics(nameFont);
+        this.glyphWidth = timeMetrics.charWidth('0');
+        this.stripHeight = Math.max(timeMetrics.getHeight(), nameMetrics.getHeight()) + 2 * PADDING;
+
+        this.atlas = render(chars.toString(), timeFont, chars.length() * glyphWidth, stripHeight, true);
+        for (int i = 0; i < chars.length(); i++) {
+            glyphIndex.put(chars.charAt(i), i);
+        }
+
+        int nameWidth = cameraName == null || cameraName.isEmpty()
+                ? 0 : nameMetrics.stringWidth(cameraName) + glyphWidth;
+        int timeLength = formatter.format(LocalDateTime.now()).length();
+        this.timeOffset = PADDING + nameWidth;
+        this.stripWidth = timeOffset + timeLength * glyphWidth + PADDING;
+
+        // 名称是静态文字，直接渲染进水印条一次
+        this.textMask = new Mat(stripHeight, stripWidth, CV_8UC1, ZERO);
+        if (nameWidth > 0) {
+            Mat name = render(cameraName, nameFont, nameWidth, stripHeight, false);
+            Mat target = new Mat(textMask, new Rect(PADDING, 0, nameWidth, stripHeight));
+            name.copyTo(target);
+            target.release();
+            name.release();
+        }
+    }
+
+    /**
+     * 在BGR帧上绘制水印，只处理水印区域
+     */
+    public void apply(Mat frame) {
+        updateText();
+
+        int width = Math.min(stripWidth, frame.cols() - 2 * MARGIN);
+        int height = Math.min(stripHeight, frame.rows() - 2 * MARGIN);
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        boolean right = position == Position.TOP_RIGHT || position == Position.BOTTOM_RIGHT;
+        boolean bottom = position == Position.BOTTOM_LEFT || position == Position.BOTTOM_RIGHT;
+        int x = right ? frame.cols() - MARGIN - width : MARGIN;
+        int y = bottom ? frame.rows() - MARGIN - height : MARGIN;
+
+        // roi = roi * (1 - alpha) + 颜色 * alpha，两次原生逐像素运算
+        Mat roi = new Mat(frame, new Rect(x, y, width, height));
+        if (width == stripWidth && height == stripHeight) {
+            opencv_core.multiply(roi, inverse, roi, 1 / 255.0, -1);
+            opencv_core.add(roi, premultiplied, roi);
+        } else {
+            // 画面比水印条还小时裁剪
+            Rect crop = new Rect(0, 0, width, height);
+            Mat premultipliedCrop = new Mat(premultiplied, crop);
+            Mat inverseCrop = new Mat(inverse, crop);
+            opencv_core.multiply(roi, inverseCrop, roi, 1 / 255.0, -1);
+            opencv_core.add(roi, premultipliedCrop, roi);
+            premultipliedCrop.release();
+            inverseCrop.release();
+        }
+        roi.release();
+    }
+
+    /**
+     * 时间文字变化时（通常每秒一次）从图集拼接，并重算颜色层和混合权重
+     */
+    private void updateText() {
+        long second = System.currentTimeMillis() / 1000;
+        if (!subSecond && second == lastSecond) {
+            return;
+        }
+        lastSecond = second;
+
+        String text = formatter.format(LocalDateTime.now());
+        if (text.equals(lastText)) {
+            return;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            int x = timeOffset + i * glyphWidth;
+            if (x + glyphWidth > stripWidth) {
+                break;
+            }
+            // 只重写变化的字符
+            char c = text.charAt(i);
+            if (i < lastText.length() && lastText.charAt(i) == c) {
+                continue;
+            }
+            Mat target = new Mat(textMask, new Rect(x, 0, glyphWidth, stripHeight));
+            Integer index = glyphIndex.get(c);
+            if (index == null) {
+                target.put(ZERO);
+            } else {
+                Mat glyph = new Mat(atlas, new Rect(index * glyphWidth, 0, glyphWidth, stripHeight));
+                glyph.copyTo(target);
+                glyph.release();
+            }
+            target.release();
+        }
+        lastText = text;
+
+        // 白字黑底：不透明度在底色透明度和1之间随文字alpha线性过渡，颜色层预乘不透明度
+        textMask.convertTo(weights, -1, 1 - BACKGROUND_ALPHA, BACKGROUND_ALPHA * 255);
+        opencv_core.multiply(textMask, weights, scratch, 1 / 255.0, -1);
+        opencv_imgproc.cvtColor(scratch, premultiplied, opencv_imgproc.COLOR_GRAY2BGR);
+        weights.convertTo(scratch, -1, -1, 255);
+        opencv_imgproc.cvtColor(scratch, inverse, opencv_imgproc.COLOR_GRAY2BGR);
+    }
+
+    public void release() {
+        atlas.release();
+        textMask.release();
+        weights.release();
+        premultiplied.release();
+        inverse.release();
+        scratch.release();
+    }
+
+    private static FontMetrics metrics(Font font) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2d = scratch.createGraphics();
+        FontMetrics fontMetrics = g2d.getFontMetrics(font);
+        g2d.dispose();
+        return fontMetrics;
+    }
+
+    /**
+     * 用Java2D把文字渲染成单通道alpha图，等宽模式下每个字符占一个固定格
+     */
+    private static Mat render(String text, Font font, int width, int height, boolean monospaced) {
+        BufferedImage image = new BufferedImage(Math.max(1, width), height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(font);
+        FontMetrics fontMetrics = g2d.getFontMetrics();
+        int baseline = (height - fontMetrics.getHeight()) / 2 + fontMetrics.getAscent();
+        if (monospaced) {
+            int cell = fontMetrics.charWidth('0');
+            for (int i = 0; i < text.length(); i++) {
+                g2d.drawString(String.valueOf(text.charAt(i)), i * cell, baseline);
+            }
+        } else {
+            g2d.drawString(text, 0, baseline);
+        }
+        g2d.dispose();
+
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Mat mat = new Mat(height, image.getWidth(), CV_8UC1);
+        mat.data().put(pixels);
+        return mat;
+    }
+}
@@ -0,0 +1,118 @@
+package com.tool.single;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * 本地预览子码流
+ * 在原生Mat上先缩小到预览控件大小并转换为BGRA，只把预览尺寸的像素整块拷贝进Java堆，
+ * 全分辨率帧不再逐像素转换；预览帧率单独限制，与推流和采集帧率无关。
+ * 缩小超过2倍时先最近邻取到2倍大小再做2:1区域平均，4K来源的开销也只有直接区域缩放的一半左右。
+ * setTargetSize 可在任意线程调用，其余方法只在预览线程中调用
+ */
+public class PreviewRenderer {
+
+    // cvtColor的 COLOR_BGR2BGRA 为0，这里用负数表示不需要转换和不支持
+    private static final int NO_CONVERSION = -1;
+    private static final int UNSUPPORTED = -2;
+
+    private final long frameIntervalNanos;
+    private volatile int targetWidth;
+    private volatile int targetHeight;
+    private long lastRender;
+
+    // 中间缓冲只在这里分配一次，不挂到预览线程的帧作用域上
+    private final Mat reduced = new Mat();
+    private final Mat scaled = new Mat();
+    private final Mat bgra = new Mat();
+
+    public PreviewRenderer(int maxFps) {
+        this.frameIntervalNanos = 1000000000L / Math.max(1, maxFps);
+    }
+
+    /**
+     * 预览控件大小变化时调用
+     */
+    public void setTargetSize(int width, int height) {
+        this.targetWidth = width;
+        this.targetHeight = height;
+    }
+
+    /**
+     * 距上一次渲染是否已超过预览帧间隔
+     */
+    public boolean isDue(long now) {
+        return now - lastRender >= frameIntervalNanos;
+    }
+
+    /**
+     * 保持宽高比缩放到控件大小，控件尚未布局或格式不支持时返回null
+     */
+    public BufferedImage render(Mat frame) {
+        int boxWidth = targetWidth;
+        int boxHeight = targetHeight;
+        int conversion = conversionOf(frame);
+        if (boxWidth <= 10 || boxHeight <= 10 || frame.empty() || conversion == UNSUPPORTED) {
+            return null;
+        }
+        lastRender = System.nanoTime();
+
+        double ratio = Math.min((double) boxWidth / frame.cols(), (double) boxHeight / frame.rows());
+        int width = Math.max(1, (int) (frame.cols() * ratio));
+        int height = Math.max(1, (int) (frame.rows() * ratio));
+
+        Mat source = frame;
+        if (ratio < 0.5) {
+            opencv_imgproc.resize(frame, reduced, new Size(width * 2, height * 2), 0, 0, opencv_imgproc.INTER_NEAREST);
+            source = reduced;
+        }
+        if (source.cols() != width || source.rows() != height) {
+            opencv_imgproc.resize(source, scaled, new Size(width, height), 0, 0,
+                    ratio < 1 ? opencv_imgproc.INTER_AREA : opencv_imgproc.INTER_LINEAR);
+            source = scaled;
+        }
+        if (conversion == NO_CONVERSION) {
+            source.copyTo(bgra);
+        } else {
+            opencv_imgproc.cvtColor(source, bgra, conversion);
+        }
+
+        // BGRA按小端整数读出即为 TYPE_INT_RGB 的 0xAARRGGBB，alpha被忽略
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntPointer data = new IntPointer(bgra.data());
+        data.get(pixels);
+        data.close();
+        return image;
+    }
+
+    /**
+     * 转换到BGRA的cvtColor代码
+     */
+    private static int conversionOf(Mat frame) {
+        switch (frame.channels()) {
+            case 1:
+                return opencv_imgproc.COLOR_GRAY2BGRA;
+            case 3:
+                return opencv_imgproc.COLOR_BGR2BGRA;
+            case 4:
+                return NO_CONVERSION;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    public void release() {
+        reduced.release();
+        reduced.close();
+        scaled.release();
+        scaled.close();
+        bgra.release();
+        bgra.close();
+    }
+}
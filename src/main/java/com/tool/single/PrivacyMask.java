@@ -0,0 +1,214 @@
+package com.tool.single;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_32SC2;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * 隐私遮挡区域（矩形或多边形），坐标按画面比例(0~1)给出，推流和预览分辨率不同也能对齐
+ * 区域只在画面尺寸变化时栅格化一次成掩码Mat，每帧每个区域只在其外接矩形内做一次原生掩码操作
+ * 非线程安全，推流和预览各用一个实例
+ */
+public class PrivacyMask {
+
+    public enum Mode {
+        FILL("填充"), PIXELATE("马赛克");
+
+        private final String displayName;
+
+        Mode(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private static final Scalar FILL_COLOR = new Scalar(32, 32, 32, 0);
+    // 马赛克块大小，按画面宽度比例计算
+    private static final int PIXELATE_DIVISOR = 48;
+
+    /**
+     * 单个遮挡区域栅格化后的外接矩形和掩码
+     */
+    private static class Region {
+        final Rect bounds;
+        final Mat mask;
+
+        Region(Rect bounds, Mat mask) {
+            this.bounds = bounds;
+            this.mask = mask;
+        }
+    }
+
+    private final Mode mode;
+    private final List<double[]> polygons = new ArrayList<>();
+
+    // 按当前画面尺寸栅格化的结果
+    private int maskWidth = -1;
+    private int maskHeight = -1;
+    private final List<Region> regions = new ArrayList<>();
+    private final Mat fillValue = new Mat(1, 1, CV_8UC3, FILL_COLOR);
+    private final Mat small = new Mat();
+    private final Mat pixelated = new Mat();
+
+    public PrivacyMask(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void addRectangle(double x, double y, double width, double height) {
+        addPolygon(x, y, x + width, y, x + width, y + height, x, y + height);
+    }
+
+    /**
+     * 依次给出各顶点的 x,y 比例坐标
+     */
+    public void addPolygon(double... points) {
+        if (points.length < 6 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("多边形至少需要3个顶点");
+        }
+        polygons.add(points.clone());
+        maskWidth = -1;
+    }
+
+    public boolean isEmpty() {
+        return polygons.isEmpty();
+    }
+
+    /**
+     * 解析遮挡配置，多个区域用分号分隔，例如：
+     * rect:0.1,0.1,0.2,0.15; poly:0.5,0.5,0.8,0.5,0.7,0.9
+     */
+    public static PrivacyMask parse(String spec, Mode mode) {
+        PrivacyMask privacyMask = new PrivacyMask(mode);
+        if (spec == null) {
+            return privacyMask;
+        }
+        for (String region : spec.split(";")) {
+            region = region.trim();
+            if (region.isEmpty()) {
+                continue;
+            }
+            int colon = region.indexOf(':');
+            String type = colon < 0 ? "rect" : region.substring(0, colon).trim().toLowerCase();
+            String[] parts = region.substring(colon + 1).split(",");
+            double[] values = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Double.parseDouble(parts[i].trim());
+            }
+            if ("rect".equals(type) && values.length == 4) {
+                privacyMask.addRectangle(values[0], values[1], values[2], values[3]);
+            } else if ("poly".equals(type)) {
+                privacyMask.addPolygon(values);
+            } else {
+                throw new IllegalArgumentException("无法识别的遮挡区域: " + region);
+            }
+        }
+        return privacyMask;
+    }
+
+    /**
+     * 在BGR帧上应用遮挡，每个区域只处理其外接矩形
+     */
+    public void apply(Mat frame) {
+        if (polygons.isEmpty() || frame.empty()) {
+            return;
+        }
+        if (frame.cols() != maskWidth || frame.rows() != maskHeight) {
+            rasterize(frame.cols(), frame.rows());
+        }
+
+        int block = Math.max(4, frame.cols() / PIXELATE_DIVISOR);
+        for (Region region : regions) {
+            Mat roi = new Mat(frame, region.bounds);
+            if (mode == Mode.FILL) {
+                roi.setTo(fillValue, region.mask);
+            } else {
+                // 最近邻缩小再放大，只采样不求均值，代价远低于区域平均
+                Size smallSize = new Size(Math.max(1, region.bounds.width() / block),
+                        Math.max(1, region.bounds.height() / block));
+                opencv_imgproc.resize(roi, small, smallSize, 0, 0, opencv_imgproc.INTER_NEAREST);
+                opencv_imgproc.resize(small, pixelated, region.bounds.size(), 0, 0, opencv_imgproc.INTER_NEAREST);
+                pixelated.copyTo(roi, region.mask);
+            }
+            roi.release();
+        }
+    }
+
+    private void rasterize(int width, int height) {
+        releaseRegions();
+        maskWidth = width;
+        maskHeight = height;
+
+        for (double[] points : polygons) {
+            int count = points.length / 2;
+            int[] pixels = new int[points.length];
+            int minX = width, minY = height, maxX = -1, maxY = -1;
+            for (int i = 0; i < count; i++) {
+                int x = clamp((int) Math.round(points[2 * i] * width), width - 1);
+                int y = clamp((int) Math.round(points[2 * i + 1] * height), height - 1);
+                pixels[2 * i] = x;
+                pixels[2 * i + 1] = y;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+            if (maxX <= minX || maxY <= minY) {
+                continue;
+            }
+
+            Mat contour = new Mat(count, 1, CV_32SC2);
+            new IntPointer(contour.data()).put(pixels);
+            MatVector contours = new MatVector(contour);
+
+            // 掩码只覆盖外接矩形，多边形坐标平移到外接矩形内
+            Rect bounds = new Rect(minX, minY, maxX - minX + 1, maxY - minY + 1);
+            Mat mask = new Mat(bounds.height(), bounds.width(), CV_8UC1, new Scalar(0));
+            opencv_imgproc.fillPoly(mask, contours, new Scalar(255), opencv_imgproc.LINE_8, 0,
+                    new Point(-minX, -minY));
+            // 栅格化发生在采集循环的帧作用域内，需保留引用使其跨帧存活
+            bounds.retainReference();
+            mask.retainReference();
+            regions.add(new Region(bounds, mask));
+
+            contours.close();
+            contour.release();
+        }
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    private void releaseRegions() {
+        for (Region region : regions) {
+            region.mask.release();
+            region.mask.releaseReference();
+            region.bounds.releaseReference();
+        }
+        regions.clear();
+    }
+
+    public void release() {
+        releaseRegions();
+        fillValue.release();
+        small.release();
+        pixelated.release();
+        maskWidth = -1;
+    }
+}
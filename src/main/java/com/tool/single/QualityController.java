@@ -0,0 +1,218 @@
+package com.tool.single;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 过载降级控制
+ * 每帧比较处理耗时（不含等待采集的时间）与当前帧间隔，负载持续超出预算时按固定顺序降一档：
+ * 降帧率 → 再降帧率 → 编码预设改为ultrafast → 降分辨率 → 再降分辨率。
+ * 只改帧率不需要重建编码器，观看端不断开，所以排在前面；
+ * 编码器重建失败后回到原档位，此后只在不需要重建的档位之间切换。
+ * 负载折算到上一档后仍有余量，并持续足够长时间才升回一档；
+ * 升档后很快又过载说明余量不够，下一次升档的等待时间加倍
+ */
+public class QualityController {
+
+    /**
+     * 一个质量档位
+     */
+    public static final class Level {
+        public final int width;
+        public final int height;
+        public final int fps;
+        public final boolean fastPreset;
+
+        Level(int width, int height, int fps, boolean fastPreset) {
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+            this.fastPreset = fastPreset;
+        }
+
+        /**
+         * 分辨率或编码预设不同，切换需要重建编码器
+         */
+        public boolean needsRestart(Level other) {
+            return width != other.width || height != other.height || fastPreset != other.fastPreset;
+        }
+
+        boolean sameAs(Level other) {
+            return !needsRestart(other) && fps == other.fps;
+        }
+
+        public String describe() {
+            return width + "x" + height + "@" + fps + (fastPreset ? " ultrafast" : "");
+        }
+    }
+
+    private static final int MIN_FPS = 5;
+    // 平滑后的负载超过该值并持续 OVERLOAD_NANOS 即降档
+    private static final double OVERLOAD = 0.9;
+    private static final long OVERLOAD_NANOS = 2000000000L;
+    // 折算到上一档后的负载低于该值并持续 recoverNanos 才升档
+    private static final double HEADROOM = 0.7;
+    private static final long MIN_RECOVER_NANOS = 10000000000L;
+    private static final long MAX_RECOVER_NANOS = 160000000000L;
+    // 升档后在该时间内又降档视为来回振荡
+    private static final long FLAP_NANOS = 30000000000L;
+    // 每次切换后的观察期，期间不做判断（重建编码器的耗时不计入负载）
+    private static final long SETTLE_NANOS = 3000000000L;
+    // 提高分辨率或换回原预设后每帧耗时的估计倍数；采集、转换等按来源尺寸进行的处理不随编码分辨率变化，
+    // 不按像素数等比折算
+    private static final double RESTART_COST = 1.5;
+    private static final double SMOOTHING = 0.05;
+
+    private List<Level> ladder;
+    private int index;
+    private double load;
+    private long overSince = -1;
+    private long underSince = -1;
+    private long lastChange;
+    private long lastStepUp = -1;
+    private long recoverNanos = MIN_RECOVER_NANOS;
+
+    /**
+     * fastPresetAvailable 为false时跳过改预设的档位（非x264编码器没有预设可调）
+     */
+    public QualityController(int width, int height, int fps, boolean fastPresetAvailable) {
+        this(width, height, fps, fastPresetAvailable, true);
+    }
+
+    /**
+     * allowRestart 为false时只保留改帧率的档位；改预设和分辨率要重建编码器，所有观看端会断开重连
+     */
+    public QualityController(int width, int height, int fps, boolean fastPresetAvailable, boolean allowRestart) {
+        int reduced = Math.max(MIN_FPS, fps * 2 / 3);
+        int half = Math.max(MIN_FPS, fps / 2);
+        boolean fast = fastPresetAvailable;
+        List<Level> levels = new ArrayList<>();
+        add(levels, new Level(width, height, fps, false));
+        add(levels, new Level(width, height, Math.min(fps, reduced), false));
+        add(levels, new Level(width, height, Math.min(fps, half), false));
+        if (fast) {
+            add(levels, new Level(width, height, Math.min(fps, half), true));
+        }
+        add(levels, new Level(even(width * 3 / 4), even(height * 3 / 4), Math.min(fps, half), fast));
+        add(levels, new Level(even(width / 2), even(height / 2), Math.min(fps, half), fast));
+        if (!allowRestart) {
+            levels.removeIf(level -> level.needsRestart(levels.get(0)));
+        }
+        ladder = Collections.unmodifiableList(levels);
+        lastChange = System.nanoTime();
+    }
+
+    private static void add(List<Level> levels, Level level) {
+        if (levels.isEmpty() || !levels.get(levels.size() - 1).sameAs(level)) {
+            levels.add(level);
+        }
+    }
+
+    private static int even(int value) {
+        return Math.max(2, value & ~1);
+    }
+
+    public Level getLevel() {
+        return ladder.get(index);
+    }
+
+    public boolean isDegraded() {
+        return index > 0;
+    }
+
+    /**
+     * 平滑后的负载：处理耗时 / 帧间隔
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * 每编码一帧调用一次，busyNanos 为这一帧的处理耗时；需要切换档位时返回新档位，否则返回null
+     */
+    public Level update(long busyNanos, long now) {
+        Level level = ladder.get(index);
+        load += (busyNanos * level.fps / 1000000000.0 - load) * SMOOTHING;
+        if (now - lastChange < SETTLE_NANOS) {
+            return null;
+        }
+        if (lastStepUp >= 0 && now - lastStepUp > FLAP_NANOS) {
+            // 升档后稳定运行，恢复默认等待时间
+            lastStepUp = -1;
+            recoverNanos = MIN_RECOVER_NANOS;
+        }
+
+        if (load > OVERLOAD && index < ladder.size() - 1) {
+            underSince = -1;
+            if (overSince < 0) {
+                overSince = now;
+            } else if (now - overSince >= OVERLOAD_NANOS) {
+                if (lastStepUp >= 0) {
+                    recoverNanos = Math.min(recoverNanos * 2, MAX_RECOVER_NANOS);
+                    lastStepUp = -1;
+                }
+                return change(index + 1, now);
+            }
+            return null;
+        }
+        overSince = -1;
+
+        if (index > 0 && projectedLoad(ladder.get(index - 1), level) < HEADROOM) {
+            if (underSince < 0) {
+                underSince = now;
+            } else if (now - underSince >= recoverNanos) {
+                lastStepUp = now;
+                return change(index - 1, now);
+            }
+        } else {
+            underSince = -1;
+        }
+        return null;
+    }
+
+    /**
+     * 把当前负载折算到目标档位：帧率按比例，分辨率和预设按估计倍数
+     */
+    private double projectedLoad(Level target, Level current) {
+        double factor = (double) target.fps / current.fps;
+        if (target.needsRestart(current)) {
+            factor *= RESTART_COST;
+        }
+        return load * factor;
+    }
+
+    private Level change(int next, long now) {
+        index = next;
+        lastChange = now;
+        overSince = -1;
+        underSince = -1;
+        return ladder.get(index);
+    }
+
+    /**
+     * 切换到 current 以外的档位时重建编码器失败，调用方已回到 current：
+     * 从阶梯中去掉需要重建编码器的档位，之后只调整帧率
+     */
+    public void keepEncoder(Level current, long now) {
+        List<Level> kept = new ArrayList<>();
+        for (Level candidate : ladder) {
+            if (!candidate.needsRestart(current)) {
+                kept.add(candidate);
+            }
+        }
+        ladder = Collections.unmodifiableList(kept);
+        change(kept.indexOf(current), now);
+    }
+
+    /**
+     * 可用档位数，重建编码器失败后会减少
+     */
+    public int getLevelCount() {
+        return ladder.size();
+    }
+
+    public String describe() {
+        return "档位 " + index + "/" + (ladder.size() - 1) + " " + getLevel().describe();
+    }
+}
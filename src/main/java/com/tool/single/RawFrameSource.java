@@ -0,0 +1,88 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC2;
+
+/**
+ * 可直接输出原生YUV数据的帧来源，跳过采集端的BGR转换
+ * 原生数据按1字节对齐紧密排列在一个连续的Mat中，格式用 AV_PIX_FMT_* 表示
+ */
+public interface RawFrameSource extends FrameSource {
+
+    /**
+     * 原生像素格式，open之后有效；不支持原生采集时返回 AV_PIX_FMT_NONE，此时只能用 read
+     */
+    int getRawPixelFormat();
+
+    int getRawWidth();
+
+    int getRawHeight();
+
+    /**
+     * 读取一帧原生数据到 raw，失败返回false
+     */
+    boolean readRaw(Mat raw);
+
+    /**
+     * 能直接转换为BGR的原生格式
+     */
+    static boolean isSupported(int pixelFormat) {
+        return pixelFormat == avutil.AV_PIX_FMT_YUV420P
+                || pixelFormat == avutil.AV_PIX_FMT_NV12
+                || pixelFormat == avutil.AV_PIX_FMT_YUYV422;
+    }
+
+    /**
+     * 摄像头FOURCC对应的像素格式，无法直接使用时返回 AV_PIX_FMT_NONE（例如MJPG）
+     */
+    static int fromFourcc(int fourcc) {
+        String code = new String(new char[]{
+                (char) (fourcc & 0xFF), (char) ((fourcc >> 8) & 0xFF),
+                (char) ((fourcc >> 16) & 0xFF), (char) ((fourcc >> 24) & 0xFF)});
+        switch (code) {
+            case "YUY2":
+            case "YUYV":
+                return avutil.AV_PIX_FMT_YUYV422;
+            case "NV12":
+                return avutil.AV_PIX_FMT_NV12;
+            case "I420":
+            case "IYUV":
+                return avutil.AV_PIX_FMT_YUV420P;
+            default:
+                return avutil.AV_PIX_FMT_NONE;
+        }
+    }
+
+    /**
+     * 一帧原生数据应有的字节数
+     */
+    static long frameBytes(int pixelFormat, int width, int height) {
+        return avutil.av_image_get_buffer_size(pixelFormat, width, height, 1);
+    }
+
+    /**
+     * 原生数据转BGR，只在需要叠加水印、遮挡或快照时调用
+     */
+    static void toBgr(Mat raw, int pixelFormat, int width, int height, Mat bgr) {
+        Mat view;
+        int code;
+        if (pixelFormat == avutil.AV_PIX_FMT_YUYV422) {
+            view = new Mat(height, width, CV_8UC2, raw.data());
+            code = opencv_imgproc.COLOR_YUV2BGR_YUY2;
+        } else if (pixelFormat == avutil.AV_PIX_FMT_NV12) {
+            view = new Mat(height * 3 / 2, width, CV_8UC1, raw.data());
+            code = opencv_imgproc.COLOR_YUV2BGR_NV12;
+        } else if (pixelFormat == avutil.AV_PIX_FMT_YUV420P) {
+            view = new Mat(height * 3 / 2, width, CV_8UC1, raw.data());
+            code = opencv_imgproc.COLOR_YUV2BGR_I420;
+        } else {
+            throw new IllegalArgumentException("不支持的原生像素格式: " + pixelFormat);
+        }
+        opencv_imgproc.cvtColor(view, bgr, code);
+        view.release();
+    }
+}
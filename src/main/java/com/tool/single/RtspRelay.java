@@ -0,0 +1,675 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP摄像头转发：按包读取输入流并原样写入一个或多个RTSP输出，不解码也不重新编码
+ * 输出的流参数取自转发自己保存的模板，输入断线重连后只要编码参数不变，输出会话保持不动，
+ * 时间戳按墙钟间隔接续；某个输出断开时在后台按退避间隔重连，重连后从下一个关键帧开始写入，
+ * 不影响其他输出。
+ *
+ * 用法: java -cp ... com.tool.single.RtspRelay 输入地址 输出地址 [输出地址...]
+ *      java -cp ... com.tool.single.RtspRelay 配置文件
+ * 配置文件每行一路：输入地址 输出地址 [输出地址...]，#开头为注释
+ */
+public class RtspRelay implements StreamSupervisor.Session {
+
+    public interface Listener {
+        void onLog(String message);
+    }
+
+    // 输入读取超时，摄像头掉线后最多等待这么久即开始重连
+    private static final long INPUT_TIMEOUT_MICROS = 3000000L;
+    // 输出连接和写入超时，服务器无响应时录制器报错而不是一直阻塞
+    private static final long OUTPUT_TIMEOUT_MICROS = 5000000L;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 10000;
+    // 时间戳跳变超过该值视为不连续（摄像头重启、时间戳回绕），重新接续
+    private static final double MAX_JUMP_SECONDS = 5.0;
+    private static final long STATUS_INTERVAL_MS = 60000;
+
+    private final String inputUrl;
+    private final List<Output> outputs = new ArrayList<>();
+    private final Listener listener;
+    private final StreamStats stats = new StreamStats();
+    private volatile boolean stopRequested;
+
+    private ScheduledExecutorService reconnector;
+    // 保护模板和各输出录制器的发布、释放，不在持锁时做网络连接
+    private final Object lock = new Object();
+    private AVFormatContext template;
+    private int[] streamMap = new int[0];
+    private int videoStream = -1;
+
+    // 时间线接续，只在转发线程中访问
+    private boolean rebase = true;
+    private boolean timelineStarted;
+    private double offsetSeconds;
+    private double endSeconds;
+    private long lastWriteNanos;
+    private long[] lastDts = new long[0];
+    private long inputReconnects;
+
+    private final class Output {
+        final String url;
+        FFmpegFrameRecorder recorder;
+        // 录制器引用的模板副本，与录制器一起释放
+        AVFormatContext layout;
+        volatile boolean ready;
+        boolean waitingKeyframe;
+        long backoff = MIN_BACKOFF_MS;
+        int generation;
+        long reconnects;
+
+        Output(String url) {
+            this.url = url;
+        }
+    }
+
+    /**
+     * JavaCV 的 start/release 在全局锁内执行，一个输出连接阻塞时会卡住本进程所有录制器和抓取器的启动、释放；
+     * 转发只复制流参数不打开编解码器，不需要这把锁
+     */
+    private static final class RelayRecorder extends FFmpegFrameRecorder {
+
+        RelayRecorder(String url, int width, int height, int channels) {
+            super(url, width, height, channels);
+        }
+
+        @Override
+        public void start() throws Exception {
+            startUnsafe();
+        }
+
+        @Override
+        public void release() throws Exception {
+            releaseUnsafe();
+        }
+    }
+
+    public RtspRelay(String inputUrl, List<String> outputUrls, Listener listener) {
+        this.inputUrl = inputUrl;
+        for (String url : outputUrls) {
+            outputs.add(new Output(url));
+        }
+        this.listener = listener;
+    }
+
+    public String getInputUrl() {
+        return inputUrl;
+    }
+
+    /**
+     * 转发统计：帧数和码率按视频包计算，发送耗时为一个视频包写入全部输出的耗时
+     */
+    public StreamStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    @Override
+    public void run(Runnable started) throws Exception {
+        // 每个输出一个线程，某个输出连接阻塞时不耽误其他输出
+        reconnector = Executors.newScheduledThreadPool(outputs.size(), r -> {
+            Thread thread = new Thread(NativeMemoryMonitor.tracked(r), "relay-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StatsJsonLog statsLog = null;
+        if (StatsJsonLog.isEnabled()) {
+            statsLog = new StatsJsonLog(stats, inputUrl);
+            try {
+                statsLog.start();
+            } catch (IOException e) {
+                listener.onLog("统计日志打开失败: " + e.getMessage());
+                statsLog = null;
+            }
+        }
+
+        boolean notified = false;
+        long backoff = MIN_BACKOFF_MS;
+        try {
+            while (!stopRequested) {
+                FFmpegFrameGrabber grabber = null;
+                try {
+                    grabber = openInput();
+                    prepareOutputs(grabber);
+                    if (!notified) {
+                        notified = true;
+                        started.run();
+                    }
+                    backoff = MIN_BACKOFF_MS;
+                    relay(grabber);
+                } catch (Exception e) {
+                    listener.onLog("输入异常: " + e.getMessage());
+                } finally {
+                    if (grabber != null) {
+                        try {
+                            grabber.release();
+                        } catch (Exception e) {
+                            // 忽略
+                        }
+                    }
+                }
+                if (stopRequested) {
+                    break;
+                }
+                inputReconnects++;
+                rebase = true;
+                listener.onLog("输入断开，" + backoff + " ms后重连");
+                sleepUnlessStopped(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        } finally {
+            reconnector.shutdownNow();
+            synchronized (lock) {
+                closeOutputs();
+                freeTemplate();
+            }
+            if (statsLog != null) {
+                statsLog.stop();
+            }
+            listener.onLog("转发已停止，输入重连 " + inputReconnects + " 次");
+        }
+    }
+
+    private FFmpegFrameGrabber openInput() throws Exception {
+        FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(inputUrl);
+        if (inputUrl.startsWith("rtsp://")) {
+            grabber.setOption("rtsp_transport", "tcp");
+            grabber.setOption("timeout", String.valueOf(INPUT_TIMEOUT_MICROS));
+        }
+        grabber.start();
+        listener.onLog("输入已连接: " + describeInput(grabber.getFormatContext()));
+        return grabber;
+    }
+
+    /**
+     * 首次连接时建立模板并连接输出；重连后编码参数与模板一致则输出保持不动，否则全部重建
+     */
+    private void prepareOutputs(FFmpegFrameGrabber grabber) {
+        AVFormatContext input = grabber.getFormatContext();
+        synchronized (lock) {
+            if (template != null && sameLayout(input)) {
+                mapStreams(input);
+                return;
+            }
+            if (template != null) {
+                listener.onLog("输入编码参数已变化，重建输出");
+                closeOutputs();
+                freeTemplate();
+            }
+            buildTemplate(input);
+            for (Output output : outputs) {
+                scheduleConnect(output, 0);
+            }
+        }
+    }
+
+    private void relay(FFmpegFrameGrabber grabber) throws Exception {
+        AVFormatContext input = grabber.getFormatContext();
+        long lastStatus = System.currentTimeMillis();
+        AVPacket copy = avcodec.av_packet_alloc();
+        try {
+            AVPacket packet;
+            while (!stopRequested && (packet = grabber.grabPacket()) != null) {
+                try {
+                    int index = packet.stream_index() < streamMap.length ? streamMap[packet.stream_index()] : -1;
+                    if (index >= 0 && retime(packet, input.streams(packet.stream_index()).time_base(), index)) {
+                        packet.stream_index(index);
+                        write(packet, copy, index);
+                    }
+                } finally {
+                    avcodec.av_packet_unref(packet);
+                }
+                if (System.currentTimeMillis() - lastStatus >= STATUS_INTERVAL_MS) {
+                    lastStatus = System.currentTimeMillis();
+                    listener.onLog(describeStatus());
+                }
+            }
+        } finally {
+            avcodec.av_packet_free(copy);
+        }
+    }
+
+    /**
+     * 把输入时间戳换算到模板时间基并接续到输出时间线，返回false表示丢弃该包
+     */
+    private boolean retime(AVPacket packet, AVRational inputBase, int index) {
+        long dts = packet.dts() != avutil.AV_NOPTS_VALUE ? packet.dts() : packet.pts();
+        if (dts == avutil.AV_NOPTS_VALUE) {
+            stats.frameDropped();
+            return false;
+        }
+        AVRational outputBase = template.streams(index).time_base();
+        double packetSeconds = dts * avutil.av_q2d(inputBase);
+
+        if (!rebase && timelineStarted) {
+            double candidate = packetSeconds + offsetSeconds;
+            if (candidate - endSeconds > MAX_JUMP_SECONDS || endSeconds - candidate > MAX_JUMP_SECONDS) {
+                listener.onLog(String.format("输入时间戳跳变 %.1f 秒，重新接续", candidate - endSeconds));
+                rebase = true;
+            }
+        }
+        if (rebase) {
+            rebase = false;
+            // 第一次从0开始；重连后接在已输出的末尾之后，加上断线的墙钟时长
+            double target = timelineStarted
+                    ? endSeconds + (System.nanoTime() - lastWriteNanos) / 1000000000.0 : 0;
+            offsetSeconds = target - packetSeconds;
+            timelineStarted = true;
+        }
+
+        long shift = Math.round(offsetSeconds / avutil.av_q2d(outputBase));
+        long newDts = avutil.av_rescale_q(dts, inputBase, outputBase) + shift;
+        long newPts = packet.pts() != avutil.AV_NOPTS_VALUE
+                ? avutil.av_rescale_q(packet.pts(), inputBase, outputBase) + shift : newDts;
+        if (lastDts[index] != avutil.AV_NOPTS_VALUE && newDts <= lastDts[index]) {
+            // 接续点附近另一路流的包可能早于已输出的时间戳，丢弃以保证单调
+            stats.frameDropped();
+            return false;
+        }
+        long duration = avutil.av_rescale_q(packet.duration(), inputBase, outputBase);
+        packet.dts(newDts).pts(newPts).duration(duration);
+        lastDts[index] = newDts;
+        endSeconds = Math.max(endSeconds, (newDts + duration) * avutil.av_q2d(outputBase));
+        lastWriteNanos = System.nanoTime();
+        return true;
+    }
+
+    private void write(AVPacket packet, AVPacket copy, int index) {
+        boolean video = index == videoStream;
+        boolean keyframe = video && (packet.flags() & avcodec.AV_PKT_FLAG_KEY) != 0;
+        long start = System.nanoTime();
+        for (Output output : outputs) {
+            if (!output.ready) {
+                continue;
+            }
+            if (output.waitingKeyframe) {
+                if (videoStream >= 0 && !keyframe) {
+                    continue;
+                }
+                output.waitingKeyframe = false;
+            }
+            try {
+                // 录制器会改写并释放传入的包，每个输出写一个引用副本，数据本身不复制
+                avcodec.av_packet_ref(copy, packet);
+                output.recorder.recordPacket(copy);
+            } catch (Exception e) {
+                listener.onLog("输出断开: " + output.url + " (" + e.getMessage() + ")");
+                output.ready = false;
+                synchronized (lock) {
+                    releaseRecorder(output);
+                    scheduleConnect(output, output.backoff);
+                }
+                output.backoff = Math.min(output.backoff * 2, MAX_BACKOFF_MS);
+            } finally {
+                avcodec.av_packet_unref(copy);
+            }
+        }
+        if (video) {
+            stats.time(StreamStats.Stage.SEND, System.nanoTime() - start);
+            stats.frameSent();
+        }
+        stats.bytesSent(packet.size());
+    }
+
+    /**
+     * 在后台线程中连接输出，调用方持有 lock
+     */
+    private void scheduleConnect(Output output, long delayMillis) {
+        int generation = ++output.generation;
+        if (reconnector.isShutdown()) {
+            return;
+        }
+        reconnector.schedule(() -> connect(output, generation), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 连接可能阻塞到输出超时，在锁外进行，转发线程的写入和输入重连不受影响；
+     * 录制器使用自己的模板副本，连接期间模板被重建也不影响，连接完成后在锁内发布
+     */
+    private void connect(Output output, int generation) {
+        FFmpegFrameRecorder recorder;
+        AVFormatContext layout;
+        synchronized (lock) {
+            if (stopRequested || template == null || generation != output.generation) {
+                return;
+            }
+            recorder = createRecorder(output.url);
+            layout = copyTemplate();
+        }
+        try {
+            recorder.start(layout);
+        } catch (Exception e) {
+            discard(recorder, layout, false);
+            synchronized (lock) {
+                if (stopRequested || generation != output.generation) {
+                    return;
+                }
+                listener.onLog("输出连接失败: " + output.url + " (" + e.getMessage() + ")，" + output.backoff + " ms后重试");
+                scheduleConnect(output, output.backoff);
+                output.backoff = Math.min(output.backoff * 2, MAX_BACKOFF_MS);
+            }
+            return;
+        }
+        synchronized (lock) {
+            if (stopRequested || generation != output.generation) {
+                // 连接期间转发已停止或输出已重建
+                discard(recorder, layout, true);
+                return;
+            }
+            output.recorder = recorder;
+            output.layout = layout;
+            output.waitingKeyframe = true;
+            output.backoff = MIN_BACKOFF_MS;
+            if (output.reconnects++ == 0) {
+                listener.onLog("输出已连接: " + output.url);
+            } else {
+                listener.onLog("输出已重连: " + output.url);
+            }
+            output.ready = true;
+        }
+    }
+
+    /**
+     * 复制模板的流参数，调用方持有 lock
+     */
+    private AVFormatContext copyTemplate() {
+        AVFormatContext layout = avformat.avformat_alloc_context();
+        for (int i = 0; i < template.nb_streams(); i++) {
+            AVStream stream = template.streams(i);
+            AVStream copy = avformat.avformat_new_stream(layout, null);
+            avcodec.avcodec_parameters_copy(copy.codecpar(), stream.codecpar());
+            copy.time_base(stream.time_base());
+            copy.r_frame_rate(stream.r_frame_rate());
+        }
+        return layout;
+    }
+
+    private static void discard(FFmpegFrameRecorder recorder, AVFormatContext layout, boolean started) {
+        if (started) {
+            try {
+                recorder.stop();
+            } catch (Exception e) {
+                // 忽略
+            }
+        }
+        try {
+            recorder.release();
+        } catch (Exception e) {
+            // 忽略
+        }
+        avformat.avformat_free_context(layout);
+    }
+
+    private FFmpegFrameRecorder createRecorder(String url) {
+        int width = 0;
+        int height = 0;
+        int channels = 0;
+        for (int i = 0; i < template.nb_streams(); i++) {
+            AVStream stream = template.streams(i);
+            if (i == videoStream) {
+                width = stream.codecpar().width();
+                height = stream.codecpar().height();
+            } else {
+                channels = stream.codecpar().ch_layout().nb_channels();
+            }
+        }
+        FFmpegFrameRecorder recorder = new RelayRecorder(url, width, height, channels);
+        if (url.startsWith("rtsp://")) {
+            recorder.setFormat("rtsp");
+            recorder.setOption("rtsp_transport", "tcp");
+            // RTSP封装自己管理连接，超时选项名为timeout
+            recorder.setOption("timeout", String.valueOf(OUTPUT_TIMEOUT_MICROS));
+        } else {
+            if (url.startsWith("rtmp://")) {
+                recorder.setFormat("flv");
+            }
+            recorder.setOption("rw_timeout", String.valueOf(OUTPUT_TIMEOUT_MICROS));
+        }
+        return recorder;
+    }
+
+    /**
+     * 复制输入的第一路视频和第一路音频的编码参数作为输出模板；
+     * 音频无法写入输出（录制器找不到对应编码器或缺少全局头）时只转发视频
+     */
+    private void buildTemplate(AVFormatContext input) {
+        template = avformat.avformat_alloc_context();
+        videoStream = -1;
+        boolean hasAudio = false;
+        for (int i = 0; i < input.nb_streams(); i++) {
+            AVStream stream = input.streams(i);
+            int type = stream.codecpar().codec_type();
+            boolean take = (type == avutil.AVMEDIA_TYPE_VIDEO && videoStream < 0)
+                    || (type == avutil.AVMEDIA_TYPE_AUDIO && !hasAudio);
+            if (!take) {
+                continue;
+            }
+            if (type == avutil.AVMEDIA_TYPE_AUDIO && !canCopyAudio(stream)) {
+                listener.onLog("音频编码 " + avcodec.avcodec_get_name(stream.codecpar().codec_id()).getString()
+                        + " 无法转发，仅转发视频");
+                continue;
+            }
+            AVStream copy = avformat.avformat_new_stream(template, null);
+            avcodec.avcodec_parameters_copy(copy.codecpar(), stream.codecpar());
+            copy.time_base(stream.time_base());
+            copy.r_frame_rate(stream.r_frame_rate());
+            if (type == avutil.AVMEDIA_TYPE_VIDEO) {
+                videoStream = copy.index();
+            } else {
+                hasAudio = true;
+            }
+        }
+        lastDts = new long[template.nb_streams()];
+        Arrays.fill(lastDts, avutil.AV_NOPTS_VALUE);
+        timelineStarted = false;
+        rebase = true;
+        mapStreams(input);
+    }
+
+    private static boolean canCopyAudio(AVStream stream) {
+        int codecId = stream.codecpar().codec_id();
+        if (avcodec.avcodec_find_encoder(codecId) == null) {
+            return false;
+        }
+        // ADTS封装的AAC（如TS输入）没有全局头，RTSP输出无法生成SDP
+        return codecId != avcodec.AV_CODEC_ID_AAC || stream.codecpar().extradata_size() > 0;
+    }
+
+    /**
+     * 输入流序号到模板流序号的映射，同类型按出现顺序对应
+     */
+    private void mapStreams(AVFormatContext input) {
+        streamMap = new int[input.nb_streams()];
+        Arrays.fill(streamMap, -1);
+        boolean[] used = new boolean[template.nb_streams()];
+        for (int i = 0; i < input.nb_streams(); i++) {
+            int type = input.streams(i).codecpar().codec_type();
+            for (int t = 0; t < template.nb_streams(); t++) {
+                if (!used[t] && template.streams(t).codecpar().codec_type() == type) {
+                    used[t] = true;
+                    streamMap[i] = t;
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean sameLayout(AVFormatContext input) {
+        int matched = 0;
+        for (int t = 0; t < template.nb_streams(); t++) {
+            AVStream expected = template.streams(t);
+            for (int i = 0; i < input.nb_streams(); i++) {
+                AVStream stream = input.streams(i);
+                if (stream.codecpar().codec_type() == expected.codecpar().codec_type()) {
+                    if (stream.codecpar().codec_id() == expected.codecpar().codec_id()
+                            && stream.codecpar().width() == expected.codecpar().width()
+                            && stream.codecpar().height() == expected.codecpar().height()
+                            && stream.codecpar().sample_rate() == expected.codecpar().sample_rate()) {
+                        matched++;
+                    }
+                    break;
+                }
+            }
+        }
+        return matched == template.nb_streams();
+    }
+
+    /**
+     * 调用方持有 lock
+     */
+    private void closeOutputs() {
+        for (Output output : outputs) {
+            output.ready = false;
+            output.generation++;
+            releaseRecorder(output);
+        }
+    }
+
+    private void releaseRecorder(Output output) {
+        if (output.recorder != null) {
+            try {
+                output.recorder.stop();
+            } catch (Exception e) {
+                // 连接已断开时 stop 写尾部会失败，忽略
+            }
+            try {
+                output.recorder.release();
+            } catch (Exception e) {
+                // 忽略
+            }
+            output.recorder = null;
+        }
+        if (output.layout != null) {
+            avformat.avformat_free_context(output.layout);
+            output.layout = null;
+        }
+    }
+
+    private void freeTemplate() {
+        if (template != null) {
+            avformat.avformat_free_context(template);
+            template = null;
+        }
+    }
+
+    private String describeInput(AVFormatContext input) {
+        StringBuilder text = new StringBuilder(inputUrl);
+        for (int i = 0; i < input.nb_streams(); i++) {
+            AVStream stream = input.streams(i);
+            text.append(" [").append(avcodec.avcodec_get_name(stream.codecpar().codec_id()).getString());
+            if (stream.codecpar().codec_type() == avutil.AVMEDIA_TYPE_VIDEO) {
+                text.append(' ').append(stream.codecpar().width()).append('x').append(stream.codecpar().height());
+            } else if (stream.codecpar().codec_type() == avutil.AVMEDIA_TYPE_AUDIO) {
+                text.append(' ').append(stream.codecpar().sample_rate()).append("Hz");
+            }
+            text.append(']');
+        }
+        return text.toString();
+    }
+
+    public String describeStatus() {
+        StreamStats.Window window = stats.window(10);
+        int online = 0;
+        for (Output output : outputs) {
+            if (output.ready) {
+                online++;
+            }
+        }
+        return String.format("%s 转发中: %.1f fps, %.2f Mbps, 输出 %d/%d 在线, 丢弃 %d, 输入重连 %d 次",
+                inputUrl, window.fps, window.bitsPerSecond / 1000000.0, online, outputs.size(),
+                window.dropped, inputReconnects);
+    }
+
+    private void sleepUnlessStopped(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (!stopRequested && System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(100, deadline - System.currentTimeMillis() + 1));
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "] " + message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        NativeMemoryMonitor.trackCurrentThread();
+        if (args.length == 0) {
+            System.out.println("用法: RtspRelay 输入地址 输出地址 [输出地址...] 或 RtspRelay 配置文件");
+            return;
+        }
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+
+        List<List<String>> routes = new ArrayList<>();
+        if (args.length == 1) {
+            for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> route = Arrays.asList(line.split("\\s+"));
+                if (route.size() < 2) {
+                    log("忽略配置行（缺少输出地址）: " + line);
+                    continue;
+                }
+                routes.add(route);
+            }
+        } else {
+            routes.add(Arrays.asList(args));
+        }
+        if (routes.isEmpty()) {
+            log("没有可转发的输入");
+            return;
+        }
+
+        StreamSupervisor supervisor = new StreamSupervisor((handle, state) -> {
+            if (state == StreamSupervisor.State.STOPPED && handle.getFailure() != null) {
+                log(handle.getKey() + " 转发失败: " + handle.getFailure().getMessage());
+            }
+        }, routes.size());
+
+        List<CompletableFuture<Void>> stopped = new ArrayList<>();
+        for (int i = 0; i < routes.size(); i++) {
+            List<String> route = routes.get(i);
+            String prefix = "[" + (i + 1) + "] ";
+            RtspRelay relay = new RtspRelay(route.get(0), route.subList(1, route.size()), message -> log(prefix + message));
+            stopped.add(supervisor.start("relay-" + (i + 1), relay).whenStopped());
+        }
+        log("共 " + routes.size() + " 路转发");
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!supervisor.shutdown(5000)) {
+                System.err.println("部分转发未在5秒内停止");
+            }
+        }));
+        CompletableFuture.allOf(stopped.toArray(new CompletableFuture<?>[0])).join();
+    }
+}
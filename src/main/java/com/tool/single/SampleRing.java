@@ -0,0 +1,96 @@
+package com.tool.single;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者单消费者的无锁采样环形缓冲
+ * 采集线程写入，推流线程读取，双方都不会阻塞；写满时丢弃新写入的整块并计数，
+ * 由读取端根据时间戳补齐空缺。每次写入同时发布最后一个采样的采集时刻
+ */
+public class SampleRing {
+
+    /**
+     * 某个写入位置对应的采集时刻（System.nanoTime），不可变，整体发布保证两者一致
+     */
+    public static final class Stamp {
+        public final long position;
+        public final long nanos;
+
+        Stamp(long position, long nanos) {
+            this.position = position;
+            this.nanos = nanos;
+        }
+    }
+
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private volatile Stamp stamp = new Stamp(0, 0);
+    private volatile long overruns;
+
+    /**
+     * capacity 向上取整为2的幂
+     */
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        buffer = new short[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * 生产者调用：写入一块采样，空间不足时整块丢弃并返回false
+     */
+    public boolean write(short[] samples, int count, long captureNanos) {
+        long write = writePosition.get();
+        if (count > buffer.length - (write - readPosition.get())) {
+            overruns++;
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            buffer[(int) ((write + i) & mask)] = samples[i];
+        }
+        // 先发布数据再发布时间戳，读到的时间戳位置不会超过可读数据
+        writePosition.lazySet(write + count);
+        stamp = new Stamp(write + count, captureNanos);
+        return true;
+    }
+
+    /**
+     * 消费者调用：最近一次写入的位置和采集时刻
+     */
+    public Stamp getStamp() {
+        return stamp;
+    }
+
+    public long getReadPosition() {
+        return readPosition.get();
+    }
+
+    /**
+     * 消费者调用：读取到 limit 位置为止，最多 target.length 个，返回实际读取数
+     */
+    public int read(short[] target, long limit) {
+        long read = readPosition.get();
+        int count = (int) Math.min(target.length, Math.min(limit, writePosition.get()) - read);
+        if (count <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < count; i++) {
+            target[i] = buffer[(int) ((read + i) & mask)];
+        }
+        readPosition.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * 因缓冲写满被丢弃的块数
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+}
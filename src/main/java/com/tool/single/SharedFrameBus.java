@@ -0,0 +1,149 @@
+package com.tool.single;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static com.tool.single.SharedFrameLayout.*;
+
+/**
+ * 共享内存帧总线发布端：把每一帧采集画面写入内存映射文件中的环形槽位，
+ * 本机的分析进程用 SharedFrameReader 直接读取原始像素，不需要拉RTSP流再解码。
+ * 写入不加锁、不等待读取端，读取端按槽位的顺序锁判断数据是否完整；读取慢的一方只会丢帧。
+ * 用 -Dvideostream.bus.file=路径 开启（Linux建议放在 /dev/shm 下），-Dvideostream.bus.slots=槽位数（默认4）。
+ * 原生YUV采集且没有遮挡、水印等需要BGR的环节时发布原生格式，否则发布BGR24，同一会话内格式不变。
+ * 文件在第一帧到来时按画面大小创建，之后更大的画面（如切换到更高分辨率的来源）会被跳过。
+ * 一个文件只能有一个发布端，非线程安全
+ */
+public class SharedFrameBus {
+
+    public static final String FILE = System.getProperty("videostream.bus.file");
+    public static final int SLOTS = Math.max(2, Integer.getInteger("videostream.bus.slots", 4));
+
+    private final String path;
+    private final int slotCount;
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    // 指向映射内存的原生指针（不持有内存），画面用memcpy整块写入
+    private BytePointer mapped;
+    private int capacity;
+    private long frameNumber;
+    private long skipped;
+
+    public SharedFrameBus(String path, int slotCount) {
+        this.path = path;
+        this.slotCount = slotCount;
+    }
+
+    public static boolean isEnabled() {
+        return FILE != null && !FILE.trim().isEmpty();
+    }
+
+    /**
+     * 按第一帧的大小创建并映射文件
+     * 已有的同名文件先删除再新建，仍映射着旧文件的读取端不会读到截断的内存，重新打开即可
+     */
+    private void open(int frameBytes) throws IOException {
+        int size = fileSize(slotCount, frameBytes);
+        capacity = frameBytes;
+        try {
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            // Windows下被读取端映射的文件不能删除，直接复用，读取端根据session变化重新同步
+        }
+        file = new RandomAccessFile(path, "rw");
+        if (file.length() < size) {
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+        // 直接缓冲区的指针不带释放器，不会挂到帧作用域上
+        mapped = new BytePointer(buffer);
+
+        putIntRelease(buffer, MAGIC_OFFSET, 0);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+        buffer.putInt(SLOT_CAPACITY_OFFSET, capacity);
+        buffer.putLong(SESSION_OFFSET, System.nanoTime());
+        putLongRelease(buffer, LATEST_OFFSET, 0);
+        // magic最后写入，读取端看到magic时其余字段已就绪
+        putIntRelease(buffer, MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * 发布一帧，format为AVPixelFormat；width/height为画面尺寸（原生YUV时与Mat的行列数不同）
+     */
+    public void publish(Mat frame, int format, int width, int height) throws IOException {
+        int rowBytes = (int) (frame.cols() * frame.elemSize());
+        int length = rowBytes * frame.rows();
+        if (buffer == null) {
+            open(length);
+        }
+        if (length > capacity) {
+            skipped++;
+            return;
+        }
+
+        long number = ++frameNumber;
+        int slot = slotOffset((int) (number % slotCount), capacity);
+        long seq = buffer.getLong(slot + SEQ_OFFSET);
+        // 先置为奇数并加屏障，读取端不会把写到一半的数据当成完整的帧
+        buffer.putLong(slot + SEQ_OFFSET, seq + 1);
+        fullFence();
+
+        BytePointer source = frame.data();
+        int target = slot + SLOT_HEADER_SIZE;
+        if (frame.isContinuous()) {
+            Pointer.memcpy(mapped.position(target), source, length);
+        } else {
+            for (int row = 0; row < frame.rows(); row++) {
+                Pointer.memcpy(mapped.position(target + (long) row * rowBytes),
+                        source.position(row * frame.step()), rowBytes);
+            }
+        }
+        buffer.putLong(slot + FRAME_OFFSET, number);
+        buffer.putLong(slot + TIMESTAMP_OFFSET, System.nanoTime());
+        buffer.putLong(slot + WALL_OFFSET, System.currentTimeMillis());
+        buffer.putInt(slot + FORMAT_OFFSET, format);
+        buffer.putInt(slot + WIDTH_OFFSET, width);
+        buffer.putInt(slot + HEIGHT_OFFSET, height);
+        buffer.putInt(slot + STRIDE_OFFSET, rowBytes);
+        buffer.putInt(slot + LENGTH_OFFSET, length);
+
+        putLongRelease(buffer, slot + SEQ_OFFSET, seq + 2);
+        putLongRelease(buffer, LATEST_OFFSET, number);
+        fullFence();
+    }
+
+    /**
+     * 因超过槽位大小被跳过的帧数
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void close() {
+        buffer = null;
+        mapped = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            file = null;
+        }
+    }
+}
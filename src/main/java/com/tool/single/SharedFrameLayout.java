@@ -0,0 +1,101 @@
+package com.tool.single;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 共享内存帧总线的文件布局与内存屏障，发布端和读取端共用
+ *
+ * 文件头（64字节）: magic(int) version(int) slotCount(int) slotCapacity(int) latestFrame(long) session(long)
+ * 每个槽位为64字节槽头 + slotCapacity字节画面数据（按64字节对齐）:
+ *   seq(long) frameNumber(long) timestampNanos(long) wallMillis(long)
+ *   format(int, AVPixelFormat) width(int) height(int) stride(int) length(int)
+ * seq 为顺序锁：写入期间为奇数，写完加一变为偶数；读取前后 seq 相同且为偶数，读到的数据才完整。
+ * 所有字段使用本机字节序，按缓冲区下标访问，顺序锁和最新帧号的读写前后加全屏障
+ */
+final class SharedFrameLayout {
+
+    static final int MAGIC = 0x56534642;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SLOT_COUNT_OFFSET = 8;
+    static final int SLOT_CAPACITY_OFFSET = 12;
+    static final int LATEST_OFFSET = 16;
+    static final int SESSION_OFFSET = 24;
+
+    static final int SLOT_HEADER_SIZE = 64;
+    static final int SEQ_OFFSET = 0;
+    static final int FRAME_OFFSET = 8;
+    static final int TIMESTAMP_OFFSET = 16;
+    static final int WALL_OFFSET = 24;
+    static final int FORMAT_OFFSET = 32;
+    static final int WIDTH_OFFSET = 36;
+    static final int HEIGHT_OFFSET = 40;
+    static final int STRIDE_OFFSET = 44;
+    static final int LENGTH_OFFSET = 48;
+
+    // 内存屏障只用到这个字段的写入，值本身没有意义
+    private static volatile int fence;
+
+    private SharedFrameLayout() {
+    }
+
+    static int slotSize(int capacity) {
+        return SLOT_HEADER_SIZE + ((capacity + 63) & ~63);
+    }
+
+    /**
+     * 文件总大小，超过单个映射的上限（2GB）时抛出IllegalArgumentException
+     */
+    static int fileSize(int slotCount, int capacity) {
+        long size = capacity < 0 || slotCount < 0 ? Long.MAX_VALUE
+                : HEADER_SIZE + slotCount * (SLOT_HEADER_SIZE + ((capacity + 63L) & ~63L));
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("帧总线文件过大: " + slotCount + " x " + capacity + " 字节");
+        }
+        return (int) size;
+    }
+
+    static int slotOffset(int slot, int capacity) {
+        return HEADER_SIZE + slot * slotSize(capacity);
+    }
+
+    /**
+     * 全屏障：之前的读写都在之后的读写之前完成，其他进程按同样的顺序看到
+     * Java 8没有公开的屏障API，volatile写在HotSpot上编译为完整的内存屏障（x86为lock前缀指令，ARM为dmb），
+     * 对映射内存上的普通读写同样生效
+     */
+    static void fullFence() {
+        fence = 0;
+    }
+
+    /**
+     * 读取后加屏障，之后的读取不会提前到它之前
+     */
+    static long getLongAcquire(ByteBuffer buffer, int index) {
+        long value = buffer.getLong(index);
+        fullFence();
+        return value;
+    }
+
+    /**
+     * 写入前加屏障，之前的写入先于它被其他进程看到
+     */
+    static void putLongRelease(ByteBuffer buffer, int index, long value) {
+        fullFence();
+        buffer.putLong(index, value);
+    }
+
+    static void putIntRelease(ByteBuffer buffer, int index, int value) {
+        fullFence();
+        buffer.putInt(index, value);
+    }
+
+    static int getIntAcquire(ByteBuffer buffer, int index) {
+        int value = buffer.getInt(index);
+        fullFence();
+        return value;
+    }
+}
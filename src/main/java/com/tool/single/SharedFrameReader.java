@@ -0,0 +1,288 @@
+package com.tool.single;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.tool.single.SharedFrameLayout.*;
+
+/**
+ * 共享内存帧总线读取端，供本机的分析进程使用（只依赖JDK，不需要JavaCV）
+ * next 返回的帧直接指向共享内存，不拷贝也不解码；数据可能随时被发布端的新帧覆盖，
+ * 处理完后用 isValid 确认期间没有被覆盖，需要长时间持有时用 copyTo 拷贝出来。
+ *
+ * 用法（示例消费者）: java -cp ... com.tool.single.SharedFrameReader [文件] [秒数]
+ */
+public class SharedFrameReader implements AutoCloseable {
+
+    // 没有新帧时的轮询间隔
+    private static final long POLL_NANOS = 500000;
+
+    /**
+     * 一帧的槽头信息和指向共享内存的画面数据
+     */
+    public static final class Frame {
+        public final long frameNumber;
+        // 发布端的 System.nanoTime()，同一台机器上的JVM使用同一个单调时钟
+        public final long timestampNanos;
+        public final long wallMillis;
+        // AVPixelFormat，如 BGR24=3、YUV420P=0
+        public final int format;
+        public final int width;
+        public final int height;
+        public final int stride;
+        public final ByteBuffer data;
+        private final int slot;
+        private final long seq;
+
+        Frame(long frameNumber, long timestampNanos, long wallMillis, int format, int width, int height,
+              int stride, ByteBuffer data, int slot, long seq) {
+            this.frameNumber = frameNumber;
+            this.timestampNanos = timestampNanos;
+            this.wallMillis = wallMillis;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.stride = stride;
+            this.data = data;
+            this.slot = slot;
+            this.seq = seq;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int capacity;
+    private final long session;
+    private long lastFrame;
+    private long missed;
+    private long torn;
+
+    private SharedFrameReader(RandomAccessFile file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+        this.capacity = buffer.getInt(SLOT_CAPACITY_OFFSET);
+        this.session = buffer.getLong(SESSION_OFFSET);
+    }
+
+    /**
+     * 打开发布端创建的文件，文件不存在或发布端尚未写入第一帧时抛出IOException
+     */
+    public static SharedFrameReader open(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            if (file.length() < HEADER_SIZE) {
+                throw new IOException("帧总线尚未就绪: " + path);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.nativeOrder());
+            if (getIntAcquire(buffer, MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("不是帧总线文件或尚未就绪: " + path);
+            }
+            int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+            int capacity = buffer.getInt(SLOT_CAPACITY_OFFSET);
+            try {
+                if (slotCount < 1 || buffer.capacity() < fileSize(slotCount, capacity)) {
+                    throw new IOException("帧总线文件不完整: " + path);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("帧总线文件头无效: " + path, e);
+            }
+            return new SharedFrameReader(file, buffer);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 等待比上一次读到的更新的一帧，总是返回最新的一帧（中间的帧计入丢帧）；
+     * 超时或发布端已在同一文件上重新开始时返回null，后者需要重新打开
+     */
+    public Frame next(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (true) {
+            if (isSessionChanged()) {
+                // 槽位大小可能已经变化，不能继续使用当前映射
+                return null;
+            }
+            long latest = getLongAcquire(buffer, LATEST_OFFSET);
+            if (latest > lastFrame) {
+                Frame frame = read(latest);
+                if (frame != null) {
+                    if (lastFrame > 0) {
+                        missed += latest - lastFrame - 1;
+                    }
+                    lastFrame = latest;
+                    return frame;
+                }
+                // 槽位正在被改写，说明马上有更新的帧，稍后重试
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+
+    private Frame read(long number) {
+        int slot = slotOffset((int) (number % slotCount), capacity);
+        long seq = getLongAcquire(buffer, slot + SEQ_OFFSET);
+        if ((seq & 1) != 0) {
+            return null;
+        }
+        long frameNumber = buffer.getLong(slot + FRAME_OFFSET);
+        long timestamp = buffer.getLong(slot + TIMESTAMP_OFFSET);
+        long wall = buffer.getLong(slot + WALL_OFFSET);
+        int format = buffer.getInt(slot + FORMAT_OFFSET);
+        int width = buffer.getInt(slot + WIDTH_OFFSET);
+        int height = buffer.getInt(slot + HEIGHT_OFFSET);
+        int stride = buffer.getInt(slot + STRIDE_OFFSET);
+        int length = buffer.getInt(slot + LENGTH_OFFSET);
+        fullFence();
+        if (buffer.getLong(slot + SEQ_OFFSET) != seq || frameNumber != number
+                || length < 0 || length > capacity) {
+            torn++;
+            return null;
+        }
+
+        ByteBuffer data = buffer.duplicate();
+        int offset = slot + SLOT_HEADER_SIZE;
+        // 经由Buffer调用，Java 8运行时没有ByteBuffer上的协变重载
+        ((Buffer) data).limit(offset + length);
+        ((Buffer) data).position(offset);
+        return new Frame(frameNumber, timestamp, wall, format, width, height, stride,
+                data.slice().asReadOnlyBuffer(), slot, seq);
+    }
+
+    /**
+     * 读取 frame.data 之后调用，返回false表示读取期间槽位已被新帧覆盖，读到的数据不可用
+     */
+    public boolean isValid(Frame frame) {
+        fullFence();
+        boolean valid = buffer.getLong(frame.slot + SEQ_OFFSET) == frame.seq;
+        if (!valid) {
+            torn++;
+        }
+        return valid;
+    }
+
+    /**
+     * 拷贝画面数据，target长度不足或拷贝期间被覆盖时返回false
+     */
+    public boolean copyTo(Frame frame, byte[] target) {
+        int length = frame.data.remaining();
+        if (target.length < length) {
+            return false;
+        }
+        frame.data.duplicate().get(target, 0, length);
+        return isValid(frame);
+    }
+
+    /**
+     * 发布端是否在同一个文件上重新开始了（Windows下文件被映射时无法删除重建）
+     */
+    public boolean isSessionChanged() {
+        return buffer.getLong(SESSION_OFFSET) != session;
+    }
+
+    /**
+     * 读取跟不上、被跳过的帧数
+     */
+    public long getMissed() {
+        return missed;
+    }
+
+    /**
+     * 读取期间被覆盖而作废的次数
+     */
+    public long getTorn() {
+        return torn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * 示例消费者：原地读取每帧的像素做一次简单统计，每秒输出帧率、丢帧和发布到读取的延迟
+     * 发布端重启（文件被重建）后自动重新打开
+     */
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : "/dev/shm/videostream.bus";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        long end = seconds > 0 ? System.currentTimeMillis() + seconds * 1000L : Long.MAX_VALUE;
+
+        SharedFrameReader reader = null;
+        List<Long> latencies = new ArrayList<>();
+        long frames = 0;
+        long windowStart = System.currentTimeMillis();
+        long luma = 0;
+        try {
+            while (System.currentTimeMillis() < end) {
+                if (reader == null) {
+                    try {
+                        reader = open(path);
+                        System.out.println("已打开帧总线: " + path + "，槽位 " + reader.slotCount
+                                + " x " + reader.capacity + " 字节");
+                        windowStart = System.currentTimeMillis();
+                        frames = 0;
+                        latencies.clear();
+                    } catch (IOException e) {
+                        Thread.sleep(500);
+                        continue;
+                    }
+                }
+                Frame frame = reader.next(2000);
+                if (frame == null) {
+                    // 长时间没有新帧或发布端已重新开始，重新打开
+                    reader.close();
+                    reader = null;
+                    continue;
+                }
+                latencies.add(System.nanoTime() - frame.timestampNanos);
+                // 原地读取：每隔一段取一个字节，模拟分析处理
+                long sum = 0;
+                for (int i = 0; i < frame.data.limit(); i += 997) {
+                    sum += frame.data.get(i) & 0xFF;
+                }
+                if (reader.isValid(frame)) {
+                    frames++;
+                    luma = sum;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - windowStart >= 1000) {
+                    Collections.sort(latencies);
+                    System.out.println(String.format(Locale.ROOT,
+                            "帧率 %.1f | 丢帧 %d | 覆盖 %d | 延迟 p50 %.2f ms max %.2f ms | %dx%d 格式%d | 采样和 %d",
+                            frames * 1000.0 / (now - windowStart), reader.getMissed(), reader.getTorn(),
+                            latencies.get(latencies.size() / 2) / 1e6, latencies.get(latencies.size() - 1) / 1e6,
+                            frame.width, frame.height, frame.format, luma));
+                    latencies.clear();
+                    frames = 0;
+                    windowStart = now;
+                }
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
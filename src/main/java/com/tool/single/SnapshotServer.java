@@ -0,0 +1,176 @@
+package com.tool.single;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 本地HTTP快照服务：GET /snapshot.jpg 返回最新一帧的JPEG
+ * 每个帧代数最多编码一次，并发请求共享同一份缓存，支持ETag/If-None-Match；
+ * ETag为每次启动随机的前缀加帧代数，程序重启后帧代数从头计数也不会命中客户端缓存的旧图
+ */
+public class SnapshotServer {
+
+    public static final String PATH = "/snapshot.jpg";
+
+    private static final int JPEG_QUALITY = 80;
+    private static final long FRAME_WAIT_MILLIS = 2000;
+
+    private final LatestFrame latestFrame;
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile String etagPrefix;
+
+    // 编码缓存，encodeLock保证同一代数只编码一次
+    private final Object encodeLock = new Object();
+    private final Mat encodeFrame = new Mat();
+    private volatile long cachedGeneration = -1;
+    private volatile byte[] cachedJpeg;
+    private long encodeCount = 0;
+
+    public SnapshotServer(LatestFrame latestFrame, int port) {
+        this.latestFrame = latestFrame;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        etagPrefix = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newFixedThreadPool(4, r -> {
+            Thread thread = new Thread(NativeMemoryMonitor.tracked(r), "snapshot-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        synchronized (encodeLock) {
+            encodeFrame.release();
+            cachedJpeg = null;
+            cachedGeneration = -1;
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 累计编码次数，用于确认缓存命中情况
+     */
+    public long getEncodeCount() {
+        synchronized (encodeLock) {
+            return encodeCount;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            long generation = latestFrame.awaitFresh(FRAME_WAIT_MILLIS);
+            if (generation < 0) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            // 同一代数内的重复请求直接走缓存，不再触碰帧数据
+            byte[] jpeg = cachedJpeg;
+            long jpegGeneration = cachedGeneration;
+            if (jpegGeneration != generation || jpeg == null) {
+                synchronized (encodeLock) {
+                    if (cachedGeneration != latestFrame.getGeneration() || cachedJpeg == null) {
+                        encode();
+                    }
+                    jpeg = cachedJpeg;
+                    jpegGeneration = cachedGeneration;
+                }
+            }
+            if (jpeg == null) {
+                // 编码失败且没有可用的旧图
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            String etag = "\"" + etagPrefix + "-" + jpegGeneration + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            if ("HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(jpeg.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, jpeg.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(jpeg);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 在encodeLock内调用：先拷出最新帧再编码，编码期间不阻塞采集循环
+     * 编码失败时保留上一次的缓存
+     */
+    private void encode() {
+        long generation = latestFrame.copyTo(encodeFrame);
+        if (generation < 0 || encodeFrame.empty()) {
+            return;
+        }
+        BytePointer buffer = new BytePointer();
+        IntPointer params = new IntPointer(opencv_imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+        try {
+            if (opencv_imgcodecs.imencode(".jpg", encodeFrame, buffer, params)) {
+                byte[] jpeg = new byte[(int) buffer.limit()];
+                buffer.get(jpeg);
+                cachedJpeg = jpeg;
+                cachedGeneration = generation;
+                encodeCount++;
+            }
+        } catch (RuntimeException e) {
+            // OpenCV 对不支持的格式抛出异常，按编码失败处理
+        } finally {
+            buffer.deallocate();
+            params.deallocate();
+        }
+    }
+}
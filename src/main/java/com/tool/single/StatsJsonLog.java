@@ -0,0 +1,77 @@
+package com.tool.single;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按固定间隔把推流统计追加写入JSON-lines文件，供离线做容量分析
+ * 用 -Dvideostream.stats.file=路径 开启，-Dvideostream.stats.interval=秒 设置间隔（默认10秒）
+ */
+public class StatsJsonLog {
+
+    public static final String FILE = System.getProperty("videostream.stats.file");
+    public static final int INTERVAL_SECONDS = Math.max(1, Integer.getInteger("videostream.stats.interval", 10));
+
+    private final StreamStats stats;
+    private final String session;
+    private Writer writer;
+    private ScheduledExecutorService executor;
+
+    public StatsJsonLog(StreamStats stats, String session) {
+        this.stats = stats;
+        this.session = session;
+    }
+
+    public static boolean isEnabled() {
+        return FILE != null && !FILE.trim().isEmpty();
+    }
+
+    public void start() throws IOException {
+        writer = new OutputStreamWriter(new FileOutputStream(FILE, true), StandardCharsets.UTF_8);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stats-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::writeLine, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void writeLine() {
+        String line = stats.toJsonLine(System.currentTimeMillis());
+        // 会话标识作为第一个字段，便于多路推流写同一个文件
+        line = "{\"session\":\"" + session.replace("\\", "\\\\").replace("\"", "\\\"") + "\"," + line.substring(1);
+        try {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("统计日志写入失败: " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            writer = null;
+        }
+    }
+}
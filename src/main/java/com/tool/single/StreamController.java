@@ -0,0 +1,854 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 推流控制器：从帧来源读取画面，编码后推送到RTSP服务器和/或UDP地址（MPEG-TS）
+ * 不依赖界面，界面和测试工具通过 Listener 接收日志与统计
+ */
+public class StreamController {
+
+    /**
+     * 推流事件回调，可能在推流线程中调用
+     */
+    public interface Listener {
+        void onLog(String message);
+
+        /**
+         * 来源和录制器均已打开，开始推流
+         */
+        default void onStarted() {
+        }
+
+        void onStopped();
+    }
+
+    // 基准码率，编码配置在此基础上调整
+    public static final int BASE_BITRATE = 2000000;
+
+    // 同一设备切换时等待推流线程释放旧来源的上限
+    private static final long RELEASE_TIMEOUT_MS = 3000;
+
+    // 降级重建编码器时连接服务器的尝试次数
+    private static final int RESTART_ATTEMPTS = 3;
+
+    // 录制器没有请求关键帧的公开接口，通过待编码帧的 pict_type 强制I帧（配合 forced-idr 输出IDR）
+    private static final Field PICTURE_FIELD = findPictureField();
+
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    // 启动完成前收到的停止请求也要生效，推流结束后复位
+    private volatile boolean stopRequested = false;
+    private final Listener listener;
+    private FFmpegFrameRecorder recorder;
+    private volatile FrameSource source;
+    // 已打开、等待推流线程接管的新来源
+    private final AtomicReference<FrameSource> pendingSource = new AtomicReference<>();
+    // 同一设备切换时，请求推流线程先释放当前来源
+    private final AtomicReference<CompletableFuture<Void>> releaseRequest = new AtomicReference<>();
+    private final Object switchLock = new Object();
+    private volatile boolean keyframeRequested;
+    private int sourceWidth;
+    private int sourceHeight;
+    private int sourceFps;
+    private AudioCapture audio;
+    // 音视频共用的时间线原点（System.nanoTime），录制器启动时确定
+    private long clockOrigin;
+    private volatile StreamStats stats = new StreamStats();
+    private EncodedPacketProbe packetProbe;
+    private StatsJsonLog statsLog;
+    private SharedFrameBus frameBus;
+    private volatile long frameCount = 0;
+    private volatile EncoderProfile profile = EncoderProfile.LOWEST_LATENCY;
+    private boolean latencyStamp = false;
+    private OsdOverlay overlay;
+    private PrivacyMask privacyMask;
+    private volatile FrameProcessorChain processors;
+    // 本帧已提交给处理链但尚未输出，不计为丢帧
+    private boolean frameDeferred;
+    private LatestFrame latestFrame;
+    private FrameScaler.Algorithm scaleAlgorithm = FrameScaler.Algorithm.AREA;
+    private boolean fusedConversion = true;
+    private FrameScaler scaler;
+    private boolean sizeLogged;
+    private boolean rawCapture = false;
+    private boolean adaptiveQuality = false;
+    private boolean adaptiveRestart = false;
+    private QualityController quality;
+    private volatile QualityController.Level level;
+    private String rtspUrl;
+    private UdpTsOutput udpOutput;
+    private boolean rtspEnabled = true;
+    // 当前编码帧率对应的帧间隔，降帧率时变大
+    private long frameIntervalNanos;
+
+    public StreamController(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 开启后在每帧编码前写入时间戳条码，用于端到端延迟测试
+     */
+    public void setLatencyStamp(boolean latencyStamp) {
+        this.latencyStamp = latencyStamp;
+    }
+
+    /**
+     * 设置画面水印，推流结束后由控制器释放
+     */
+    public void setOverlay(OsdOverlay overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * 设置隐私遮挡区域，推流结束后由控制器释放
+     */
+    public void setPrivacyMask(PrivacyMask privacyMask) {
+        this.privacyMask = privacyMask;
+    }
+
+    /**
+     * 设置编码前的画面处理链，推流结束后由控制器释放
+     */
+    public void setProcessors(FrameProcessorChain processors) {
+        this.processors = processors;
+    }
+
+    /**
+     * 设置最新帧发布目标，供快照等旁路服务使用
+     */
+    public void setLatestFrame(LatestFrame latestFrame) {
+        this.latestFrame = latestFrame;
+    }
+
+    /**
+     * 设置编码前的缩放算法；fused为true时缩放与YUV420P转换在同一趟swscale中完成
+     */
+    public void setScaling(FrameScaler.Algorithm algorithm, boolean fused) {
+        this.scaleAlgorithm = algorithm;
+        this.fusedConversion = fused;
+    }
+
+    /**
+     * 开启后摄像头以原生YUV采集，只有遮挡、水印、快照或延迟测试需要时才转换BGR
+     */
+    public void setRawCapture(boolean rawCapture) {
+        this.rawCapture = rawCapture;
+    }
+
+    /**
+     * 开启后处理耗时持续超出帧间隔时自动降低帧率，有余量时逐级恢复
+     */
+    public void setAdaptiveQuality(boolean adaptiveQuality) {
+        this.adaptiveQuality = adaptiveQuality;
+    }
+
+    /**
+     * 降帧率仍不够时是否继续降低编码预设和分辨率；需要重建编码器，所有观看端会断开重连，默认关闭
+     */
+    public void setAdaptiveRestart(boolean adaptiveRestart) {
+        this.adaptiveRestart = adaptiveRestart;
+    }
+
+    /**
+     * 已降级时返回当前档位描述，未降级或未开启时返回null
+     */
+    public String describeQuality() {
+        QualityController.Level current = level;
+        QualityController controller = quality;
+        return controller != null && controller.isDegraded() && current != null ? current.describe() : null;
+    }
+
+    /**
+     * 增加MPEG-TS over UDP输出；rtspEnabled为false时只推UDP，rtspUrl被忽略
+     */
+    public void setUdpOutput(UdpTsOutput udpOutput, boolean rtspEnabled) {
+        this.udpOutput = udpOutput;
+        this.rtspEnabled = udpOutput == null || rtspEnabled;
+    }
+
+    /**
+     * 设置音频采集，与视频送入同一个录制器；推流结束后由控制器停止
+     */
+    public void setAudio(AudioCapture audio) {
+        this.audio = audio;
+    }
+
+    /**
+     * 当前会话的滑动窗口统计，每次开始推流时重新创建
+     */
+    public StreamStats getStats() {
+        return stats;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 当前会话使用的编码配置
+     */
+    public EncoderProfile getProfile() {
+        return profile;
+    }
+
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+
+    public void startStreaming(int cameraIndex, String rtspUrl,
+                               int width, int height, int fps) throws Exception {
+        startStreaming(cameraIndex, rtspUrl, width, height, fps, EncoderProfile.LOWEST_LATENCY);
+    }
+
+    public void startStreaming(int cameraIndex, String rtspUrl, int width, int height,
+                               int fps, EncoderProfile profile) throws Exception {
+        startStreaming(new CameraFrameSource(cameraIndex, rawCapture), rtspUrl, width, height, fps, profile);
+    }
+
+    // 每帧的作用域只需在结束时关闭，正文不引用
+    @SuppressWarnings("try")
+    public void startStreaming(FrameSource frameSource, String rtspUrl, int width, int height,
+                               int fps, EncoderProfile profile) throws Exception {
+
+        if (isRunning.get()) {
+            throw new IllegalStateException("推流已在运行中");
+        }
+
+        isRunning.set(true);
+        // 录制器等在帧作用域之外分配，调试模式下同样登记
+        NativeMemoryMonitor.trackCurrentThread();
+        this.profile = profile;
+        frameCount = 0;
+        stats = new StreamStats();
+
+        listener.onLog("初始化推流...");
+
+        try {
+            source = frameSource;
+            source.open(width, height, fps);
+            sourceWidth = width;
+            sourceHeight = height;
+            sourceFps = fps;
+
+            listener.onLog("推流来源打开成功: " + source.getName());
+            if (stopRequested) {
+                return;
+            }
+
+            // 创建录制器
+            this.rtspUrl = rtspUrl;
+            recorder = createRecorder(width, height, fps, false);
+
+            if (audio != null) {
+                try {
+                    audio.open();
+                    audio.configure(recorder);
+                } catch (Exception e) {
+                    listener.onLog("音频采集打开失败，仅推送视频: " + e.getMessage());
+                    audio.stop();
+                    audio = null;
+                }
+            }
+
+            recorder.start();
+            clockOrigin = System.nanoTime();
+            listener.onLog(describeOutput() + "推流已启动 (" + profile.describe(BASE_BITRATE) + ")");
+            if (udpOutput != null) {
+                listener.onLog("UDP输出: " + udpOutput.describe(profile.getBitrate(BASE_BITRATE)));
+            }
+            if (audio != null) {
+                audio.start(clockOrigin);
+                listener.onLog("音频: " + audio.describe());
+            }
+            packetProbe = new EncodedPacketProbe(stats);
+            if (!packetProbe.attach(recorder)) {
+                listener.onLog("无法获取编码输出，码率统计不可用");
+            }
+            if (StatsJsonLog.isEnabled()) {
+                statsLog = new StatsJsonLog(stats, rtspEnabled ? rtspUrl : udpOutput.toUrl(profile.getBitrate(BASE_BITRATE)));
+                try {
+                    statsLog.start();
+                    listener.onLog("统计日志: " + StatsJsonLog.FILE + "，每" + StatsJsonLog.INTERVAL_SECONDS + "秒一行");
+                } catch (IOException e) {
+                    listener.onLog("统计日志打开失败: " + e.getMessage());
+                    statsLog = null;
+                }
+            }
+            if (SharedFrameBus.isEnabled()) {
+                frameBus = new SharedFrameBus(SharedFrameBus.FILE, SharedFrameBus.SLOTS);
+                listener.onLog("共享内存帧总线: " + SharedFrameBus.FILE + "，" + SharedFrameBus.SLOTS + "个槽位");
+            }
+            if (processors != null) {
+                processors.start();
+                listener.onLog("画面处理: " + processors.describe());
+            }
+            listener.onStarted();
+
+            scaler = new FrameScaler(width, height, scaleAlgorithm, fusedConversion);
+            sizeLogged = false;
+
+            if (adaptiveQuality) {
+                // 只有x264有可调的预设，已经是ultrafast时也不需要这一档
+                boolean fastPreset = !"ultrafast".equals(profile.getPreset())
+                        && avcodec.avcodec_find_encoder_by_name("libx264") != null;
+                quality = new QualityController(width, height, fps, fastPreset, adaptiveRestart);
+                level = quality.getLevel();
+            }
+            frameIntervalNanos = 1000000000L / fps;
+            long deadline = System.nanoTime();
+
+            RawFrameSource rawSource = rawSourceOf(source);
+
+            // 推流循环
+            while (isRunning.get() && !stopRequested) {
+                // 切换来源只在帧之间进行，下一帧即来自新来源
+                CompletableFuture<Void> release = releaseRequest.getAndSet(null);
+                if (release != null) {
+                    releaseCurrentSource();
+                    rawSource = null;
+                    release.complete(null);
+                }
+                FrameSource next = pendingSource.getAndSet(null);
+                if (next != null) {
+                    FrameSource previous = source;
+                    source = next;
+                    rawSource = rawSourceOf(next);
+                    sizeLogged = false;
+                    keyframeRequested = true;
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    listener.onLog("已切换推流来源: " + next.getName());
+                }
+
+                QualityController.Level changed = null;
+                // 每帧一个原生分配作用域，帧内的Mat等对象在异常时同样会被释放
+                try (NativeMemoryMonitor.FrameScope scope = NativeMemoryMonitor.openFrameScope()) {
+                    boolean scaled = false;
+                    frameDeferred = false;
+                    long captureStart = System.nanoTime();
+                    long readNanos;
+
+                    Mat mat = new Mat();
+                    if (source == null) {
+                        // 同一设备切换中，重复最后一帧保持RTSP会话
+                        readNanos = 0;
+                        scaled = scaler.hasOutput();
+                    } else if (rawSource != null) {
+                        boolean read = rawSource.readRaw(mat);
+                        readNanos = System.nanoTime() - captureStart;
+                        if (read) {
+                            int format = rawSource.getRawPixelFormat();
+                            if (needsBgr()) {
+                                boolean bgrOnBus = hasBgrStages();
+                                if (!bgrOnBus) {
+                                    publishToBus(mat, format, rawSource.getRawWidth(), rawSource.getRawHeight());
+                                }
+                                Mat bgr = new Mat();
+                                RawFrameSource.toBgr(mat, format, rawSource.getRawWidth(), rawSource.getRawHeight(), bgr);
+                                scaled = processBgr(bgr, bgrOnBus);
+                            } else {
+                                publishToBus(mat, format, rawSource.getRawWidth(), rawSource.getRawHeight());
+                                scaled = scaler.scaleRaw(mat, format, rawSource.getRawWidth(), rawSource.getRawHeight());
+                                logSize(rawSource.getRawWidth(), rawSource.getRawHeight(), scaled);
+                            }
+                        }
+                    } else {
+                        boolean read = source.read(mat);
+                        readNanos = System.nanoTime() - captureStart;
+                        if (read) {
+                            scaled = processBgr(mat, true);
+                        }
+                    }
+
+                    if (scaled) {
+                        // 读取来源和编码前处理（转换、画面处理、遮挡水印、缩放）分开统计
+                        stats.time(StreamStats.Stage.CAPTURE, readNanos);
+                        stats.time(StreamStats.Stage.PROCESS, System.nanoTime() - captureStart - readNanos);
+                        recordFrame();
+                        stats.frameSent();
+                        frameCount++;
+                    } else if (source != null && !frameDeferred) {
+                        stats.frameDropped();
+                    }
+                    if (audio != null) {
+                        audio.drainTo(recorder);
+                    }
+                    if (scaled && quality != null) {
+                        // 等待采集的时间不算处理耗时，摄像头本身帧率低不会触发降级
+                        long now = System.nanoTime();
+                        changed = quality.update(now - captureStart - readNanos, now);
+                    }
+                    if (scaled && audio != null && frameCount % 300 == 0) {
+                        listener.onLog(String.format("音频偏差 %.1f ms，变速补偿 %.0f ppm",
+                                audio.getDriftMillis(), audio.getCorrectionPpm()));
+                    }
+
+                    // 按截止时间调度，处理耗时计入帧间隔；落后超过一帧时不追赶，从当前时刻重新计时
+                    deadline += frameIntervalNanos;
+                    long wait = deadline - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } else if (-wait > frameIntervalNanos) {
+                        deadline = System.nanoTime();
+                    }
+
+                } catch (Exception e) {
+                    if (isRunning.get()) {
+                        stats.frameDropped();
+                        String msg = e.getMessage();
+                        if (msg == null || !msg.contains("timestamp")) {
+                            listener.onLog("推流帧错误: " + msg);
+                        }
+                        Thread.sleep(50);
+                    }
+                }
+
+                // 在帧作用域之外切换档位，重建的录制器和缩放器不能随帧作用域释放
+                if (changed != null) {
+                    applyLevel(changed);
+                }
+            }
+
+        } finally {
+            stopInternal();
+        }
+    }
+
+    /**
+     * 推流中切换帧来源，RTSP会话和编码器保持不变，客户端无需重连
+     * 新来源在调用线程中按给定参数打开，推流线程在下一帧之前接管并关闭旧来源；
+     * 画面缩放到会话的编码分辨率，编码帧率和时间戳保持连续，切换后的第一帧强制为IDR。
+     * 与当前来源是同一设备时，推流线程先释放旧来源并重复最后一帧，新来源打开失败则恢复旧来源
+     */
+    public void switchSource(FrameSource next, int width, int height, int fps) throws Exception {
+        synchronized (switchLock) {
+            if (!isRunning.get()) {
+                throw new IllegalStateException("推流未运行");
+            }
+
+            // 上一次切换还未被接管时以本次为准
+            FrameSource current = pendingSource.getAndSet(null);
+            if (current != null) {
+                current.close();
+            }
+            current = source;
+
+            boolean exclusive = current != null && current.sharesDevice(next);
+            if (exclusive) {
+                CompletableFuture<Void> released = new CompletableFuture<>();
+                releaseRequest.set(released);
+                try {
+                    released.get(RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (releaseRequest.compareAndSet(released, null)) {
+                        throw new IllegalStateException("推流线程未响应切换请求");
+                    }
+                    // 推流线程已经开始释放，等它完成
+                    released.get();
+                }
+            }
+
+            try {
+                next.open(width, height, fps);
+            } catch (Exception e) {
+                if (exclusive) {
+                    listener.onLog("新来源打开失败，恢复原来源: " + e.getMessage());
+                    current.open(sourceWidth, sourceHeight, sourceFps);
+                    offerSource(current);
+                }
+                throw e;
+            }
+            sourceWidth = width;
+            sourceHeight = height;
+            sourceFps = fps;
+            offerSource(next);
+        }
+    }
+
+    private void offerSource(FrameSource next) {
+        pendingSource.set(next);
+        // 推流已结束时由这里关闭，避免泄漏
+        if (!isRunning.get() && pendingSource.compareAndSet(next, null)) {
+            next.close();
+            throw new IllegalStateException("推流已停止");
+        }
+    }
+
+    private void releaseCurrentSource() {
+        scaler.hold();
+        FrameSource current = source;
+        source = null;
+        if (current != null) {
+            current.close();
+            listener.onLog("已释放推流来源: " + current.getName());
+        }
+    }
+
+    /**
+     * 来源支持原生YUV时走原生路径，否则返回null
+     */
+    private RawFrameSource rawSourceOf(FrameSource frameSource) {
+        if (frameSource instanceof RawFrameSource) {
+            RawFrameSource candidate = (RawFrameSource) frameSource;
+            if (RawFrameSource.isSupported(candidate.getRawPixelFormat())) {
+                listener.onLog("原生YUV采集: " + avutil.av_get_pix_fmt_name(candidate.getRawPixelFormat()).getString()
+                        + " " + candidate.getRawWidth() + "x" + candidate.getRawHeight());
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void recordFrame() throws Exception {
+        if (audio != null || (level != null && level.fps < recorder.getFrameRate())) {
+            // 有音频或降帧率时视频时间戳取自时钟；循环慢于帧率时跳过时间槽，时间戳只增不减
+            long slot = Math.round((System.nanoTime() - clockOrigin) * recorder.getFrameRate() / 1000000000.0);
+            if (slot > recorder.getFrameNumber()) {
+                recorder.setFrameNumber((int) slot);
+            }
+        }
+        AVFrame forced = keyframeRequested ? encoderPicture() : null;
+        keyframeRequested = false;
+        if (forced != null) {
+            forced.pict_type(avutil.AV_PICTURE_TYPE_I);
+        }
+        long encodeStart = System.nanoTime();
+        try {
+            scaler.record(recorder);
+            long end = System.nanoTime();
+            // 编码器申请输出缓冲的时刻把一次录制分为编码和封装发送两段；没有输出包（编码器缓存帧）时全部计为编码
+            long packet = packetProbe.getLastPacketNanos();
+            if (packet >= encodeStart && packet <= end) {
+                stats.time(StreamStats.Stage.ENCODE, packet - encodeStart);
+                stats.time(StreamStats.Stage.SEND, end - packet);
+            } else {
+                stats.time(StreamStats.Stage.ENCODE, end - encodeStart);
+            }
+        } finally {
+            if (forced != null) {
+                forced.pict_type(avutil.AV_PICTURE_TYPE_NONE);
+            }
+        }
+    }
+
+    /**
+     * 切换质量档位：只改帧率时调整帧间隔即可，分辨率或预设变化需要重建编码器
+     */
+    private void applyLevel(QualityController.Level next) {
+        QualityController.Level previous = level;
+        level = next;
+        boolean down = next.width * next.height < previous.width * previous.height
+                || next.fps < previous.fps || (next.fastPreset && !previous.fastPreset);
+        listener.onLog(String.format("%s: %s → %s（处理耗时占帧间隔 %.0f%%）",
+                down ? "过载降级" : "负载恢复", previous.describe(), next.describe(), quality.getLoad() * 100));
+        frameIntervalNanos = 1000000000L / next.fps;
+        if (!previous.needsRestart(next)) {
+            return;
+        }
+        try {
+            restartEncoder(next);
+            return;
+        } catch (Exception e) {
+            listener.onLog("编码器重建失败: " + e.getMessage() + "，回到 " + previous.describe() + "，之后只调整帧率");
+        }
+        // 上一档的参数已经成功推流过，按原参数重建；之后不再尝试需要重建编码器的档位
+        level = previous;
+        frameIntervalNanos = 1000000000L / previous.fps;
+        quality.keepEncoder(previous, System.nanoTime());
+        try {
+            restartEncoder(previous);
+        } catch (Exception e) {
+            listener.onLog("编码器恢复失败，停止推流: " + e.getMessage());
+            stopRequested = true;
+        }
+    }
+
+    /**
+     * 以新的分辨率和预设重建录制器，推流来源保持打开；RTSP会话会重新建立
+     */
+    private void restartEncoder(QualityController.Level next) throws Exception {
+        // 上一次重建失败时已经没有录制器
+        if (recorder != null) {
+            try {
+                recorder.stop();
+            } catch (Exception e) {
+                // 忽略
+            }
+            recorder.release();
+            recorder = null;
+        }
+        // 服务器可能还在清理上一个推流会话，重试几次；启动失败的录制器不能再次 start，每次新建
+        for (int attempt = 1; ; attempt++) {
+            FFmpegFrameRecorder candidate = createRecorder(next.width, next.height, next.fps, next.fastPreset);
+            if (audio != null) {
+                audio.configure(candidate);
+            }
+            try {
+                candidate.start();
+                recorder = candidate;
+                break;
+            } catch (Exception e) {
+                candidate.release();
+                if (attempt >= RESTART_ATTEMPTS || stopRequested) {
+                    throw e;
+                }
+                Thread.sleep(500);
+            }
+        }
+        clockOrigin = System.nanoTime();
+        if (audio != null) {
+            audio.restart(clockOrigin);
+        }
+        packetProbe.attach(recorder);
+
+        scaler.release();
+        scaler = new FrameScaler(next.width, next.height, scaleAlgorithm, fusedConversion);
+        sizeLogged = false;
+    }
+
+    private String describeOutput() {
+        if (udpOutput == null) {
+            return "RTSP";
+        }
+        return rtspEnabled ? "RTSP + UDP TS " : "UDP TS ";
+    }
+
+    private FFmpegFrameRecorder createRecorder(int width, int height, int fps, boolean fastPreset) {
+        FFmpegFrameRecorder recorder;
+        if (udpOutput == null) {
+            recorder = new FFmpegFrameRecorder(rtspUrl, width, height);
+            recorder.setFormat("rtsp");
+            recorder.setOption("rtsp_transport", "tcp");
+        } else if (!rtspEnabled) {
+            recorder = new FFmpegFrameRecorder(udpOutput.toUrl(profile.getBitrate(BASE_BITRATE)), width, height);
+            recorder.setFormat("mpegts");
+        } else {
+            // 同时推两路时用tee封装，编码一次分别写入；UDP发送失败不影响RTSP
+            String url = "[f=rtsp:rtsp_transport=tcp]" + rtspUrl
+                    + "|[f=mpegts:onfail=ignore]" + udpOutput.toUrl(profile.getBitrate(BASE_BITRATE));
+            recorder = new FFmpegFrameRecorder(url, width, height);
+            recorder.setFormat("tee");
+        }
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(fps);
+        profile.apply(recorder, fps, BASE_BITRATE);
+        if (fastPreset) {
+            recorder.setVideoOption("preset", "ultrafast");
+        }
+        return recorder;
+    }
+
+    private AVFrame encoderPicture() {
+        try {
+            return PICTURE_FIELD != null ? (AVFrame) PICTURE_FIELD.get(recorder) : null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Field findPictureField() {
+        try {
+            Field field = FFmpegFrameRecorder.class.getDeclaredField("picture");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            // 不同版本的JavaCV字段可能变化，此时只能等下一个GOP的关键帧
+            return null;
+        }
+    }
+
+    /**
+     * 原生采集时，只有这些环节需要BGR画面
+     */
+    private boolean needsBgr() {
+        return hasBgrStages() || (latestFrame != null && latestFrame.isWanted());
+    }
+
+    /**
+     * 整个会话都需要BGR画面的环节；原生采集时只有存在这些环节，共享内存总线才发布BGR，
+     * 否则始终发布原生格式，不随快照等旁路消费者的有无在两种格式之间来回切换
+     */
+    private boolean hasBgrStages() {
+        return privacyMask != null || overlay != null || latencyStamp || processors != null;
+    }
+
+    /**
+     * publish为false时画面已按原生格式写入共享内存总线
+     */
+    private boolean processBgr(Mat mat, boolean publish) throws Exception {
+        if (processors == null) {
+            return encodeBgr(mat, publish);
+        }
+        // 并行处理时输出的是更早提交的一帧
+        Mat processed = processors.submit(mat);
+        if (processed == null) {
+            frameDeferred = processors.isDeferred();
+            return false;
+        }
+        try {
+            return encodeBgr(processed, publish);
+        } finally {
+            processors.recycle(processed);
+        }
+    }
+
+    private boolean encodeBgr(Mat mat, boolean publish) {
+        // 先遮挡再叠加水印，保证水印不被遮挡
+        if (privacyMask != null) {
+            privacyMask.apply(mat);
+        }
+        if (overlay != null) {
+            overlay.apply(mat);
+        }
+        if (latestFrame != null) {
+            latestFrame.publish(mat);
+        }
+        if (publish) {
+            publishToBus(mat, avutil.AV_PIX_FMT_BGR24, mat.cols(), mat.rows());
+        }
+        if (latencyStamp) {
+            LatencyStamp.stamp(mat, frameCount, LatencyStamp.nowMicros());
+        }
+
+        // 缩放到编码分辨率，融合模式下同时转换为YUV420P
+        boolean scaled = scaler.scale(mat);
+        logSize(mat.cols(), mat.rows(), scaled);
+        return scaled;
+    }
+
+    /**
+     * 写入共享内存帧总线（采集到的画面，未缩放），失败时关闭总线，不影响推流
+     */
+    private void publishToBus(Mat mat, int format, int width, int height) {
+        if (frameBus == null) {
+            return;
+        }
+        try {
+            frameBus.publish(mat, format, width, height);
+        } catch (Exception e) {
+            listener.onLog("共享内存帧总线写入失败，已关闭: " + e.getMessage());
+            frameBus.close();
+            frameBus = null;
+        }
+    }
+
+    private void logSize(int sourceWidth, int sourceHeight, boolean scaled) {
+        if (scaled && !sizeLogged) {
+            sizeLogged = true;
+            if (scaler.isResizing()) {
+                listener.onLog("实际分辨率 " + sourceWidth + "x" + sourceHeight
+                        + " 与编码分辨率不一致，" + scaler.describe());
+            }
+        }
+    }
+
+    private void stopInternal() {
+        isRunning.set(false);
+
+        // 先停止音频采集线程，再停止录制器
+        if (audio != null) {
+            audio.stop();
+            if (audio.getPaddedMillis() > 0 || audio.getSkippedMillis() > 0 || audio.getCatchUps() > 0
+                    || audio.getOverruns() > 0) {
+                listener.onLog("音频补静音 " + audio.getPaddedMillis() + " ms，对齐时跳过 " + audio.getSkippedMillis()
+                        + " ms，超前加速追赶 " + audio.getCatchUps() + " 次，缓冲溢出 " + audio.getOverruns() + " 次");
+            }
+            audio = null;
+        }
+        if (statsLog != null) {
+            statsLog.stop();
+            statsLog = null;
+        }
+        if (frameBus != null) {
+            if (frameBus.getSkipped() > 0) {
+                listener.onLog("共享内存帧总线跳过 " + frameBus.getSkipped() + " 帧（画面超过槽位大小 " + frameBus.getCapacity() + " 字节）");
+            }
+            frameBus.close();
+            frameBus = null;
+        }
+
+        CompletableFuture<Void> release = releaseRequest.getAndSet(null);
+        if (release != null) {
+            release.completeExceptionally(new IllegalStateException("推流已停止"));
+        }
+        FrameSource pending = pendingSource.getAndSet(null);
+        if (pending != null) {
+            pending.close();
+        }
+
+        try {
+            if (recorder != null) {
+                recorder.stop();
+                recorder.release();
+                listener.onLog("RTSP录制器已停止");
+            }
+        } catch (Exception e) {
+            // 忽略
+        }
+        if (packetProbe != null) {
+            packetProbe.release();
+            packetProbe = null;
+        }
+
+        try {
+            if (source != null) {
+                source.close();
+                source = null;
+                listener.onLog("推流来源已关闭");
+            }
+        } catch (Exception e) {
+            // 忽略
+        }
+
+        if (scaler != null) {
+            scaler.release();
+            scaler = null;
+        }
+        if (overlay != null) {
+            overlay.release();
+            overlay = null;
+        }
+        if (privacyMask != null) {
+            privacyMask.release();
+            privacyMask = null;
+        }
+        if (processors != null) {
+            if (processors.getDropped() > 0) {
+                listener.onLog("画面处理丢弃 " + processors.getDropped() + " 帧");
+            }
+            if (!processors.release()) {
+                listener.onLog("画面处理线程未能及时停止");
+            }
+            processors = null;
+        }
+
+        quality = null;
+        level = null;
+        stopRequested = false;
+        listener.onStopped();
+    }
+
+    public void stopStreaming() {
+        stopRequested = true;
+        isRunning.set(false);
+        // 推流线程可能正在等待卡住的画面处理
+        FrameProcessorChain chain = processors;
+        if (chain != null) {
+            chain.stop();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.tool.single;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 推流统计：按秒分槽的滑动窗口（1秒/10秒/60秒）
+ * 帧数、输出字节、丢帧和采集/处理/编码/发送耗时直方图都存放在预先分配的定长数组中，
+ * 写入只做数组加法，不分配对象。由推流线程单线程写入，界面和日志线程可随时读取，
+ * 读取只统计已经结束的整秒，读取期间被复用的槽位会被跳过
+ */
+public class StreamStats {
+
+    public enum Stage {
+        CAPTURE("采集"), PROCESS("处理"), ENCODE("编码"), SEND("发送");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    public static final int[] WINDOWS = {1, 10, 60};
+
+    // 槽位数需大于最大窗口
+    private static final int SLOTS = 64;
+    // 直方图：16微秒以下逐个计数，之上每个2的幂区间分8档（误差不超过12.5%），覆盖到约16秒
+    private static final int LINEAR_BINS = 16;
+    private static final int SUB_BINS = 8;
+    private static final int BINS = LINEAR_BINS + (24 - 4) * SUB_BINS;
+
+    private static final int EPOCH = 0;
+    private static final int FRAMES = 1;
+    private static final int BYTES = 2;
+    private static final int DROPPED = 3;
+    private static final int HISTOGRAMS = 4;
+    private static final int SLOT_SIZE = HISTOGRAMS + Stage.values().length * BINS;
+
+    private final AtomicLongArray slots = new AtomicLongArray(SLOTS * SLOT_SIZE);
+    private final long origin = System.nanoTime();
+
+    /**
+     * 某个窗口的统计结果
+     */
+    public static final class Window {
+        public final int seconds;
+        public final double fps;
+        public final long bitsPerSecond;
+        public final long dropped;
+        private final long[] p50Micros;
+        private final long[] p99Micros;
+
+        Window(int seconds, double fps, long bitsPerSecond, long dropped, long[] p50Micros, long[] p99Micros) {
+            this.seconds = seconds;
+            this.fps = fps;
+            this.bitsPerSecond = bitsPerSecond;
+            this.dropped = dropped;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+        }
+
+        public long p50(Stage stage) {
+            return p50Micros[stage.ordinal()];
+        }
+
+        public long p99(Stage stage) {
+            return p99Micros[stage.ordinal()];
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"fps\":").append(String.format(Locale.ROOT, "%.2f", fps))
+                    .append(",\"bitrate\":").append(bitsPerSecond)
+                    .append(",\"dropped\":").append(dropped);
+            for (Stage stage : Stage.values()) {
+                String key = stage.name().toLowerCase(Locale.ROOT);
+                json.append(",\"").append(key).append("_p50_us\":").append(p50(stage))
+                        .append(",\"").append(key).append("_p99_us\":").append(p99(stage));
+            }
+            return json.append('}').toString();
+        }
+    }
+
+    public void frameSent() {
+        add(FRAMES, 1);
+    }
+
+    public void bytesSent(long bytes) {
+        add(BYTES, bytes);
+    }
+
+    public void frameDropped() {
+        add(DROPPED, 1);
+    }
+
+    public void time(Stage stage, long nanos) {
+        add(HISTOGRAMS + stage.ordinal() * BINS + bin(nanos / 1000), 1);
+    }
+
+    private void add(int field, long value) {
+        int base = currentSlot();
+        slots.lazySet(base + field, slots.get(base + field) + value);
+    }
+
+    /**
+     * 当前秒对应的槽位，进入新的一秒时先清零
+     */
+    private int currentSlot() {
+        long second = currentSecond();
+        int base = (int) (second % SLOTS) * SLOT_SIZE;
+        if (slots.get(base + EPOCH) != second + 1) {
+            // 先作废再清零，读取方据此跳过正在复用的槽位
+            slots.set(base + EPOCH, 0);
+            for (int i = 1; i < SLOT_SIZE; i++) {
+                slots.lazySet(base + i, 0);
+            }
+            slots.set(base + EPOCH, second + 1);
+        }
+        return base;
+    }
+
+    private long currentSecond() {
+        return (System.nanoTime() - origin) / 1000000000L;
+    }
+
+    static int bin(long micros) {
+        if (micros < LINEAR_BINS) {
+            return (int) Math.max(0, micros);
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int index = LINEAR_BINS + (msb - 4) * SUB_BINS + (int) ((micros >> (msb - 3)) & (SUB_BINS - 1));
+        return Math.min(index, BINS - 1);
+    }
+
+    /**
+     * 档位的上界（微秒）
+     */
+    static long binUpperBound(int bin) {
+        if (bin < LINEAR_BINS) {
+            return bin;
+        }
+        int msb = (bin - LINEAR_BINS) / SUB_BINS + 4;
+        long sub = (bin - LINEAR_BINS) % SUB_BINS;
+        return ((SUB_BINS + sub + 1) << (msb - 3)) - 1;
+    }
+
+    /**
+     * 最近 seconds 个完整秒的统计
+     */
+    public Window window(int seconds) {
+        long now = currentSecond();
+        long frames = 0;
+        long bytes = 0;
+        long dropped = 0;
+        int covered = 0;
+        long[][] histograms = new long[Stage.values().length][BINS];
+        long[] slot = new long[SLOT_SIZE];
+
+        for (long second = now - seconds; second < now; second++) {
+            if (second < 0) {
+                continue;
+            }
+            covered++;
+            int base = (int) (second % SLOTS) * SLOT_SIZE;
+            if (slots.get(base + EPOCH) != second + 1) {
+                // 这一秒没有任何写入
+                continue;
+            }
+            for (int i = 1; i < SLOT_SIZE; i++) {
+                slot[i] = slots.get(base + i);
+            }
+            if (slots.get(base + EPOCH) != second + 1) {
+                // 读取期间槽位已被复用
+                continue;
+            }
+            frames += slot[FRAMES];
+            bytes += slot[BYTES];
+            dropped += slot[DROPPED];
+            for (int stage = 0; stage < histograms.length; stage++) {
+                int offset = HISTOGRAMS + stage * BINS;
+                for (int i = 0; i < BINS; i++) {
+                    histograms[stage][i] += slot[offset + i];
+                }
+            }
+        }
+
+        long[] p50 = new long[histograms.length];
+        long[] p99 = new long[histograms.length];
+        for (int stage = 0; stage < histograms.length; stage++) {
+            p50[stage] = percentile(histograms[stage], 0.50);
+            p99[stage] = percentile(histograms[stage], 0.99);
+        }
+        int span = Math.max(1, covered);
+        return new Window(seconds, (double) frames / span, bytes * 8 / span, dropped, p50, p99);
+    }
+
+    private static long percentile(long[] histogram, double fraction) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return binUpperBound(i);
+            }
+        }
+        return binUpperBound(histogram.length - 1);
+    }
+
+    /**
+     * 一行JSON，包含各窗口的统计
+     */
+    public String toJsonLine(long timestampMillis) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"ts\":").append(timestampMillis);
+        for (int seconds : WINDOWS) {
+            json.append(",\"").append(seconds).append("s\":").append(window(seconds).toJson());
+        }
+        return json.append('}').toString();
+    }
+}
@@ -0,0 +1,303 @@
+package com.tool.single;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 推流/预览会话的生命周期管理
+ * 会话在有上限的托管线程池中运行，状态依次为 启动中→运行中→停止中→已停止；
+ * stop 返回的 future 在摄像头和录制器真正释放后才完成。同一个键的会话串行执行，
+ * 新会话会等上一个会话释放完资源再启动，不再依赖固定的等待时间
+ */
+public class StreamSupervisor {
+
+    public enum State {
+        STARTING("启动中"), RUNNING("运行中"), STOPPING("停止中"), STOPPED("已停止");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 会话主体，在托管线程中执行
+     */
+    public interface Session {
+        /**
+         * 打开资源后调用 started.run()，收到停止请求后释放全部资源再返回
+         */
+        void run(Runnable started) throws Exception;
+
+        /**
+         * 请求停止，可能在任意线程调用，不应阻塞
+         */
+        void requestStop();
+    }
+
+    /**
+     * 状态变化回调，在会话线程或调用 stop 的线程中触发
+     */
+    public interface StateListener {
+        void onStateChanged(Handle handle, State state);
+    }
+
+    /**
+     * 单个会话的句柄
+     */
+    public class Handle {
+        // 由 sessions 的锁保护，会话换用其他资源时可以改键
+        private String key;
+        private final Session session;
+        private final AtomicReference<State> state = new AtomicReference<>(State.STARTING);
+        private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        private volatile Throwable failure;
+        private volatile long stopRequestedAt;
+        private volatile long teardownMillis = -1;
+
+        private Handle(String key, Session session) {
+            this.key = key;
+            this.session = session;
+        }
+
+        public String getKey() {
+            synchronized (sessions) {
+                return key;
+            }
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        /**
+         * 启动中或运行中
+         */
+        public boolean isActive() {
+            State current = state.get();
+            return current == State.STARTING || current == State.RUNNING;
+        }
+
+        /**
+         * 会话异常结束时的原因，正常结束为null
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * 从请求停止到资源释放完成的耗时，未经 stop 结束时为-1
+         */
+        public long getTeardownMillis() {
+            return teardownMillis;
+        }
+
+        /**
+         * 资源释放完成后完成的 future
+         */
+        public CompletableFuture<Void> whenStopped() {
+            return stopped;
+        }
+
+        /**
+         * 请求停止，重复调用返回同一个 future
+         */
+        public CompletableFuture<Void> stop() {
+            if (state.compareAndSet(State.STARTING, State.STOPPING)
+                    || state.compareAndSet(State.RUNNING, State.STOPPING)) {
+                stopRequestedAt = System.nanoTime();
+                notifyState(this, State.STOPPING);
+                session.requestStop();
+            }
+            return stopped;
+        }
+
+        private void run() {
+            try {
+                // 排队期间已被停止
+                if (state.get() != State.STARTING) {
+                    return;
+                }
+                session.run(() -> {
+                    if (state.compareAndSet(State.STARTING, State.RUNNING)) {
+                        notifyState(this, State.RUNNING);
+                    }
+                });
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (stopRequestedAt != 0) {
+                teardownMillis = (System.nanoTime() - stopRequestedAt) / 1000000;
+            }
+            state.set(State.STOPPED);
+            synchronized (sessions) {
+                if (sessions.get(key) == this) {
+                    sessions.remove(key);
+                }
+            }
+            notifyState(this, State.STOPPED);
+            stopped.complete(null);
+        }
+    }
+
+    // 同时运行的会话上限（预览、推流、测试会话等）
+    private static final int MAX_SESSIONS = 8;
+
+    private final StateListener listener;
+    private final int maxSessions;
+    private final ThreadPoolExecutor sessionExecutor;
+    private final ExecutorService taskExecutor;
+    private final Map<String, Handle> sessions = new HashMap<>();
+
+    public StreamSupervisor(StateListener listener) {
+        this(listener, MAX_SESSIONS);
+    }
+
+    /**
+     * maxSessions 为同时运行的会话上限，转发等批量场景按路数指定
+     */
+    public StreamSupervisor(StateListener listener, int maxSessions) {
+        this.listener = listener;
+        this.maxSessions = maxSessions;
+        this.sessionExecutor = new ThreadPoolExecutor(0, maxSessions, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), namedThreads("stream-session"));
+        // 摄像头检测等短任务单线程串行执行
+        this.taskExecutor = Executors.newSingleThreadExecutor(namedThreads("stream-task"));
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(NativeMemoryMonitor.tracked(r), prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 启动会话；同一个键已有会话时先停止旧会话，等其资源释放完再启动新会话
+     */
+    public Handle start(String key, Session session) {
+        Handle handle = new Handle(key, session);
+        Handle previous;
+        synchronized (sessions) {
+            previous = sessions.put(key, handle);
+        }
+        notifyState(handle, State.STARTING);
+
+        CompletableFuture<Void> ready = previous == null
+                ? CompletableFuture.completedFuture(null) : previous.stop();
+        ready.thenRun(() -> {
+            try {
+                sessionExecutor.execute(handle::run);
+            } catch (Exception e) {
+                handle.failure = new IllegalStateException("会话数量已达上限: " + maxSessions);
+                handle.finish();
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * 当前键对应的会话，没有时返回null
+     */
+    public Handle get(String key) {
+        synchronized (sessions) {
+            return sessions.get(key);
+        }
+    }
+
+    /**
+     * 把运行中的会话改登记到新键下（如推流切换了摄像头），之后同一新键的会话与它串行；
+     * 新键已被其他会话占用或会话已结束时不改动并返回false
+     */
+    public boolean rekey(Handle handle, String key) {
+        synchronized (sessions) {
+            if (handle.key.equals(key)) {
+                return true;
+            }
+            if (sessions.get(handle.key) != handle || sessions.containsKey(key)) {
+                return false;
+            }
+            sessions.remove(handle.key);
+            sessions.put(key, handle);
+            handle.key = key;
+            return true;
+        }
+    }
+
+    /**
+     * 停止指定键的会话，没有会话时返回已完成的 future
+     */
+    public CompletableFuture<Void> stop(String key) {
+        Handle handle = get(key);
+        return handle == null ? CompletableFuture.completedFuture(null) : handle.stop();
+    }
+
+    public CompletableFuture<Void> stopAll() {
+        List<Handle> handles;
+        synchronized (sessions) {
+            handles = new ArrayList<>(sessions.values());
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Handle handle : handles) {
+            futures.add(handle.stop());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * 在串行任务线程中执行短任务（如摄像头检测）
+     */
+    public CompletableFuture<Void> runTask(Runnable task) {
+        return CompletableFuture.runAsync(task, taskExecutor);
+    }
+
+    /**
+     * 停止所有会话并关闭线程池，最多等待 timeoutMillis
+     */
+    public boolean shutdown(long timeoutMillis) {
+        boolean stopped;
+        try {
+            stopAll().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            stopped = true;
+        } catch (Exception e) {
+            stopped = false;
+        }
+        sessionExecutor.shutdown();
+        taskExecutor.shutdownNow();
+        return stopped;
+    }
+
+    private void notifyState(Handle handle, State state) {
+        if (listener != null) {
+            listener.onStateChanged(handle, state);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_16SC3;
+import static org.bytedeco.opencv.global.opencv_core.CV_64F;
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * 合成测试画面：彩条背景 + 移动色块，按帧率节拍出帧，行为与摄像头一致
+ * 用于没有摄像头的Linux服务器上做延迟和容量测试；原生模式下以YUV420P输出，模拟原生YUV采集。
+ * 可叠加传感器噪声：预先生成若干帧噪声背景轮流使用，编码开销接近真实摄像头，出帧本身不增加计算
+ */
+public class SyntheticFrameSource implements RawFrameSource {
+
+    private static final Scalar[] BAR_COLORS = {
+            new Scalar(255, 255, 255, 0), new Scalar(0, 255, 255, 0),
+            new Scalar(255, 255, 0, 0), new Scalar(0, 255, 0, 0),
+            new Scalar(255, 0, 255, 0), new Scalar(0, 0, 255, 0),
+            new Scalar(255, 0, 0, 0), new Scalar(0, 0, 0, 0)
+    };
+
+    // 噪声背景的帧数，轮流使用使每帧的噪声都不同
+    private static final int NOISE_FRAMES = 8;
+
+    private final String name;
+    private final boolean raw;
+    private final int noise;
+    private Mat[] backgrounds;
+    private Mat[] rawBackgrounds;
+    private int width;
+    private int height;
+    private long frameIntervalNanos;
+    private long nextFrameTime;
+    private long frameIndex;
+
+    public SyntheticFrameSource() {
+        this("合成画面");
+    }
+
+    public SyntheticFrameSource(String name) {
+        this(name, false);
+    }
+
+    public SyntheticFrameSource(String name, boolean raw) {
+        this(name, raw, 0);
+    }
+
+    /**
+     * noise 为叠加的传感器噪声标准差（像素值），0表示不加噪声
+     */
+    public SyntheticFrameSource(String name, boolean raw, int noise) {
+        this.name = name;
+        this.raw = raw;
+        this.noise = noise;
+    }
+
+    @Override
+    public void open(int width, int height, int fps) {
+        this.width = width;
+        this.height = height;
+        this.frameIntervalNanos = 1000000000L / Math.max(1, fps);
+        this.nextFrameTime = System.nanoTime();
+        this.frameIndex = 0;
+
+        // 背景只绘制一次，之后每帧仅做一次整帧拷贝
+        Mat background = new Mat(height, width, CV_8UC3, new Scalar(0, 0, 0, 0));
+        int barWidth = Math.max(1, width / BAR_COLORS.length);
+        for (int i = 0; i < BAR_COLORS.length; i++) {
+            opencv_imgproc.rectangle(background,
+                    new Rect(i * barWidth, 0, barWidth, height),
+                    BAR_COLORS[i], opencv_imgproc.FILLED, opencv_imgproc.LINE_8, 0);
+        }
+        backgrounds = noise > 0 ? addNoise(background) : new Mat[]{background};
+
+        // I420要求偶数宽高
+        if (raw && width % 2 == 0 && height % 2 == 0) {
+            rawBackgrounds = new Mat[backgrounds.length];
+            for (int i = 0; i < backgrounds.length; i++) {
+                rawBackgrounds[i] = new Mat();
+                opencv_imgproc.cvtColor(backgrounds[i], rawBackgrounds[i], opencv_imgproc.COLOR_BGR2YUV_I420);
+            }
+        }
+    }
+
+    private Mat[] addNoise(Mat background) {
+        Mat[] noisy = new Mat[NOISE_FRAMES];
+        Mat wide = new Mat();
+        Mat grain = new Mat(height, width, CV_16SC3);
+        background.convertTo(wide, CV_16SC3);
+        for (int i = 0; i < noisy.length; i++) {
+            opencv_core.randn(grain, new Mat(1, 1, CV_64F, new Scalar(0)), new Mat(1, 1, CV_64F, new Scalar(noise)));
+            opencv_core.add(wide, grain, grain);
+            noisy[i] = new Mat();
+            grain.convertTo(noisy[i], CV_8UC3);
+        }
+        wide.release();
+        grain.release();
+        background.release();
+        return noisy;
+    }
+
+    @Override
+    public boolean read(Mat frame) {
+        if (backgrounds == null || !waitForNextFrame()) {
+            return false;
+        }
+        backgrounds[(int) (frameIndex % backgrounds.length)].copyTo(frame);
+        drawBox(frame, new Scalar(40, 40, 40, 0));
+        return true;
+    }
+
+    @Override
+    public int getRawPixelFormat() {
+        return rawBackgrounds != null ? avutil.AV_PIX_FMT_YUV420P : avutil.AV_PIX_FMT_NONE;
+    }
+
+    @Override
+    public int getRawWidth() {
+        return width;
+    }
+
+    @Override
+    public int getRawHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean readRaw(Mat frame) {
+        if (rawBackgrounds == null || !waitForNextFrame()) {
+            return false;
+        }
+        rawBackgrounds[(int) (frameIndex % rawBackgrounds.length)].copyTo(frame);
+        // 只画在Y平面上（前height行），色块为暗灰
+        drawBox(frame, new Scalar(40, 0, 0, 0));
+        return true;
+    }
+
+    /**
+     * 模拟摄像头的出帧节拍
+     */
+    private boolean waitForNextFrame() {
+        long waitNanos = nextFrameTime - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        nextFrameTime = Math.max(nextFrameTime + frameIntervalNanos, System.nanoTime() - frameIntervalNanos);
+        return true;
+    }
+
+    /**
+     * 移动色块，保证编码器每帧都有运动内容
+     */
+    private void drawBox(Mat frame, Scalar color) {
+        int box = Math.max(8, height / 6);
+        int span = Math.max(1, width - box);
+        int x = (int) ((frameIndex * 8) % (2L * span));
+        if (x > span) {
+            x = 2 * span - x;
+        }
+        int y = (height - box) / 2;
+        opencv_imgproc.rectangle(frame, new Point(x, y), new Point(x + box, y + box),
+                color, opencv_imgproc.FILLED, opencv_imgproc.LINE_8, 0);
+        frameIndex++;
+    }
+
+    @Override
+    public String getName() {
+        return name + " " + width + "x" + height;
+    }
+
+    @Override
+    public void close() {
+        release(backgrounds);
+        backgrounds = null;
+        release(rawBackgrounds);
+        rawBackgrounds = null;
+    }
+
+    private static void release(Mat[] mats) {
+        if (mats != null) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.tool.single;
+
+/**
+ * 合成测试音：正弦波，每秒开头有一段短促的提示音，便于对照画面检查音画同步
+ * 按系统时钟节拍出采样；skewPpm 模拟声卡时钟与系统时钟的偏差，用来验证漂移校正
+ */
+public class ToneAudioSource implements AudioSource {
+
+    private static final int CHUNK_MILLIS = 10;
+    private static final int BEEP_MILLIS = 100;
+
+    private final double frequency;
+    private final double skewPpm;
+    private int sampleRate;
+    private int channels;
+    private int chunkFrames;
+    private long startTime;
+    private long framesProduced;
+
+    public ToneAudioSource() {
+        this(440, 0);
+    }
+
+    public ToneAudioSource(double frequency, double skewPpm) {
+        this.frequency = frequency;
+        this.skewPpm = skewPpm;
+    }
+
+    @Override
+    public void open(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.chunkFrames = sampleRate * CHUNK_MILLIS / 1000;
+        this.startTime = -1;
+        this.framesProduced = 0;
+    }
+
+    @Override
+    public int read(short[] samples) {
+        int frames = Math.min(chunkFrames, samples.length / channels);
+        if (frames <= 0) {
+            return -1;
+        }
+
+        // 与声卡一样从开始读取时出采样，打开到开始读取之间不积压
+        if (startTime < 0) {
+            startTime = System.nanoTime();
+        }
+        // 按偏差后的采样率计算这块采样应当就绪的时刻
+        double actualRate = sampleRate * (1 + skewPpm / 1000000.0);
+        long readyAt = startTime + (long) ((framesProduced + frames) * 1000000000.0 / actualRate);
+        long waitNanos = readyAt - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+
+        int beepFrames = sampleRate * BEEP_MILLIS / 1000;
+        for (int i = 0; i < frames; i++) {
+            long index = framesProduced + i;
+            // 提示音用两倍频率
+            boolean beep = index % sampleRate < beepFrames;
+            double phase = 2 * Math.PI * (beep ? frequency * 2 : frequency) * index / sampleRate;
+            short value = (short) (Math.sin(phase) * (beep ? 12000 : 4000));
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = value;
+            }
+        }
+        framesProduced += frames;
+        return frames * channels;
+    }
+
+    @Override
+    public String getName() {
+        return "测试音 " + (int) frequency + "Hz" + (skewPpm != 0 ? " (偏差 " + skewPpm + "ppm)" : "");
+    }
+
+    @Override
+    public void close() {
+        // 无需释放
+    }
+}
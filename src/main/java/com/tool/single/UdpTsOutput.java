@@ -0,0 +1,126 @@
+package com.tool.single;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * MPEG-TS over UDP 输出（单播或组播）
+ * 同一路UDP包可被局域网内任意数量的接收端收看，不需要为每个观看者维持一个RTSP会话。
+ * 每个UDP包装7个TS包（1316字节），加上IP/UDP头不超过以太网MTU；
+ * 按码率限速后FFmpeg的UDP发送线程匀速发包，大帧不会瞬间打满交换机缓冲
+ */
+public class UdpTsOutput {
+
+    public static final int DEFAULT_PORT = 5000;
+    // 7 x 188字节的TS包
+    public static final int DEFAULT_PACKET_SIZE = 1316;
+    public static final int DEFAULT_TTL = 16;
+    // 自动限速时在视频码率之上留出TS封装、音频和码率波动的余量
+    private static final double RATE_HEADROOM = 1.5;
+    private static final int MIN_RATE = 500000;
+
+    private final String host;
+    private final int port;
+    private final int packetSize;
+    private final int ttl;
+    // 发送限速(bit/s)，0表示按视频码率自动计算
+    private final int rateLimit;
+
+    public UdpTsOutput(String host, int port) {
+        this(host, port, DEFAULT_PACKET_SIZE, DEFAULT_TTL, 0);
+    }
+
+    public UdpTsOutput(String host, int port, int packetSize, int ttl, int rateLimit) {
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("UDP地址不能为空");
+        }
+        if (port <= 0 || port > 65535) {
+            throw new IllegalArgumentException("UDP端口无效: " + port);
+        }
+        if (packetSize < 188 || packetSize % 188 != 0) {
+            throw new IllegalArgumentException("UDP包大小必须是188的整数倍: " + packetSize);
+        }
+        this.host = host;
+        this.port = port;
+        this.packetSize = packetSize;
+        this.ttl = ttl;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * 解析 udp://主机:端口[?pkt_size=1316&ttl=16&bitrate=3000000]，省略 udp:// 和端口也可以；
+     * IPv6地址写在方括号内，如 udp://[ff02::1]:5000
+     */
+    public static UdpTsOutput parse(String address) {
+        String text = address.trim();
+        if (text.startsWith("udp://")) {
+            text = text.substring("udp://".length());
+        }
+        String query = "";
+        int mark = text.indexOf('?');
+        if (mark >= 0) {
+            query = text.substring(mark + 1);
+            text = text.substring(0, mark);
+        }
+        String host = text;
+        int port = DEFAULT_PORT;
+        int colon = text.lastIndexOf(':');
+        if (colon > text.lastIndexOf(']')) {
+            host = text.substring(0, colon);
+            port = Integer.parseInt(text.substring(colon + 1));
+        }
+
+        int packetSize = DEFAULT_PACKET_SIZE;
+        int ttl = DEFAULT_TTL;
+        int rateLimit = 0;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = pair.substring(0, eq);
+            int value = Integer.parseInt(pair.substring(eq + 1));
+            if ("pkt_size".equals(key)) {
+                packetSize = value;
+            } else if ("ttl".equals(key)) {
+                ttl = value;
+            } else if ("bitrate".equals(key)) {
+                rateLimit = value;
+            }
+        }
+        return new UdpTsOutput(host, port, packetSize, ttl, rateLimit);
+    }
+
+    public boolean isMulticast() {
+        try {
+            return InetAddress.getByName(host).isMulticastAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 实际使用的发送限速
+     */
+    public int getRate(int videoBitrate) {
+        return rateLimit > 0 ? rateLimit : Math.max(MIN_RATE, (int) (videoBitrate * RATE_HEADROOM));
+    }
+
+    /**
+     * FFmpeg udp协议地址，限速、包大小等都作为地址参数（tee的从输出只能这样传参）
+     */
+    public String toUrl(int videoBitrate) {
+        StringBuilder url = new StringBuilder("udp://").append(host).append(':').append(port)
+                .append("?pkt_size=").append(packetSize)
+                .append("&bitrate=").append(getRate(videoBitrate));
+        if (isMulticast()) {
+            url.append("&ttl=").append(ttl);
+        }
+        return url.toString();
+    }
+
+    public String describe(int videoBitrate) {
+        return (isMulticast() ? "UDP组播 " : "UDP单播 ") + host + ":" + port
+                + " TS包" + packetSize + "字节 限速" + getRate(videoBitrate) / 1000 + "k";
+    }
+}
@@ -0,0 +1,155 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioCaptureTest {
+
+    private File file;
+    private FFmpegFrameRecorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+        file = File.createTempFile("videostream-audio", ".mka");
+        recorder = new FFmpegFrameRecorder(file, 0);
+        recorder.setFormat("matroska");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recorder.release();
+        file.delete();
+    }
+
+    /**
+     * 读取1秒后不等待时钟连续给出 burstMillis 的静音，模拟来源突发积压
+     */
+    private static final class BurstSource implements AudioSource {
+        private final ToneAudioSource tone = new ToneAudioSource();
+        private int burstChunks;
+        private long start = -1;
+
+        BurstSource(int burstMillis) {
+            this.burstChunks = burstMillis / 10;
+        }
+
+        @Override
+        public void open(int sampleRate, int channels) {
+            tone.open(sampleRate, channels);
+        }
+
+        @Override
+        public int read(short[] samples) {
+            if (start < 0) {
+                start = System.nanoTime();
+            }
+            if (burstChunks > 0 && System.nanoTime() - start > 1000000000L) {
+                burstChunks--;
+                Arrays.fill(samples, (short) 0);
+                return samples.length;
+            }
+            return tone.read(samples);
+        }
+
+        @Override
+        public String getName() {
+            return "突发";
+        }
+
+        @Override
+        public void close() {
+            tone.close();
+        }
+    }
+
+    private AudioCapture capture;
+
+    /**
+     * 按推流线程的节奏送入录制器 seconds 秒，返回 {最后的偏差毫秒, 后一半时间的平均补偿ppm}
+     */
+    private double[] run(double skewPpm, double seconds) throws Exception {
+        return run(new ToneAudioSource(440, skewPpm), seconds);
+    }
+
+    private double[] run(AudioSource source, double seconds) throws Exception {
+        capture = new AudioCapture(source, AudioCapture.Codec.AAC);
+        capture.open();
+        capture.configure(recorder);
+        recorder.start();
+        long origin = System.nanoTime();
+        capture.start(origin);
+        long end = origin + (long) (seconds * 1000000000L);
+        long half = origin + (end - origin) / 2;
+        double correction = 0;
+        int samples = 0;
+        try {
+            while (System.nanoTime() < end) {
+                Thread.sleep(20);
+                capture.drainTo(recorder);
+                if (System.nanoTime() > half) {
+                    correction += capture.getCorrectionPpm();
+                    samples++;
+                }
+            }
+            assertEquals(0, capture.getOverruns());
+            assertEquals(0, capture.getReadFailures());
+            return new double[]{capture.getDriftMillis(), correction / samples};
+        } finally {
+            capture.stop();
+            recorder.stop();
+        }
+    }
+
+    @Test
+    public void fastSourceIsSlowedToClock() throws Exception {
+        // 声卡快0.4%，不补偿时6秒累积24毫秒
+        double[] result = run(4000, 6);
+        assertTrue("偏差 " + result[0] + " ms", Math.abs(result[0]) < 8);
+        assertTrue("补偿 " + result[1] + " ppm", result[1] < -1000);
+    }
+
+    @Test
+    public void slowSourceIsSpedUpToClock() throws Exception {
+        double[] result = run(-4000, 6);
+        assertTrue("偏差 " + result[0] + " ms", Math.abs(result[0]) < 8);
+        assertTrue("补偿 " + result[1] + " ppm", result[1] > 1000);
+    }
+
+    @Test
+    public void matchedClockNeedsNoCorrection() throws Exception {
+        double[] result = run(0, 3);
+        assertTrue("偏差 " + result[0] + " ms", Math.abs(result[0]) < 5);
+        assertTrue("补偿 " + result[1] + " ppm", Math.abs(result[1]) < 1000);
+    }
+
+    @Test
+    public void burstAheadOfClockIsSlewedNotDropped() throws Exception {
+        // 常规变速追回300毫秒需要60秒，超前超过空缺阈值时临时加快，不丢弃采样
+        double[] result = run(new BurstSource(300), 10);
+        assertTrue("偏差 " + result[0] + " ms", Math.abs(result[0]) < 10);
+        assertEquals(0, capture.getSkippedMillis());
+        assertEquals(1, capture.getCatchUps());
+    }
+
+    @Test
+    public void timelineDoesNotOverflowOnMultiDayRuns() {
+        long now = System.nanoTime();
+        long hours = 61;
+        // 直接相乘在约53小时后溢出为负数
+        long origin = now - hours * 3600 * 1000000000L - 500000000L;
+        assertEquals(hours * 3600 * AudioCapture.SAMPLE_RATE + AudioCapture.SAMPLE_RATE / 2,
+                AudioCapture.framesSince(origin, now));
+        assertTrue((now - origin) * AudioCapture.SAMPLE_RATE < 0);
+        assertEquals(-AudioCapture.SAMPLE_RATE / 100, AudioCapture.framesSince(now, now - 10000000L));
+    }
+}
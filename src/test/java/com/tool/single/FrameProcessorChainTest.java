@@ -0,0 +1,211 @@
+package com.tool.single;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameProcessorChainTest {
+
+    private static final int FRAMES = 200;
+    // 第11帧处理出错
+    private static final long FAILING = 11;
+
+    private FrameProcessorChain chain;
+
+    @After
+    public void tearDown() {
+        if (chain != null) {
+            assertTrue(chain.release());
+        }
+    }
+
+    /**
+     * 帧内容即采集序号（低8位），处理器据此校验拿到的是不是同一帧
+     */
+    private static int contentOf(Mat frame) {
+        return frame.data().get(0) & 0xFF;
+    }
+
+    /**
+     * 有状态处理器：记录收到的序号，dropModulo不为0时丢弃序号能被它整除的帧
+     */
+    private static final class Recorder implements FrameProcessor {
+        final List<Long> seen = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger mismatches = new AtomicInteger();
+        private final int dropModulo;
+
+        Recorder(int dropModulo) {
+            this.dropModulo = dropModulo;
+        }
+
+        @Override
+        public boolean process(Mat frame, long sequence) {
+            seen.add(sequence);
+            if (contentOf(frame) != (sequence & 0xFF)) {
+                mismatches.incrementAndGet();
+            }
+            return dropModulo == 0 || sequence % dropModulo != 0;
+        }
+    }
+
+    /**
+     * 无状态处理器：随机耗时打乱完成顺序，丢弃序号除7余3的帧，FAILING帧抛出异常
+     */
+    private static final class Jitter implements FrameProcessor {
+        final AtomicInteger mismatches = new AtomicInteger();
+        private final Random random = new Random(7);
+
+        @Override
+        public boolean process(Mat frame, long sequence) {
+            if (contentOf(frame) != (sequence & 0xFF)) {
+                mismatches.incrementAndGet();
+            }
+            try {
+                Thread.sleep(nextDelay());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sequence == FAILING) {
+                throw new IllegalStateException("处理失败");
+            }
+            return sequence % 7 != 3;
+        }
+
+        private synchronized int nextDelay() {
+            return random.nextInt(4);
+        }
+
+        @Override
+        public boolean isStateless() {
+            return true;
+        }
+    }
+
+    private void assertOrdered(int workers) throws Exception {
+        Recorder first = new Recorder(5);
+        Jitter jitter = new Jitter();
+        Recorder last = new Recorder(0);
+        chain = new FrameProcessorChain(Arrays.asList(first, jitter, last), workers);
+        assertEquals(workers > 0, chain.isParallel());
+        chain.start();
+
+        // 多提交几帧把前FRAMES帧都从在途队列中取出
+        List<Long> output = new ArrayList<>();
+        int failures = 0;
+        for (long n = 0; n < FRAMES + workers + 1; n++) {
+            try (Mat frame = new Mat(2, 2, CV_8UC1, new Scalar(n & 0xFF))) {
+                Mat processed;
+                try {
+                    processed = chain.submit(frame);
+                } catch (IllegalStateException e) {
+                    failures++;
+                    continue;
+                }
+                if (processed != null) {
+                    output.add((long) contentOf(processed));
+                    chain.recycle(processed);
+                }
+            }
+        }
+
+        // 等工作线程结束后再检查处理器的记录
+        assertTrue(chain.release());
+        chain = null;
+
+        List<Long> expected = new ArrayList<>();
+        for (long n = 0; n < FRAMES; n++) {
+            if (n % 5 != 0 && n % 7 != 3 && n != FAILING) {
+                expected.add(n);
+            }
+        }
+        assertEquals(1, failures);
+        assertEquals(expected, output.subList(0, expected.size()));
+        // 有状态处理器严格按采集序号调用，丢弃或出错的帧不会到达后面的处理器
+        assertEquals(expected, last.seen.subList(0, expected.size()));
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals((long) i, (long) first.seen.get(i));
+        }
+        assertEquals(0, first.mismatches.get() + jitter.mismatches.get() + last.mismatches.get());
+    }
+
+    @Test
+    public void sequentialChainKeepsOrder() throws Exception {
+        assertOrdered(0);
+    }
+
+    @Test
+    public void singleWorkerKeepsOrder() throws Exception {
+        assertOrdered(1);
+    }
+
+    @Test
+    public void fourWorkersKeepOrder() throws Exception {
+        assertOrdered(4);
+    }
+
+    @Test
+    public void statefulOnlyChainRunsOnCallerThread() {
+        chain = new FrameProcessorChain(Collections.singletonList(new Recorder(0)), 4);
+        assertFalse(chain.isParallel());
+    }
+
+    @Test
+    public void stopReleasesBlockedSubmit() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        FrameProcessor stuck = new FrameProcessor() {
+            @Override
+            public boolean process(Mat frame, long sequence) {
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+
+            @Override
+            public boolean isStateless() {
+                return true;
+            }
+        };
+        chain = new FrameProcessorChain(Collections.singletonList(stuck), 1);
+        chain.start();
+
+        try (Mat frame = new Mat(2, 2, CV_8UC1, new Scalar(0))) {
+            assertNull(chain.submit(frame));
+            assertTrue(chain.isDeferred());
+
+            Thread stopper = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                chain.stop();
+            });
+            stopper.start();
+            // 在途帧已满，第二帧等待卡住的第一帧，停止后返回
+            long start = System.nanoTime();
+            assertNull(chain.submit(frame));
+            assertTrue(chain.isDeferred());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            stopper.join();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.tool.single;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LatencyStampTest {
+
+    private static final long MICROS = 0x12_3456_789AL;
+
+    private Mat frame;
+
+    @Before
+    public void setUp() {
+        frame = new Mat(720, 1280, opencv_core.CV_8UC3, new Scalar(90, 140, 60, 0));
+    }
+
+    @After
+    public void tearDown() {
+        frame.release();
+        frame.close();
+    }
+
+    @Test
+    public void roundTrip() {
+        LatencyStamp.stamp(frame, 70000, MICROS);
+        // 序号只保留低16位
+        assertArrayEquals(new long[]{70000 & 0xFFFF, MICROS}, LatencyStamp.decode(frame));
+    }
+
+    @Test
+    public void survivesDownscaleAndJpeg() {
+        LatencyStamp.stamp(frame, 42, MICROS);
+        try (Mat received = downscaleAndJpeg(frame)) {
+            assertArrayEquals(new long[]{42, MICROS}, LatencyStamp.decode(received));
+        }
+    }
+
+    /**
+     * 模拟推流端缩小一半、接收端解码有损画面
+     */
+    private static Mat downscaleAndJpeg(Mat source) {
+        try (Mat scaled = new Mat();
+             BytePointer encoded = new BytePointer();
+             IntPointer params = new IntPointer(opencv_imgcodecs.IMWRITE_JPEG_QUALITY, 40)) {
+            opencv_imgproc.resize(source, scaled, new Size(source.cols() / 2, source.rows() / 2),
+                    0, 0, opencv_imgproc.INTER_AREA);
+            opencv_imgcodecs.imencode(".jpg", scaled, encoded, params);
+            try (Mat buffer = new Mat(1, (int) encoded.limit(), opencv_core.CV_8UC1, encoded)) {
+                return opencv_imgcodecs.imdecode(buffer, opencv_imgcodecs.IMREAD_COLOR);
+            }
+        }
+    }
+
+    @Test
+    public void damagedStampFailsChecksum() {
+        LatencyStamp.stamp(frame, 42, MICROS);
+        // 翻转第二行的一个方块
+        int cell = LatencyStamp.cellSize(frame.cols());
+        Rect bit = new Rect(5 * cell, cell, cell, cell);
+        try (Mat roi = new Mat(frame, bit)) {
+            double luma = opencv_core.mean(roi).get(1);
+            roi.put(luma > 128 ? new Scalar(0, 0, 0, 0) : new Scalar(255, 255, 255, 0));
+        }
+        assertNull(LatencyStamp.decode(frame));
+    }
+
+    @Test
+    public void unstampedOrTinyFrameDecodesToNull() {
+        assertNull(LatencyStamp.decode(frame));
+        try (Mat tiny = new Mat(4, 64, opencv_core.CV_8UC3, new Scalar(0, 0, 0, 0))) {
+            LatencyStamp.stamp(tiny, 1, MICROS);
+            assertNull(LatencyStamp.decode(tiny));
+        }
+    }
+
+    @Test
+    public void unwrapsAcross40BitBoundary() {
+        long wrap = 1L << 40;
+        long now = 3 * wrap + 500;
+        // 时间戳在回绕之前写入
+        assertEquals(3 * wrap - 1000, LatencyStamp.unwrapMicros(wrap - 1000, now));
+        assertEquals(3 * wrap + 200, LatencyStamp.unwrapMicros(200, now));
+    }
+}
@@ -0,0 +1,42 @@
+package com.tool.single;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class LoadTestRunnerTest {
+
+    /**
+     * 延迟均匀分布在 fromMillis..toMillis（每毫秒一个样本），乱序给出
+     */
+    private static List<Long> latencies(int fromMillis, int toMillis) {
+        List<Long> samples = new ArrayList<>();
+        for (int millis = fromMillis; millis <= toMillis; millis++) {
+            samples.add(millis * 1000L);
+        }
+        Collections.reverse(samples);
+        return samples;
+    }
+
+    @Test
+    public void worstStreamP99IsReportedSeparately() {
+        // 第二路只收到几帧且延迟很高，合并后的p99被第一路的样本掩盖
+        double[] summary = LoadTestRunner.summarizeLatency(Arrays.asList(
+                latencies(1, 1000), latencies(2001, 2005)));
+        assertArrayEquals(new double[]{503, 995, 2005, 1005}, summary, 0.001);
+    }
+
+    @Test
+    public void streamsWithoutSamplesAreIgnored() {
+        double[] summary = LoadTestRunner.summarizeLatency(Arrays.asList(
+                latencies(1, 100), Collections.<Long>emptyList()));
+        assertArrayEquals(new double[]{50, 99, 99, 100}, summary, 0.001);
+        assertArrayEquals(new double[]{0, 0, 0, 0},
+                LoadTestRunner.summarizeLatency(Collections.<List<Long>>emptyList()), 0.001);
+    }
+}
@@ -0,0 +1,128 @@
+package com.tool.single;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class QualityControllerTest {
+
+    private QualityController controller;
+    private long now;
+
+    @Before
+    public void setUp() {
+        controller = new QualityController(1280, 720, 30, true);
+        now = System.nanoTime();
+    }
+
+    /**
+     * 按当前档位的帧率逐帧喂入 seconds 秒，busy 为处理耗时占帧间隔的比例；返回第一次切换到的档位
+     */
+    private QualityController.Level feed(double busy, double seconds) {
+        long end = now + (long) (seconds * 1000000000L);
+        while (now < end) {
+            long interval = 1000000000L / controller.getLevel().fps;
+            now += interval;
+            QualityController.Level changed = controller.update((long) (interval * busy), now);
+            if (changed != null) {
+                return changed;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void framerateStepsComeBeforeEncoderRestarts() {
+        String[] expected = {"1280x720@20", "1280x720@15", "1280x720@15 ultrafast",
+                "960x540@15 ultrafast", "640x360@15 ultrafast"};
+        QualityController.Level previous = controller.getLevel();
+        assertEquals("1280x720@30", previous.describe());
+        for (int i = 0; i < expected.length; i++) {
+            QualityController.Level next = feed(1.5, 10);
+            assertNotNull("第" + (i + 1) + "次降档", next);
+            assertEquals(expected[i], next.describe());
+            // 前两档只改帧率，观看端不断开
+            assertEquals(i >= 2, previous.needsRestart(next));
+            previous = next;
+        }
+        // 已是最低档，持续过载也不再变化
+        assertNull(feed(1.5, 10));
+    }
+
+    @Test
+    public void shortSpikesDoNotStepDown() {
+        // 切换后的观察期内不判断
+        assertNull(feed(1.5, 2.5));
+        assertNull(feed(0.3, 5));
+        // 过载不到2秒又恢复
+        assertNull(feed(1.5, 1.5));
+        assertNull(feed(0.3, 5));
+        assertTrue(controller.getLoad() < 0.9);
+        assertFalse(controller.isDegraded());
+    }
+
+    @Test
+    public void recoveryWaitsAndDoublesAfterFlapping() {
+        assertEquals("1280x720@20", feed(1.5, 10).describe());
+
+        // 负载折算到30帧仍有余量，持续10秒才升档
+        long start = now;
+        QualityController.Level up = feed(0.3, 60);
+        assertEquals("1280x720@30", up.describe());
+        double waited = (now - start) / 1000000000.0;
+        assertTrue("升档等待 " + waited, waited >= 10 && waited < 15);
+
+        // 升档后很快又过载，下一次升档等待加倍
+        assertEquals("1280x720@20", feed(1.5, 10).describe());
+        start = now;
+        up = feed(0.3, 60);
+        assertNotNull(up);
+        waited = (now - start) / 1000000000.0;
+        assertTrue("振荡后升档等待 " + waited, waited >= 20 && waited < 25);
+    }
+
+    @Test
+    public void noHeadroomKeepsDegradedLevel() {
+        feed(1.5, 10);
+        // 当前档位负载0.6，折算到30帧为0.9，超过余量阈值
+        assertNull(feed(0.6, 60));
+        assertTrue(controller.isDegraded());
+    }
+
+    @Test
+    public void failedRestartLimitsLadderToFramerate() {
+        feed(1.5, 10);
+        QualityController.Level kept = feed(1.5, 10);
+        QualityController.Level restart = feed(1.5, 10);
+        assertTrue(kept.needsRestart(restart));
+
+        controller.keepEncoder(kept, now);
+        assertSame(kept, controller.getLevel());
+        assertEquals(3, controller.getLevelCount());
+        // 持续过载也不再切换到需要重建的档位
+        assertNull(feed(1.5, 20));
+        // 负载下降后仍可只改帧率升档
+        QualityController.Level up = feed(0.2, 60);
+        assertNotNull(up);
+        assertFalse(kept.needsRestart(up));
+    }
+
+    @Test
+    public void withoutRestartOnlyFramerateChanges() {
+        controller = new QualityController(1280, 720, 30, true, false);
+        assertEquals(3, controller.getLevelCount());
+        QualityController.Level first = controller.getLevel();
+        assertEquals("1280x720@20", feed(1.5, 10).describe());
+        QualityController.Level last = feed(1.5, 10);
+        assertEquals("1280x720@15", last.describe());
+        assertFalse(first.needsRestart(last));
+        // 已是最低帧率，持续过载也不重建编码器
+        assertNull(feed(1.5, 20));
+    }
+}
@@ -0,0 +1,83 @@
+package com.tool.single;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingTest {
+
+    private static short[] sequence(int start, int count) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (start + i);
+        }
+        return samples;
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(1024, new SampleRing(1000).capacity());
+        assertEquals(1024, new SampleRing(1024).capacity());
+        assertEquals(2048, new SampleRing(1025).capacity());
+    }
+
+    @Test
+    public void wrapsAroundWithoutReordering() {
+        SampleRing ring = new SampleRing(16);
+        short[] target = new short[16];
+        int next = 0;
+        int expected = 0;
+        // 每次写7个读5个，多次跨过缓冲末尾
+        for (int round = 0; round < 20; round++) {
+            assertTrue(ring.write(sequence(next, 7), 7, round));
+            next += 7;
+            int read = ring.read(target, Long.MAX_VALUE);
+            for (int i = 0; i < read; i++) {
+                assertEquals((short) expected++, target[i]);
+            }
+            // 积压超过容量前多读一次
+            if (next - expected > 8) {
+                read = ring.read(target, Long.MAX_VALUE);
+                for (int i = 0; i < read; i++) {
+                    assertEquals((short) expected++, target[i]);
+                }
+            }
+        }
+        assertEquals(expected, ring.getReadPosition());
+        assertEquals(0, ring.getOverruns());
+    }
+
+    @Test
+    public void overrunDropsWholeBlock() {
+        SampleRing ring = new SampleRing(16);
+        assertTrue(ring.write(sequence(0, 10), 10, 100));
+        // 剩余6个位置放不下8个，整块丢弃，已写入的数据和时间戳不变
+        assertFalse(ring.write(sequence(10, 8), 8, 200));
+        assertEquals(1, ring.getOverruns());
+        assertEquals(10, ring.getStamp().position);
+        assertEquals(100, ring.getStamp().nanos);
+        assertTrue(ring.write(sequence(10, 6), 6, 300));
+
+        short[] target = new short[16];
+        assertEquals(16, ring.read(target, Long.MAX_VALUE));
+        for (int i = 0; i < 16; i++) {
+            assertEquals((short) i, target[i]);
+        }
+        // 读空后又有空间
+        assertTrue(ring.write(sequence(16, 16), 16, 400));
+        assertEquals(1, ring.getOverruns());
+    }
+
+    @Test
+    public void readStopsAtLimit() {
+        SampleRing ring = new SampleRing(16);
+        ring.write(sequence(0, 12), 12, 100);
+        short[] target = new short[16];
+        assertEquals(5, ring.read(target, 5));
+        assertEquals(0, ring.read(target, 5));
+        assertEquals(4, ring.read(new short[4], 12));
+        assertEquals(9, ring.getReadPosition());
+    }
+}
@@ -0,0 +1,140 @@
+package com.tool.single;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedFrameBusTest {
+
+    private File file;
+    private SharedFrameBus bus;
+    private Mat frame;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("videostream-bus", ".bin");
+        bus = new SharedFrameBus(file.getPath(), 4);
+        frame = new Mat(48, 64, CV_8UC3);
+    }
+
+    @After
+    public void tearDown() {
+        bus.close();
+        frame.release();
+        frame.close();
+        file.delete();
+    }
+
+    /**
+     * 按发布端的帧号（从1开始）填充像素，读取端据此校验内容
+     */
+    private void publish(long number) throws Exception {
+        int value = (int) (number & 0xFF);
+        frame.put(new Scalar(value, value, value, 0));
+        bus.publish(frame, avutil.AV_PIX_FMT_BGR24, frame.cols(), frame.rows());
+    }
+
+    @Test
+    public void readerSeesLatestFrameAndCountsMissed() throws Exception {
+        publish(1);
+        try (SharedFrameReader reader = SharedFrameReader.open(file.getPath())) {
+            SharedFrameReader.Frame first = reader.next(100);
+            assertNotNull(first);
+            assertEquals(1, first.frameNumber);
+            assertEquals(64, first.width);
+            assertEquals(48, first.height);
+            assertEquals(64 * 3, first.stride);
+            assertEquals(64 * 48 * 3, first.data.remaining());
+            assertEquals(1, first.data.get(0));
+            assertTrue(reader.isValid(first));
+
+            for (long i = 2; i <= 4; i++) {
+                publish(i);
+            }
+            SharedFrameReader.Frame latest = reader.next(100);
+            assertEquals(4, latest.frameNumber);
+            assertEquals(4, latest.data.get(latest.data.remaining() - 1));
+            assertEquals(2, reader.getMissed());
+
+            // 没有新帧时超时返回null
+            assertNull(reader.next(20));
+        }
+    }
+
+    @Test
+    public void overwrittenSlotFailsValidation() throws Exception {
+        publish(1);
+        try (SharedFrameReader reader = SharedFrameReader.open(file.getPath())) {
+            SharedFrameReader.Frame frame1 = reader.next(100);
+            // 4个槽位，第5帧写回同一个槽位
+            for (long i = 2; i <= 5; i++) {
+                publish(i);
+            }
+            assertEquals(5, frame1.data.get(0));
+            assertTrue(!reader.isValid(frame1));
+            assertEquals(1, reader.getTorn());
+        }
+    }
+
+    @Test
+    public void consumerProcessNeverSeesTornFrames() throws Exception {
+        frame.release();
+        frame = new Mat(480, 640, CV_8UC3);
+
+        String classPath = location(SharedFrameReader.class) + File.pathSeparator + location(SharedFrameConsumer.class);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process consumer = new ProcessBuilder(java, "-cp", classPath,
+                SharedFrameConsumer.class.getName(), file.getPath(), "3")
+                .redirectErrorStream(true).start();
+
+        // 不限速地发布，尽量制造读写重叠
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2500);
+        long published = 0;
+        while (System.nanoTime() < deadline) {
+            publish(++published);
+        }
+
+        String result = null;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(consumer.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("frames=")) {
+                    result = line;
+                }
+            }
+        }
+        assertTrue(consumer.waitFor(10, TimeUnit.SECONDS));
+        assertNotNull("消费者进程没有输出统计", result);
+
+        Map<String, Long> stats = new HashMap<>();
+        for (String field : result.split(" ")) {
+            String[] pair = field.split("=");
+            stats.put(pair[0], Long.parseLong(pair[1]));
+        }
+        assertTrue(result, stats.get("frames") > 0);
+        assertEquals(result, 0L, (long) stats.get("corrupt"));
+        assertEquals(result, 0L, (long) stats.get("disorder"));
+    }
+
+    private static String location(Class<?> type) throws Exception {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+}
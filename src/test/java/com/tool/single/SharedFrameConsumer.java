@@ -0,0 +1,69 @@
+package com.tool.single;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 共享内存帧总线测试用的消费者进程
+ * 校验每一帧的像素都等于帧号的低8位（发布端按此填充），最后输出一行统计:
+ * frames=读到的完整帧数 torn=作废次数 corrupt=通过校验但内容不一致的帧数 disorder=帧号倒退次数
+ *
+ * 用法: java -cp ... com.tool.single.SharedFrameConsumer 文件 秒数
+ */
+public class SharedFrameConsumer {
+
+    public static void main(String[] args) throws Exception {
+        String path = args[0];
+        long end = System.currentTimeMillis() + Long.parseLong(args[1]) * 1000;
+
+        SharedFrameReader reader = null;
+        while (reader == null && System.currentTimeMillis() < end) {
+            try {
+                reader = SharedFrameReader.open(path);
+            } catch (java.io.IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        if (reader == null) {
+            System.out.println("frames=0 torn=0 corrupt=0 disorder=0");
+            return;
+        }
+
+        long frames = 0;
+        long corrupt = 0;
+        long disorder = 0;
+        long last = 0;
+        byte[] copy = new byte[0];
+        try {
+            while (System.currentTimeMillis() < end) {
+                SharedFrameReader.Frame frame = reader.next(200);
+                if (frame == null) {
+                    continue;
+                }
+                if (frame.frameNumber <= last) {
+                    disorder++;
+                }
+                last = frame.frameNumber;
+
+                ByteBuffer data = frame.data;
+                if (copy.length < data.remaining()) {
+                    copy = new byte[data.remaining()];
+                }
+                if (!reader.copyTo(frame, copy)) {
+                    continue;
+                }
+                byte expected = (byte) frame.frameNumber;
+                for (int i = 0; i < data.remaining(); i++) {
+                    if (copy[i] != expected) {
+                        corrupt++;
+                        break;
+                    }
+                }
+                frames++;
+            }
+        } finally {
+            reader.close();
+        }
+        System.out.println("frames=" + frames + " torn=" + reader.getTorn()
+                + " corrupt=" + corrupt + " disorder=" + disorder);
+    }
+}
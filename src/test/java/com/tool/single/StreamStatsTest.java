@@ -0,0 +1,79 @@
+package com.tool.single;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamStatsTest {
+
+    @Test
+    public void binsAreContiguousAndBounded() {
+        assertEquals(0, StreamStats.bin(-5));
+        for (int micros = 0; micros < 16; micros++) {
+            assertEquals(micros, StreamStats.bin(micros));
+            assertEquals(micros, StreamStats.binUpperBound(micros));
+        }
+        // 每一档的上界落在本档，上界加1落在下一档
+        int last = StreamStats.bin(Long.MAX_VALUE);
+        for (int bin = 0; bin < last; bin++) {
+            long upper = StreamStats.binUpperBound(bin);
+            assertEquals(bin, StreamStats.bin(upper));
+            assertEquals(bin + 1, StreamStats.bin(upper + 1));
+        }
+        // 上界相对误差不超过12.5%
+        for (long micros = 16; micros < StreamStats.binUpperBound(last - 1); micros = micros * 17 / 16 + 1) {
+            long upper = StreamStats.binUpperBound(StreamStats.bin(micros));
+            assertTrue(micros + " -> " + upper, upper >= micros && upper <= micros * 1.125);
+        }
+        // 超出范围的耗时归入最后一档（约16秒）
+        assertEquals(last, StreamStats.bin(60000000L));
+        assertTrue(StreamStats.binUpperBound(last) > 16000000L);
+    }
+
+    @Test
+    public void windowAggregatesCompletedSeconds() throws Exception {
+        StreamStats stats = new StreamStats();
+        for (int i = 0; i < 98; i++) {
+            stats.frameSent();
+            stats.bytesSent(1000);
+            stats.time(StreamStats.Stage.ENCODE, 5000000L);
+        }
+        for (int i = 0; i < 2; i++) {
+            stats.frameSent();
+            stats.bytesSent(1000);
+            stats.time(StreamStats.Stage.ENCODE, 100000000L);
+        }
+        stats.frameDropped();
+        stats.time(StreamStats.Stage.SEND, 300000L);
+
+        // 当前这一秒还没结束，不计入窗口
+        assertEquals(0, stats.window(1).fps, 0);
+        Thread.sleep(1100);
+
+        StreamStats.Window second = stats.window(1);
+        assertEquals(100, second.fps, 0);
+        assertEquals(800000, second.bitsPerSecond);
+        assertEquals(1, second.dropped);
+        assertBin(5000, second.p50(StreamStats.Stage.ENCODE));
+        assertBin(100000, second.p99(StreamStats.Stage.ENCODE));
+        assertBin(300, second.p50(StreamStats.Stage.SEND));
+        assertEquals(0, second.p50(StreamStats.Stage.CAPTURE));
+
+        // 启动不足10秒时按实际经过的整秒数平均
+        StreamStats.Window recent = stats.window(10);
+        assertEquals(100, recent.fps, 0);
+        assertEquals(1, recent.dropped);
+
+        String json = stats.toJsonLine(42);
+        assertTrue(json, json.startsWith("{\"ts\":42,\"1s\":{\"fps\":100.00,\"bitrate\":800000,\"dropped\":1,"));
+        assertTrue(json, json.contains("\"process_p50_us\":0"));
+    }
+
+    /**
+     * 百分位返回所在档的上界，比实际值大不超过12.5%
+     */
+    private static void assertBin(long micros, long actual) {
+        assertTrue(micros + " -> " + actual, actual >= micros && actual <= micros * 1.125);
+    }
+}
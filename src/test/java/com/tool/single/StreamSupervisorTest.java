@@ -0,0 +1,79 @@
+package com.tool.single;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamSupervisorTest {
+
+    private final StreamSupervisor supervisor = new StreamSupervisor(null);
+
+    @After
+    public void tearDown() {
+        assertTrue(supervisor.shutdown(2000));
+    }
+
+    /**
+     * 启动后一直运行到收到停止请求
+     */
+    private static final class Blocking implements StreamSupervisor.Session {
+        final CountDownLatch running = new CountDownLatch(1);
+        private final CountDownLatch stop = new CountDownLatch(1);
+
+        @Override
+        public void run(Runnable started) throws Exception {
+            started.run();
+            running.countDown();
+            stop.await();
+        }
+
+        @Override
+        public void requestStop() {
+            stop.countDown();
+        }
+    }
+
+    private StreamSupervisor.Handle startRunning(String key, Blocking session) throws Exception {
+        StreamSupervisor.Handle handle = supervisor.start(key, session);
+        assertTrue(session.running.await(2, TimeUnit.SECONDS));
+        return handle;
+    }
+
+    @Test
+    public void rekeyedSessionSerializesWithNewKeyOnly() throws Exception {
+        StreamSupervisor.Handle stream = startRunning("camera-0", new Blocking());
+        assertTrue(supervisor.rekey(stream, "camera-1"));
+        assertEquals("camera-1", stream.getKey());
+
+        // 原摄像头已空闲，在上面启动会话不影响推流
+        StreamSupervisor.Handle preview = startRunning("camera-0", new Blocking());
+        assertEquals(StreamSupervisor.State.RUNNING, stream.getState());
+
+        // 新键已被占用时不能改键
+        assertFalse(supervisor.rekey(stream, "camera-0"));
+        assertSame(preview, supervisor.get("camera-0"));
+
+        // 同一新键上启动的会话先停止推流
+        Blocking next = new Blocking();
+        supervisor.start("camera-1", next);
+        stream.whenStopped().get(2, TimeUnit.SECONDS);
+        assertTrue(next.running.await(2, TimeUnit.SECONDS));
+        assertEquals(StreamSupervisor.State.RUNNING, preview.getState());
+    }
+
+    @Test
+    public void stoppedSessionCannotBeRekeyed() throws Exception {
+        StreamSupervisor.Handle handle = startRunning("camera-0", new Blocking());
+        handle.stop().get(2, TimeUnit.SECONDS);
+        assertFalse(supervisor.rekey(handle, "camera-1"));
+        assertNull(supervisor.get("camera-1"));
+    }
+}
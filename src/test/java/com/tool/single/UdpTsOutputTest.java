@@ -0,0 +1,68 @@
+package com.tool.single;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UdpTsOutputTest {
+
+    @Test
+    public void parsesFullAddress() {
+        UdpTsOutput output = UdpTsOutput.parse(" udp://239.1.2.3:1234?pkt_size=188&ttl=4&bitrate=2000000 ");
+        assertTrue(output.isMulticast());
+        assertEquals("udp://239.1.2.3:1234?pkt_size=188&bitrate=2000000&ttl=4", output.toUrl(3000000));
+    }
+
+    @Test
+    public void defaultsForBareHost() {
+        UdpTsOutput output = UdpTsOutput.parse("192.168.1.20");
+        assertFalse(output.isMulticast());
+        // 单播不带ttl，限速按视频码率的1.5倍
+        assertEquals("udp://192.168.1.20:5000?pkt_size=1316&bitrate=3000000", output.toUrl(2000000));
+    }
+
+    @Test
+    public void unknownAndEmptyParametersAreIgnored() {
+        UdpTsOutput output = UdpTsOutput.parse("udp://10.0.0.5:6000?&foo=1&pkt_size=1316&");
+        assertEquals("udp://10.0.0.5:6000?pkt_size=1316&bitrate=3000000", output.toUrl(2000000));
+    }
+
+    @Test
+    public void bracketedIpv6() {
+        assertEquals("udp://[ff02::1]:5000?pkt_size=1316&bitrate=3000000&ttl=16",
+                UdpTsOutput.parse("udp://[ff02::1]").toUrl(2000000));
+        assertEquals("udp://[::1]:7000?pkt_size=1316&bitrate=3000000",
+                UdpTsOutput.parse("[::1]:7000").toUrl(2000000));
+    }
+
+    @Test
+    public void rateLimit() {
+        UdpTsOutput auto = new UdpTsOutput("127.0.0.1", 5000);
+        assertEquals(3000000, auto.getRate(2000000));
+        // 低码率时不低于下限
+        assertEquals(500000, auto.getRate(100000));
+        assertEquals(800000, new UdpTsOutput("127.0.0.1", 5000, 1316, 16, 800000).getRate(2000000));
+    }
+
+    @Test
+    public void parsedUrlRoundTrips() {
+        String url = new UdpTsOutput("239.0.0.9", 5004, 1128, 2, 0).toUrl(4000000);
+        assertEquals(url, UdpTsOutput.parse(url).toUrl(4000000));
+    }
+
+    @Test
+    public void rejectsInvalidAddresses() {
+        for (String address : new String[]{"", "udp://:5000", "host:0", "host:70000", "host:abc",
+                "host?pkt_size=1000", "host?ttl=x"}) {
+            try {
+                UdpTsOutput.parse(address);
+                fail("应当拒绝: " + address);
+            } catch (IllegalArgumentException expected) {
+                // NumberFormatException 也是 IllegalArgumentException
+            }
+        }
+    }
+}